@@ -0,0 +1,116 @@
+package com.github.schm1tz1;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Synthetic JSON events for benchmarks. The filter field "entity_id" is nested in depth-1 "payload" objects, filler
+ * members (strings, numbers, arrays and objects) are placed before and after it until the requested size is reached.
+ * Malformed payloads are valid ones cut in half.
+ */
+class BenchmarkPayloads {
+    static final String MATCHING_ID = "temperature_sensor_b99f_battery";
+    static final int COUNT = 1024;
+
+    final String path;
+    final String[] strings = new String[COUNT];
+    final byte[][] bytes = new byte[COUNT][];
+
+    /**
+     * @param sizeBytes approximate size of each payload
+     * @param depth nesting depth of the filter field (1 = top level)
+     * @param matchRatio share of payloads whose filter field matches {@link #MATCHING_ID}
+     */
+    BenchmarkPayloads(int sizeBytes, int depth, double matchRatio) {
+        this(sizeBytes, depth, matchRatio, 0.0);
+    }
+
+    /**
+     * @param sizeBytes approximate size of each payload
+     * @param depth nesting depth of the filter field (1 = top level)
+     * @param matchRatio share of payloads whose filter field matches {@link #MATCHING_ID}
+     * @param malformedRatio share of payloads that are no valid JSON
+     */
+    BenchmarkPayloads(int sizeBytes, int depth, double matchRatio, double malformedRatio) {
+        Random random = new Random(42);
+        StringBuilder pathBuilder = new StringBuilder();
+        for (int level = 1; level < depth; level++) {
+            pathBuilder.append("payload.");
+        }
+        path = pathBuilder.append("entity_id").toString();
+
+        for (int i = 0; i < COUNT; i++) {
+            String entityId = random.nextDouble() < matchRatio
+                    ? MATCHING_ID
+                    : String.format("temperature_sensor_%04x_battery", random.nextInt(0xb99f));
+            strings[i] = createEvent(random, sizeBytes, depth, entityId);
+            if (malformedRatio > 0 && random.nextDouble() < malformedRatio) {
+                strings[i] = strings[i].substring(0, strings[i].length() / 2);
+            }
+            bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String createEvent(Random random, int sizeBytes, int depth, String entityId) {
+        int fillerPerSide = Math.max(0, sizeBytes / (2 * depth) - 64);
+
+        StringBuilder json = new StringBuilder(sizeBytes + 256);
+        for (int level = 0; level < depth; level++) {
+            json.append('{');
+            appendFiller(json, random, fillerPerSide, level, 'f');
+            json.append(level == depth - 1 ? "\"entity_id\":\"" + entityId + "\"" : "\"payload\":");
+        }
+        for (int level = depth - 1; level >= 0; level--) {
+            appendFiller(json.append(','), random, fillerPerSide, level, 'g');
+            json.setLength(json.length() - 1);
+            json.append('}');
+        }
+        return json.toString();
+    }
+
+    /**
+     * Appends members with a trailing comma until about size chars were added, the side prefixes the member names so
+     * that the members before and after the filter field have distinct names
+     */
+    private static void appendFiller(StringBuilder json, Random random, int size, int level, char side) {
+        int end = json.length() + size;
+        int member = 0;
+        do {
+            json.append('"').append(side).append(level).append('_').append(member).append("\":");
+            switch (member++ % 4) {
+                case 0:
+                    json.append('"').append(Long.toHexString(random.nextLong())).append(" \\\"quoted\\\" text\"");
+                    break;
+                case 1:
+                    json.append(random.nextDouble() * 1000);
+                    break;
+                case 2:
+                    json.append("[1,2,{\"x\":\"]}\"},[true,false,null]]");
+                    break;
+                default:
+                    json.append("{\"unit\":\"\\u00b0C\",\"value\":").append(random.nextInt(100)).append('}');
+            }
+            json.append(',');
+        } while (json.length() < end);
+    }
+
+    /**
+     * Patterns of increasing complexity that all match {@link #MATCHING_ID} and none of the other generated ids
+     */
+    static String pattern(String complexity) {
+        switch (complexity) {
+            case "literal":
+                return MATCHING_ID;
+            case "alternation":
+                StringBuilder alternation = new StringBuilder("temperature_sensor_(");
+                for (int i = 0; i < 31; i++) {
+                    alternation.append(String.format("c%03x|", i));
+                }
+                return alternation.append("b99f)_battery").toString();
+            case "regex":
+                return "temperature_(.*)_b99f_(battery|power)";
+            default:
+                throw new IllegalArgumentException("Unknown pattern complexity " + complexity);
+        }
+    }
+}
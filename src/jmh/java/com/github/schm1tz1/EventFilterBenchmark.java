@@ -0,0 +1,67 @@
+package com.github.schm1tz1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the pre-compiled {@link EventFilter} on String and byte[] payloads
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventFilterBenchmark {
+
+    @Param({"512", "5120", "20480"})
+    int payloadSize;
+
+    @Param({"1", "4"})
+    int depth;
+
+    @Param({"0.1", "0.9"})
+    double matchRatio;
+
+    @Param({"literal", "alternation", "regex"})
+    String patternComplexity;
+
+    @Param({"JSON_OBJECT", "STREAMING"})
+    JsonFieldExtractor extractor;
+
+    private BenchmarkPayloads payloads;
+    private EventFilter eventFilter;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        payloads = new BenchmarkPayloads(payloadSize, depth, matchRatio);
+        eventFilter = new EventFilter(payloads.path, BenchmarkPayloads.pattern(patternComplexity), extractor);
+    }
+
+    private int nextIndex() {
+        index = (index + 1) & (BenchmarkPayloads.COUNT - 1);
+        return index;
+    }
+
+    @Benchmark
+    public boolean isMatchingString() {
+        return eventFilter.isMatching(payloads.strings[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean isMatchingBytes() {
+        return eventFilter.isMatching(payloads.bytes[nextIndex()]);
+    }
+}
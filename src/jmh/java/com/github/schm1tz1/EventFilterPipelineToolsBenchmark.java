@@ -0,0 +1,72 @@
+package com.github.schm1tz1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the static helpers in {@link EventFilterPipelineTools}, i.e. the per-record work without any
+ * pre-compilation of pattern and path
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventFilterPipelineToolsBenchmark {
+
+    @Param({"512", "5120", "20480"})
+    int payloadSize;
+
+    @Param({"1", "4"})
+    int depth;
+
+    @Param({"0.1", "0.9"})
+    double matchRatio;
+
+    @Param({"literal", "alternation", "regex"})
+    String patternComplexity;
+
+    private BenchmarkPayloads payloads;
+    private String pattern;
+    private String[] pathSegments;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        payloads = new BenchmarkPayloads(payloadSize, depth, matchRatio);
+        pattern = BenchmarkPayloads.pattern(patternComplexity);
+        pathSegments = EventFilterPipelineTools.splitPath(payloads.path);
+    }
+
+    private String nextPayload() {
+        index = (index + 1) & (BenchmarkPayloads.COUNT - 1);
+        return payloads.strings[index];
+    }
+
+    @Benchmark
+    public boolean isEventMatchingThePattern() {
+        return EventFilterPipelineTools.isEventMatchingThePattern(nextPayload(), payloads.path, pattern);
+    }
+
+    @Benchmark
+    public String getStringForPath() {
+        return EventFilterPipelineTools.getStringForPath(nextPayload(), pathSegments);
+    }
+
+    @Benchmark
+    public String getStringForPathStreaming() {
+        return EventFilterPipelineTools.getStringForPathStreaming(nextPayload(), pathSegments);
+    }
+}
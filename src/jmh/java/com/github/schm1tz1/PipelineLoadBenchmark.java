@@ -0,0 +1,107 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test of {@link EventFilterPipeline#createMultiTopology()} in the TopologyTestDriver, one record per
+ * operation from the input topic to the output topic, to compare the DSL and the Processor API on the same synthetic
+ * traffic. {@link #throughput()} reports records/s and, with the GC profiler, the allocation per record
+ * (gc.alloc.rate.norm), {@link #latency()} the per-record latency percentiles (p0.50, p0.99). Payloads are generated
+ * with a fixed seed, see {@link BenchmarkPayloads}. The driver serializes and deserializes records but has no network
+ * or broker, so absolute numbers are upper bounds.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineLoadBenchmark {
+
+    @Param({"512", "5120"})
+    int payloadSize;
+
+    @Param({"2"})
+    int depth;
+
+    @Param({"0.5"})
+    double matchRatio;
+
+    @Param({"0.0", "0.01"})
+    double malformedRatio;
+
+    @Param({"false", "true"})
+    String useProcessorApi;
+
+    @Param({"json-object", "streaming"})
+    String extractor;
+
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, String> inputTopic;
+    private TestOutputTopic<String, String> outputTopic;
+    private String[] payloads;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        BenchmarkPayloads benchmarkPayloads = new BenchmarkPayloads(payloadSize, depth, matchRatio, malformedRatio);
+        payloads = benchmarkPayloads.strings;
+
+        Properties properties = PipelineConfigTools.setDefaultStreamsProperties();
+        properties.put("use.processor.api", useProcessorApi);
+        properties.put("streamsFilter.sources", "Load");
+        properties.put("streamsFilter.Load.inputTopic", "load.input");
+        properties.put("streamsFilter.Load.outputTopic", "load.output");
+        properties.put("streamsFilter.Load.field", benchmarkPayloads.path);
+        properties.put("streamsFilter.Load.filterPattern", BenchmarkPayloads.MATCHING_ID);
+        properties.put("streamsFilter.Load.filterActionDrop", "false");
+        properties.put("streamsFilter.Load.extractor", extractor);
+        // malformed records are expected, keep their error logs out of the measurement
+        properties.put("streamsFilter.errorLog.maxPerMinute", "0");
+
+        driver = new TopologyTestDriver(new EventFilterPipeline(properties).createMultiTopology(), properties);
+        inputTopic = driver.createInputTopic("load.input", Serdes.String().serializer(), Serdes.String().serializer());
+        outputTopic = driver.createOutputTopic("load.output", Serdes.String().deserializer(), Serdes.String().deserializer());
+    }
+
+    @TearDown
+    public void tearDown() {
+        driver.close();
+    }
+
+    private String pipeNext() {
+        index = (index + 1) & (BenchmarkPayloads.COUNT - 1);
+        inputTopic.pipeInput(payloads[index]);
+        return outputTopic.isEmpty() ? null : outputTopic.readValue();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String throughput() {
+        return pipeNext();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String latency() {
+        return pipeNext();
+    }
+}
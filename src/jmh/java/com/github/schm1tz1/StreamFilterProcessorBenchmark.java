@@ -0,0 +1,103 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link StreamFilterProcessor#process(Record)} including sensors and forwarding. The mock context
+ * captures forwarded records, it is reset after each call to keep memory constant. The DEBUG recording level adds
+ * the latency and parse time histograms.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamFilterProcessorBenchmark {
+
+    @Param({"512", "5120", "20480"})
+    int payloadSize;
+
+    @Param({"0.1", "0.9"})
+    double matchRatio;
+
+    @Param({"JSON_OBJECT", "STREAMING"})
+    JsonFieldExtractor extractor;
+
+    @Param({"INFO", "DEBUG"})
+    String recordingLevel;
+
+    /** with a cache larger than the number of distinct payloads every record after the first round is a hit */
+    @Param({"0", "2048"})
+    int decisionCacheSize;
+
+    private MockProcessorContext<String, String> stringContext;
+    private MockProcessorContext<byte[], byte[]> bytesContext;
+    private StreamFilterProcessor<String, String> stringProcessor;
+    private StreamFilterProcessor<byte[], byte[]> bytesProcessor;
+    private Record<String, String>[] stringRecords;
+    private Record<byte[], byte[]>[] bytesRecords;
+    private int index = 0;
+
+    @Setup
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setup() {
+        BenchmarkPayloads payloads = new BenchmarkPayloads(payloadSize, 2, matchRatio);
+        SourceFilter sourceFilter = SourceFilter.forEventFilter(new EventFilter(payloads.path, BenchmarkPayloads.MATCHING_ID, extractor), false);
+
+        stringRecords = new Record[BenchmarkPayloads.COUNT];
+        bytesRecords = new Record[BenchmarkPayloads.COUNT];
+        for (int i = 0; i < BenchmarkPayloads.COUNT; i++) {
+            String key = "key-" + i;
+            stringRecords[i] = new Record<>(key, payloads.strings[i], i);
+            bytesRecords[i] = new Record<>(key.getBytes(StandardCharsets.UTF_8), payloads.bytes[i], i);
+        }
+
+        Properties config = new Properties();
+        config.put(StreamsConfig.METRICS_RECORDING_LEVEL_CONFIG, recordingLevel);
+
+        stringContext = new MockProcessorContext<>(config);
+        stringProcessor = StreamFilterProcessor.forSource("benchmark", () -> sourceFilter, EventFilter::parseFields,
+                decisionCacheSize, 64L << 20);
+        stringProcessor.init(stringContext);
+
+        bytesContext = new MockProcessorContext<>(config);
+        bytesProcessor = StreamFilterProcessor.forSource("benchmark", () -> sourceFilter, EventFilter::parseFields,
+                decisionCacheSize, 64L << 20);
+        bytesProcessor.init(bytesContext);
+    }
+
+    private int nextIndex() {
+        index = (index + 1) & (BenchmarkPayloads.COUNT - 1);
+        return index;
+    }
+
+    @Benchmark
+    public void processString() {
+        stringProcessor.process(stringRecords[nextIndex()]);
+        stringContext.resetForwards();
+    }
+
+    @Benchmark
+    public void processBytes() {
+        bytesProcessor.process(bytesRecords[nextIndex()]);
+        bytesContext.resetForwards();
+    }
+}
@@ -0,0 +1,172 @@
+package com.github.schm1tz1;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable set of Strings for large allow/deny lists (millions of IDs). Values are stored UTF-8 encoded, sorted and
+ * concatenated in a single byte array with an offset per value, i.e. about 4 bytes of overhead per value instead of
+ * roughly 100 bytes for a HashSet of Strings. Lookups are a binary search, prefiltered by a Bloom filter (1 byte per
+ * value) so that most values not in the set are rejected without touching the sorted array.
+ * Instances can be shared between stream threads.
+ */
+public class CompactValueSet {
+    private static final int BLOOM_HASHES = 4;
+
+    private final byte[] data;
+    private final int[] offsets;
+    private final long[] bloom;
+    private final int bloomMask;
+
+    private CompactValueSet(List<byte[]> sortedValues, List<String> values) {
+        int size = sortedValues.size();
+        offsets = new int[size + 1];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            offsets[i] = length;
+            length += sortedValues.get(i).length;
+        }
+        offsets[size] = length;
+        data = new byte[length];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(sortedValues.get(i), 0, data, offsets[i], sortedValues.get(i).length);
+        }
+
+        int bloomBits = Math.max(64, Integer.highestOneBit(Math.max(1, size * 8 - 1)) << 1);
+        bloom = new long[bloomBits / 64];
+        bloomMask = bloomBits - 1;
+        for (String value : values) {
+            long hash = mix(value.hashCode());
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = bloomBit(hash, i);
+                bloom[bit >>> 6] |= 1L << bit;
+            }
+        }
+    }
+
+    /**
+     * @param values values, duplicates are removed
+     * @return set of the values
+     */
+    public static CompactValueSet of(List<String> values) {
+        List<byte[]> encoded = new ArrayList<>(values.size());
+        for (String value : values) {
+            encoded.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        encoded.sort(Arrays::compareUnsigned);
+
+        List<byte[]> sortedValues = new ArrayList<>(encoded.size());
+        for (byte[] value : encoded) {
+            if (sortedValues.isEmpty() || !Arrays.equals(value, sortedValues.get(sortedValues.size() - 1))) {
+                sortedValues.add(value);
+            }
+        }
+        return new CompactValueSet(sortedValues, values);
+    }
+
+    /**
+     * Reads a UTF-8 file with one value per line, empty lines and lines starting with # are skipped
+     * @param file file to read
+     * @return set of the values
+     * @throws IOException if the file cannot be read
+     */
+    public static CompactValueSet fromFile(Path file) throws IOException {
+        List<String> values = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                    values.add(line);
+                }
+            }
+        }
+        return of(values);
+    }
+
+    /**
+     * @param value value to look up
+     * @return true if the value is in the set
+     */
+    public boolean contains(String value) {
+        long hash = mix(value.hashCode());
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = bloomBit(hash, i);
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        byte[] encoded = isAscii(value) ? null : value.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = offsets.length - 2;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = encoded == null
+                    ? compareAscii(value, offsets[middle], offsets[middle + 1])
+                    : Arrays.compareUnsigned(encoded, 0, encoded.length, data, offsets[middle], offsets[middle + 1]);
+            if (comparison == 0) {
+                return true;
+            } else if (comparison < 0) {
+                high = middle - 1;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares an ASCII String with a UTF-8 encoded value, ASCII characters are equal to their UTF-8 bytes and sort
+     * before all bytes of multibyte sequences
+     */
+    private int compareAscii(String value, int from, int to) {
+        int length = Math.min(value.length(), to - from);
+        for (int i = 0; i < length; i++) {
+            int difference = value.charAt(i) - (data[from + i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return value.length() - (to - from);
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(int hash) {
+        long mixed = hash * 0x9E3779B97F4A7C15L;
+        return mixed ^ (mixed >>> 29);
+    }
+
+    private int bloomBit(long hash, int i) {
+        return ((int) hash + i * ((int) (hash >>> 32) | 1)) & bloomMask;
+    }
+
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return approximate heap usage of the set in bytes
+     */
+    public long getMemoryBytes() {
+        return data.length + 4L * offsets.length + 8L * bloom.length;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + size() + " values]";
+    }
+}
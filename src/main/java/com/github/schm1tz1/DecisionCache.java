@@ -0,0 +1,134 @@
+package com.github.schm1tz1;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of filter decisions keyed by the payload, for topics where producers re-emit identical events. Payloads
+ * are compared by content (String or byte[], also wrapped in an {@link ExtractedEvent} for sources sharing an input
+ * topic) with the hash computed once per lookup, a hit skips field extraction and rule evaluation. The cache is bounded by number of entries and by the estimated memory of the cached payloads and
+ * is cleared when the filter changes, e.g. after reloading the rules.
+ * Instances are not thread-safe, there is one cache per processor (i.e. per stream task).
+ */
+public class DecisionCache {
+    /** estimated memory per entry without the payload (map entry, key wrapper, array/String header) */
+    static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Boolean> decisions;
+    private Object filter;
+    private long bytes = 0;
+
+    /**
+     * @param maxEntries maximum number of cached decisions
+     * @param maxBytes maximum estimated memory of the cached payloads
+     */
+    public DecisionCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.decisions = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Looks up the decision for a payload
+     * @param currentFilter filter the decision is made with, the cache is cleared if it differs from the last call
+     * @param payload String or byte[] payload or an {@link ExtractedEvent} of it
+     * @return cached decision or null if not cached
+     */
+    public Boolean get(Object currentFilter, Object payload) {
+        if (currentFilter != filter) {
+            clear();
+            filter = currentFilter;
+            return null;
+        }
+        return decisions.get(new Key(unwrap(payload)));
+    }
+
+    /**
+     * Adds a decision, least recently used decisions are evicted if the cache is full
+     * @param payload String or byte[] payload as passed to {@link #get(Object, Object)}
+     * @param matching decision
+     */
+    public void put(Object payload, boolean matching) {
+        payload = unwrap(payload);
+        long size = sizeOf(payload);
+        if (size > maxBytes) {
+            return;
+        }
+        if (decisions.put(new Key(payload), matching) == null) {
+            bytes += size;
+        }
+
+        Iterator<Map.Entry<Key, Boolean>> eldest = decisions.entrySet().iterator();
+        while (decisions.size() > maxEntries || bytes > maxBytes) {
+            bytes -= sizeOf(eldest.next().getKey().payload);
+            eldest.remove();
+        }
+    }
+
+    public void clear() {
+        decisions.clear();
+        bytes = 0;
+    }
+
+    public int size() {
+        return decisions.size();
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return value of an {@link ExtractedEvent}, so that the cache keeps neither its fields nor the event itself
+     */
+    private static Object unwrap(Object payload) {
+        return payload instanceof ExtractedEvent ? ((ExtractedEvent<?>) payload).getValue() : payload;
+    }
+
+    static long sizeOf(Object payload) {
+        if (payload instanceof byte[]) {
+            return ENTRY_OVERHEAD_BYTES + ((byte[]) payload).length;
+        }
+        if (payload instanceof String) {
+            return ENTRY_OVERHEAD_BYTES + 2L * ((String) payload).length();
+        }
+        return ENTRY_OVERHEAD_BYTES;
+    }
+
+    /**
+     * Payload with content-based equals and hashCode
+     */
+    private static final class Key {
+        final Object payload;
+        final int hash;
+
+        Key(Object payload) {
+            this.payload = payload;
+            this.hash = payload instanceof byte[] ? Arrays.hashCode((byte[]) payload) : payload.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            if (hash != key.hash) {
+                return false;
+            }
+            if (payload instanceof byte[] && key.payload instanceof byte[]) {
+                return Arrays.equals((byte[]) payload, (byte[]) key.payload);
+            }
+            return payload.equals(key.payload);
+        }
+    }
+}
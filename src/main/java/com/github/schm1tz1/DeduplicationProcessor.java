@@ -0,0 +1,181 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Meter;
+import org.apache.kafka.common.metrics.stats.Value;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsMetrics;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.json.JSONException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Processor dropping records whose id was already seen within the retention period, configured with
+ * streamsFilter.&lt;source&gt;.dedupIdField and placed before the filter. Ids are extracted from the value with the
+ * extractor of the source and kept in a persistent window store (RocksDB, backed by a changelog topic) keyed by id,
+ * so duplicates are also detected after a restart or rebalance. Records without id or with invalid JSON are forwarded
+ * unchanged and left to the filter. The record timestamps define the retention, duplicates of an id are dropped if
+ * their timestamps are at most the retention apart.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class DeduplicationProcessor<K, V> implements Processor<K, V, K, V> {
+    /** buckets of the estimate of ids in the store */
+    private static final int SIZE_BUCKETS = 16;
+
+    private final String sourceName;
+    private final String storeName;
+    private final EventFilter idExtractor;
+    private final BiFunction<EventFilter, V, String[]> fieldExtraction;
+    private final long retentionMs;
+    private final long[] uniqueIdsPerBucket = new long[SIZE_BUCKETS];
+    private long lastBucket = Long.MIN_VALUE;
+    private ProcessorContext<K, V> context;
+    private WindowStore<String, Long> store;
+    private final List<Sensor> sensors = new ArrayList<>();
+    private Sensor sensorDuplicates;
+    private Sensor sensorUnique;
+    private Sensor sensorMissingId;
+    private Sensor sensorStoredIds;
+
+    /**
+     * @param sourceName      source name from the configuration, used to tag the metrics
+     * @param storeName       name of the window store, see {@link #storeBuilder(String, long)}
+     * @param idExtractor     filter whose single field is the id, see {@link EventFilter#matchingAll}
+     * @param fieldExtraction function extracting the fields of a filter from a record value, may throw a {@link JSONException}
+     * @param retentionMs     time in milliseconds for which ids are kept
+     */
+    public DeduplicationProcessor(String sourceName, String storeName, EventFilter idExtractor,
+                                  BiFunction<EventFilter, V, String[]> fieldExtraction, long retentionMs) {
+        this.sourceName = sourceName;
+        this.storeName = storeName;
+        this.idExtractor = idExtractor;
+        this.fieldExtraction = fieldExtraction;
+        this.retentionMs = retentionMs;
+    }
+
+    /**
+     * @param storeName name of the store
+     * @param retentionMs time in milliseconds for which ids are kept
+     * @return builder of the persistent window store mapping ids to the timestamp they were first seen
+     */
+    public static StoreBuilder<WindowStore<String, Long>> storeBuilder(String storeName, long retentionMs) {
+        return Stores.windowStoreBuilder(
+                Stores.persistentWindowStore(storeName, Duration.ofMillis(retentionMs), Duration.ofMillis(retentionMs), false),
+                Serdes.String(), Serdes.Long());
+    }
+
+    @Override
+    public void init(ProcessorContext<K, V> context) {
+        this.context = context;
+        this.store = context.getStateStore(storeName);
+
+        StreamsMetrics streamsMetrics = context.metrics();
+        String threadId = Thread.currentThread().getName();
+        String taskId = context.taskId().toString();
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("thread-id", threadId);
+        tags.put("task-id", taskId);
+        tags.put("source", sourceName);
+        String sensorPrefix = "kstreams-filter." + threadId + "." + taskId + "." + sourceName + ".";
+
+        sensorDuplicates = addMeter(streamsMetrics, sensorPrefix, tags, "filter-dedup-duplicates", "records dropped as duplicates");
+        sensorUnique = addMeter(streamsMetrics, sensorPrefix, tags, "filter-dedup-unique", "records with an id seen for the first time");
+        sensorMissingId = addMeter(streamsMetrics, sensorPrefix, tags, "filter-dedup-missing-id", "records forwarded without deduplication as they have no id");
+        sensorStoredIds = streamsMetrics.addSensor(sensorPrefix + "filter-dedup-stored-ids", Sensor.RecordingLevel.INFO);
+        sensorStoredIds.add(new MetricName("filter-dedup-stored-ids", FilterMetrics.GROUP,
+                "estimated number of ids in the deduplication store of the task", tags), new Value());
+        sensors.add(sensorStoredIds);
+    }
+
+    private Sensor addMeter(StreamsMetrics streamsMetrics, String sensorPrefix, Map<String, String> tags, String name, String description) {
+        Sensor sensor = streamsMetrics.addSensor(sensorPrefix + name, Sensor.RecordingLevel.INFO);
+        sensor.add(new Meter(new MetricName(name + "-rate", FilterMetrics.GROUP, "rate of " + description, tags),
+                new MetricName(name + "-total", FilterMetrics.GROUP, "total number of " + description, tags)));
+        sensors.add(sensor);
+        return sensor;
+    }
+
+    @Override
+    public void process(Record<K, V> record) {
+        String id = getId(record.value());
+        if (id.isEmpty()) {
+            sensorMissingId.record();
+            context.forward(record);
+            return;
+        }
+
+        long timestamp = record.timestamp();
+        boolean duplicate;
+        try (WindowStoreIterator<Long> firstSeen = store.fetch(id, timestamp - retentionMs, timestamp + retentionMs)) {
+            duplicate = firstSeen.hasNext();
+        }
+        if (duplicate) {
+            sensorDuplicates.record();
+            return;
+        }
+
+        store.put(id, timestamp, timestamp);
+        sensorUnique.record();
+        sensorStoredIds.record(countStoredId(timestamp));
+        context.forward(record);
+    }
+
+    private String getId(V value) {
+        try {
+            return fieldExtraction.apply(idExtractor, value)[0];
+        } catch (JSONException err) {
+            return "";
+        }
+    }
+
+    /**
+     * Counts ids per bucket of retention / {@link #SIZE_BUCKETS} by record time, the buckets older than the retention
+     * are dropped, so the sum approximates the ids kept in the store. Ids stored before a restart are not included.
+     * @return estimated number of ids in the store
+     */
+    private long countStoredId(long timestamp) {
+        long bucketMs = Math.max(1L, retentionMs / SIZE_BUCKETS);
+        long bucket = timestamp / bucketMs;
+        if (bucket > lastBucket) {
+            for (long expired = Math.max(lastBucket + 1, bucket - SIZE_BUCKETS + 1); expired <= bucket; expired++) {
+                uniqueIdsPerBucket[(int) Math.floorMod(expired, (long) SIZE_BUCKETS)] = 0;
+            }
+            lastBucket = bucket;
+        }
+        if (bucket > lastBucket - SIZE_BUCKETS) {
+            uniqueIdsPerBucket[(int) Math.floorMod(bucket, (long) SIZE_BUCKETS)]++;
+        }
+        long storedIds = 0;
+        for (long count : uniqueIdsPerBucket) {
+            storedIds += count;
+        }
+        return storedIds;
+    }
+
+    /**
+     * removes the sensors of this task
+     */
+    @Override
+    public void close() {
+        StreamsMetrics streamsMetrics = context.metrics();
+        for (Sensor sensor : sensors) {
+            streamsMetrics.removeSensor(sensor);
+        }
+        sensors.clear();
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.schm1tz1;
+
+import java.util.Collection;
+
+/**
+ * Filter predicate for one pipeline source. JSON paths and patterns are compiled once when the (sub-)topology is
+ * created so that per-record work is limited to extracting the fields from the payload and matching them.
+ * A filter is either a single field/pattern pair or a {@link FilterRule} over several fields, in both cases all
+ * fields are extracted with a single parse of the payload.
+ * Instances can be shared between stream threads.
+ */
+public class EventFilter {
+    private final JsonPathSet pathSet;
+    private final FilterRule rule;
+    private final JsonFieldExtractor extractor;
+
+    /**
+     * Constructor, compiles path and pattern
+     * @param jsonPath JSON path to field that is to be checked
+     * @param patternToMatch Pattern that our value needs to match
+     */
+    public EventFilter(String jsonPath, String patternToMatch) {
+        this(jsonPath, patternToMatch, JsonFieldExtractor.JSON_OBJECT);
+    }
+
+    /**
+     * Constructor, compiles path and pattern
+     * @param jsonPath JSON path to field that is to be checked
+     * @param patternToMatch Pattern that our value needs to match
+     * @param extractor method used to extract the field from the message
+     */
+    public EventFilter(String jsonPath, String patternToMatch, JsonFieldExtractor extractor) {
+        this(jsonPath, patternToMatch, extractor, new JsonPathSet());
+    }
+
+    /**
+     * Constructor, compiles path and pattern against a path set that may be shared with other filters
+     * @param jsonPath JSON path to field that is to be checked
+     * @param patternToMatch Pattern that our value needs to match
+     * @param extractor method used to extract the field from the message
+     * @param pathSet path set the field is added to
+     */
+    public EventFilter(String jsonPath, String patternToMatch, JsonFieldExtractor extractor, JsonPathSet pathSet) {
+        this.pathSet = pathSet;
+        this.rule = FilterRule.FieldPredicate.of(pathSet, jsonPath, "~", patternToMatch);
+        this.extractor = extractor;
+    }
+
+    private EventFilter(JsonPathSet pathSet, FilterRule rule, JsonFieldExtractor extractor) {
+        this.pathSet = pathSet;
+        this.rule = rule;
+        this.extractor = extractor;
+    }
+
+    /**
+     * Creates a filter from a rule expression, see {@link FilterRuleParser} for the syntax
+     * @param ruleExpression rule combining predicates on several fields
+     * @param extractor method used to extract the fields from the message
+     * @return compiled filter
+     */
+    public static EventFilter fromRule(String ruleExpression, JsonFieldExtractor extractor) {
+        return fromRule(ruleExpression, extractor, new JsonPathSet());
+    }
+
+    /**
+     * Creates a filter from a rule expression compiled against a path set that may be shared with other filters
+     * @param ruleExpression rule combining predicates on several fields
+     * @param extractor method used to extract the fields from the message
+     * @param pathSet path set the fields are added to
+     * @return compiled filter
+     */
+    public static EventFilter fromRule(String ruleExpression, JsonFieldExtractor extractor, JsonPathSet pathSet) {
+        FilterRule rule = FilterRuleParser.parse(ruleExpression, pathSet);
+        return new EventFilter(pathSet, rule, extractor);
+    }
+
+    /**
+     * Creates a filter matching events whose field is equal to one of the given values
+     * @param jsonPath JSON path to field that is to be checked
+     * @param values values the field is compared with using a hash set
+     * @param extractor method used to extract the field from the message
+     * @param pathSet path set the field is added to
+     * @return compiled filter
+     */
+    public static EventFilter forValues(String jsonPath, Collection<String> values, JsonFieldExtractor extractor, JsonPathSet pathSet) {
+        FilterRule rule = FilterRule.FieldPredicate.forValues(pathSet, jsonPath, ValueMatcher.forValues(values));
+        return new EventFilter(pathSet, rule, extractor);
+    }
+
+    /**
+     * Creates a filter matching events whose field is contained in a large value set, e.g. an allow or deny list
+     * @param jsonPath JSON path to field that is to be checked
+     * @param values values the field is looked up in
+     * @param extractor method used to extract the field from the message
+     * @param pathSet path set the field is added to
+     * @return compiled filter
+     */
+    public static EventFilter forValues(String jsonPath, CompactValueSet values, JsonFieldExtractor extractor, JsonPathSet pathSet) {
+        FilterRule rule = FilterRule.FieldPredicate.forValues(pathSet, jsonPath, ValueMatcher.forValues(values));
+        return new EventFilter(pathSet, rule, extractor);
+    }
+
+    /**
+     * Creates a filter matching all events, its path set is used to extract fields for other purposes
+     * @param extractor method used to extract the fields from the message
+     * @param pathSet path set of the fields to extract
+     * @return filter without predicates
+     */
+    public static EventFilter matchingAll(JsonFieldExtractor extractor, JsonPathSet pathSet) {
+        return new EventFilter(pathSet, new FilterRule.MatchAll(), extractor);
+    }
+
+    /**
+     * Checks if an event matches the compiled pattern or rule
+     * @param inputMessageValue Input message to be tested (value part)
+     * @return true if the event matches
+     */
+    public boolean isMatching(String inputMessageValue) {
+        return rule.evaluate(extractor.getStringsForPaths(inputMessageValue, pathSet));
+    }
+
+    /**
+     * Checks if an event matches the compiled pattern or rule
+     * @param inputMessageValue Input message to be tested (value part, UTF-8 encoded)
+     * @return true if the event matches
+     */
+    public boolean isMatching(byte[] inputMessageValue) {
+        return rule.evaluate(extractor.getStringsForPaths(inputMessageValue, pathSet));
+    }
+
+    /**
+     * Checks if an event matches based on field values extracted beforehand
+     * @param fields values for all paths of the path set of this filter
+     * @return true if the event matches
+     */
+    public boolean isMatching(String[] fields) {
+        return rule.evaluate(fields);
+    }
+
+    /**
+     * Extracts the values of all fields of this filter, see {@link #isMatching(String[])}
+     * @param inputMessageValue Input message (value part)
+     * @return field values
+     * @throws org.json.JSONException if the message is not valid JSON
+     */
+    public String[] parseFields(String inputMessageValue) {
+        return extractor.parseStringsForPaths(inputMessageValue, pathSet);
+    }
+
+    /**
+     * Extracts the values of all fields of this filter, see {@link #isMatching(String[])}
+     * @param inputMessageValue Input message (value part, UTF-8 encoded)
+     * @return field values
+     * @throws org.json.JSONException if the message is not valid JSON
+     */
+    public String[] parseFields(byte[] inputMessageValue) {
+        return extractor.parseStringsForPaths(inputMessageValue, pathSet);
+    }
+
+    /**
+     * @return field values used for messages that cannot be parsed, i.e. "" for all fields
+     */
+    public String[] emptyFields() {
+        return EventFilterPipelineTools.emptyValues(pathSet);
+    }
+
+    public JsonPathSet getPathSet() {
+        return pathSet;
+    }
+
+    public FilterRule getRule() {
+        return rule;
+    }
+
+    public JsonFieldExtractor getExtractor() {
+        return extractor;
+    }
+
+    @Override
+    public String toString() {
+        return rule + " (" + extractor + ")";
+    }
+}
@@ -1,23 +1,53 @@
 package com.github.schm1tz1;
 
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.KafkaMetricsContext;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Time;
 import org.apache.kafka.streams.KafkaStreams;
 import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.processor.RecordContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Kafka Streams Pipeline for filtering
  */
-public class EventFilterPipeline {
+public class EventFilterPipeline implements AutoCloseable {
     final static Logger logger = LoggerFactory.getLogger(EventFilterPipeline.class);
     final Properties streamsProperties;
+    private Metrics metrics;
+    final SampledErrorLogger jsonErrorLogger;
+    private final List<FilterGroup> filterGroups = new ArrayList<>();
+    private Properties filterProperties;
+    private ParallelFilterEvaluator parallelEvaluator;
 
     /**
      * Constructor to create App with properties
@@ -26,6 +56,54 @@ public class EventFilterPipeline {
     public EventFilterPipeline(Properties streamsProperties) {
         logger.debug("Starting EventFilterPipeline additional properties");
         this.streamsProperties = streamsProperties;
+        this.jsonErrorLogger = new SampledErrorLogger(logger, Integer.parseInt(streamsProperties.getProperty(
+                "streamsFilter.errorLog.maxPerMinute", String.valueOf(SampledErrorLogger.DEFAULT_MAX_PER_MINUTE))));
+    }
+
+    /**
+     * Creates the registry for metrics outside of the stream tasks, the filters register their metrics with the Streams
+     * metrics instead. Metrics are exposed via JMX in the kstreams.filter domain.
+     * @param streamsProperties Properties for the Kafka Streams application, metrics.recording.level is applied
+     * @return metrics registry
+     */
+    private static Metrics createMetrics(Properties streamsProperties) {
+        MetricConfig metricConfig = new MetricConfig().recordLevel(Sensor.RecordingLevel.forName(
+                streamsProperties.getProperty(StreamsConfig.METRICS_RECORDING_LEVEL_CONFIG, Sensor.RecordingLevel.INFO.name)));
+        return new Metrics(metricConfig, Collections.singletonList(new JmxReporter()), Time.SYSTEM,
+                new KafkaMetricsContext("kstreams.filter"));
+    }
+
+    /**
+     * @return registry for metrics outside of the stream tasks (transaction metrics, file replay), created on first use
+     * and closed with {@link #close()}
+     */
+    public synchronized Metrics getMetrics() {
+        if (metrics == null) {
+            metrics = createMetrics(streamsProperties);
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops the workers of the parallel evaluator and closes the metrics registry, if they were created
+     */
+    @Override
+    public synchronized void close() {
+        if (parallelEvaluator != null) {
+            parallelEvaluator.close();
+            parallelEvaluator = null;
+        }
+        if (metrics != null) {
+            metrics.close();
+            metrics = null;
+        }
+    }
+
+    /**
+     * @return evaluator of the Processor API sources if streamsFilter.parallelEvaluation.threads is set, null otherwise
+     */
+    public ParallelFilterEvaluator getParallelEvaluator() {
+        return parallelEvaluator;
     }
 
     /**
@@ -35,16 +113,39 @@ public class EventFilterPipeline {
     public Topology createMultiTopology() {
 
         final StreamsBuilder builder = new StreamsBuilder();
+        filterProperties = loadFilterProperties();
+        filterGroups.clear();
+        if (parallelEvaluator != null) {
+            parallelEvaluator.close();
+        }
+        parallelEvaluator = createParallelEvaluator();
 
         String usePapi = streamsProperties.getProperty("use.processor.api", "false");
         String[] sources = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter.sources").split(",");
 
+        Map<String, List<String>> sourcesByInputTopic = new LinkedHashMap<>();
         for (String source : sources) {
-            if(usePapi.equals("true")) {
+            String inputTopicName = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + source + ".inputTopic");
+            sourcesByInputTopic.computeIfAbsent(inputTopicName, topic -> new ArrayList<>()).add(source);
+        }
+
+        for (Map.Entry<String, List<String>> inputTopicSources : sourcesByInputTopic.entrySet()) {
+            List<String> sourcesForTopic = inputTopicSources.getValue();
+            String source = sourcesForTopic.get(0);
+
+            if (sourcesForTopic.size() > 1) {
+                logger.info("Sharing input topic " + inputTopicSources.getKey() + " between sources " + sourcesForTopic);
+                addSharedSubTopologyForSources(builder, inputTopicSources.getKey(), sourcesForTopic, usePapi.equals("true"));
+            } else if (streamsProperties.getProperty("streamsFilter." + source + ".routes") != null) {
+                logger.info("Using routing !");
+                warnIfNotEvaluatedInParallel(source);
+                addRoutingSubTopologyForSource(builder, source);
+            } else if(usePapi.equals("true")) {
                 logger.info("Using Processor API !");
                 addSubTopologyForSourceProcessorApi(builder, source);
             } else {
                 logger.info("Using Streams DSL !");
+                warnIfNotEvaluatedInParallel(source);
                 addSubTopologyForSource(builder, source);
             }
         }
@@ -55,6 +156,26 @@ public class EventFilterPipeline {
         return topology;
     }
 
+    /**
+     * Creates the evaluator for streamsFilter.parallelEvaluation.threads &gt; 0, see {@link ParallelFilterEvaluator}
+     * @return evaluator or null if parallel evaluation is disabled
+     */
+    private ParallelFilterEvaluator createParallelEvaluator() {
+        int threads = Integer.parseInt(streamsProperties.getProperty("streamsFilter.parallelEvaluation.threads", "0"));
+        if (threads <= 0) {
+            return null;
+        }
+        int minBatchSize = Integer.parseInt(streamsProperties.getProperty("streamsFilter.parallelEvaluation.minBatchSize", "64"));
+        logger.info("Evaluating filters of the Processor API sources on " + threads + " worker threads for batches of at least " + minBatchSize + " records");
+        return new ParallelFilterEvaluator(threads, minBatchSize, jsonErrorLogger);
+    }
+
+    private void warnIfNotEvaluatedInParallel(String sourceName) {
+        if (parallelEvaluator != null) {
+            logger.warn("Source " + sourceName + " does not use the Processor API, its filter is not evaluated in parallel");
+        }
+    }
+
     /**
      * Adds a (sub-)topology for filtering based on the sources and predicate defined in properties
      * @param builder Streams Builder needed to generate the full topology
@@ -65,64 +186,628 @@ public class EventFilterPipeline {
 
         String inputTopicName = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".inputTopic");
         String outputTopicName = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".outputTopic");
-        String jsonFilterField = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".field");
-        String jsonFilterValue = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".filterPattern");
-        Boolean jsonFilterActionDrop = Boolean.parseBoolean(PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".filterActionDrop"));
+        Boolean byteArrayMode = isByteArrayMode(sourceName);
+        AtomicReference<SourceFilter> sourceFilter = addFilterGroup(Collections.singletonList(sourceName), getExtractor(sourceName), false).filters.get(0);
 
         logger.info("Creating sub-topology for " + inputTopicName + " -> " + outputTopicName);
-        logger.info(" - Filtering pattern: " + jsonFilterField + " = " + jsonFilterValue);
-        logger.info(" - drop matching messages: " + jsonFilterActionDrop + " = " + jsonFilterActionDrop);
-
-        if (jsonFilterActionDrop) {
-            builder
-                    .stream(inputTopicName,
-                            Consumed.with(Serdes.String(), Serdes.String()
-                            )
-                    )
-                    .filterNot((key, value)
-                            -> EventFilterPipelineTools.isEventMatchingThePattern(value, jsonFilterField, jsonFilterValue)
-                    )
-
-                    .to(outputTopicName);
+        logger.info(" - Filtering pattern: " + sourceFilter.get().getEventFilter());
+        logger.info(" - drop matching messages: " + sourceFilter.get().isFilterActionDrop());
+        logger.info(" - byte array mode: " + byteArrayMode);
+        warnIfDecisionCacheIgnored(sourceName, "is only supported with use.processor.api=true");
+        requireNoDeadLetterTopic(sourceName, "requires use.processor.api=true");
+
+        if (byteArrayMode) {
+            addFilterStream(builder, sourceName, inputTopicName, outputTopicName, Serdes.ByteArray(), sourceFilter::get, EventFilter::parseFields);
         } else {
-            builder
-                    .stream(inputTopicName,
-                            Consumed.with(Serdes.String(), Serdes.String()
-                            )
-                    )
-                    .filter((key, value)
-                            -> EventFilterPipelineTools.isEventMatchingThePattern(value, jsonFilterField, jsonFilterValue)
-                    )
+            addFilterStream(builder, sourceName, inputTopicName, outputTopicName, Serdes.String(), sourceFilter::get, EventFilter::parseFields);
+        }
+    }
+
+    /**
+     * Adds a filter between input and output topic, key and value are passed through with the given serde
+     * @param builder Streams Builder needed to generate the full topology
+     * @param sourceName Source Name from configuration, used to tag the metrics
+     * @param inputTopicName input topic
+     * @param outputTopicName output topic
+     * @param serde serde for key and value, String or ByteArray
+     * @param sourceFilter current filter and action of the source
+     * @param fieldExtraction function extracting the fields of a filter from the value
+     * @param <T> key and value type
+     */
+    private <T> void addFilterStream(StreamsBuilder builder, String sourceName, String inputTopicName, String outputTopicName, Serde<T> serde,
+                                     Supplier<SourceFilter> sourceFilter, BiFunction<EventFilter, T, String[]> fieldExtraction) {
+        deduplicated(builder, builder.stream(inputTopicName, Consumed.with(serde, serde)), sourceName, fieldExtraction)
+                .processValues(() -> new FilterValuesProcessor<>(sourceName, sourceFilter, fieldExtraction, jsonErrorLogger))
+                .to(outputTopicName, Produced.with(serde, serde));
+    }
+
+    /**
+     * Adds a {@link DeduplicationProcessor} with its window store if streamsFilter.&lt;source&gt;.dedupIdField is set
+     * @param builder Streams Builder needed to generate the full topology
+     * @param stream input stream of the source
+     * @param sourceName Source Name from configuration
+     * @param fieldExtraction function extracting the fields of a filter from the value, used to extract the id
+     * @param <T> key and value type
+     * @return stream without duplicates or the input stream if deduplication is not configured
+     */
+    private <T> KStream<T, T> deduplicated(StreamsBuilder builder, KStream<T, T> stream, String sourceName,
+                                           BiFunction<EventFilter, T, String[]> fieldExtraction) {
+        String idField = streamsProperties.getProperty("streamsFilter." + sourceName + ".dedupIdField");
+        if (idField == null) {
+            return stream;
+        }
+        long retentionMs = Long.parseLong(streamsProperties.getProperty("streamsFilter." + sourceName + ".dedupRetentionMs", "600000"));
+        String storeName = "dedup-" + sourceName;
+        JsonPathSet idPath = new JsonPathSet();
+        idPath.add(idField);
+        EventFilter idExtractor = EventFilter.matchingAll(getExtractor(sourceName), idPath);
+        logger.info(" - deduplication on " + idField + " within " + retentionMs + " ms");
+
+        builder.addStateStore(DeduplicationProcessor.storeBuilder(storeName, retentionMs));
+        return stream.process(() -> new DeduplicationProcessor<T, T>(sourceName, storeName, idExtractor, fieldExtraction, retentionMs), storeName);
+    }
+
+    /**
+     * Creates the compiled filter for a source from either the rule or the field and filterValues(File)/filterPattern
+     * properties, its fields are added to the given path set
+     * @param properties properties containing the filter rules, see {@link #loadFilterProperties()}
+     * @param sourceName Source Name from configuration
+     * @param extractor method used to extract the fields from the message
+     * @param pathSet path set, may be shared between sources reading the same input topic
+     * @return filter to be shared by all tasks of the (sub-)topology
+     */
+    private static EventFilter createEventFilter(Properties properties, String sourceName, JsonFieldExtractor extractor, JsonPathSet pathSet) {
+        String rule = properties.getProperty("streamsFilter." + sourceName + ".rule");
+        if (rule != null) {
+            return EventFilter.fromRule(rule, extractor, pathSet);
+        }
+
+        String jsonFilterField = PipelineConfigTools.getPropertyChecked(properties, "streamsFilter." + sourceName + ".field");
+        String filterValues = properties.getProperty("streamsFilter." + sourceName + ".filterValues");
+        if (filterValues != null) {
+            return EventFilter.forValues(jsonFilterField, splitList(filterValues), extractor, pathSet);
+        }
+
+        String filterValuesFile = properties.getProperty("streamsFilter." + sourceName + ".filterValuesFile");
+        if (filterValuesFile != null) {
+            return EventFilter.forValues(jsonFilterField, readValuesFile(filterValuesFile), extractor, pathSet);
+        }
+
+        String jsonFilterValue = PipelineConfigTools.getPropertyChecked(properties, "streamsFilter." + sourceName + ".filterPattern");
+        return new EventFilter(jsonFilterField, jsonFilterValue, extractor, pathSet);
+    }
 
-                    .to(outputTopicName);
+    private static List<String> splitList(String list) {
+        List<String> values = new ArrayList<>();
+        for (String value : list.split(",")) {
+            values.add(value.trim());
         }
+        return values;
+    }
+
+    private static CompactValueSet readValuesFile(String valuesFile) {
+        try {
+            long start = System.nanoTime();
+            CompactValueSet values = CompactValueSet.fromFile(Paths.get(valuesFile));
+            logger.info("Loaded " + values.size() + " values (" + values.getMemoryBytes() / 1024 + " KiB) from "
+                    + valuesFile + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+            return values;
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read filter values file " + valuesFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compiles the filters of sources reading the same input topic and registers them for reloading
+     * @param sourceNames Source Names from configuration
+     * @param extractor method used to extract the fields from the message
+     * @param processorApi false if the filters are evaluated without access to headers and metadata (DSL), record
+     *                     rules and projections are only supported with the Processor API
+     * @return filters of the sources
+     */
+    private FilterGroup addFilterGroup(List<String> sourceNames, JsonFieldExtractor extractor, boolean processorApi) {
+        FilterGroup filterGroup = new FilterGroup(sourceNames, extractor, processorApi);
+        filterGroup.publish(filterGroup.compile(filterProperties));
+        filterGroups.add(filterGroup);
+        return filterGroup;
+    }
+
+    /**
+     * Compiles the filter of a single source as used with the Processor API, without adding it to a topology or
+     * registering it for reloading, e.g. for {@link FileReplay}
+     * @param sourceName Source Name from configuration
+     * @return filter of the source
+     */
+    SourceFilter compileSourceFilter(String sourceName) {
+        return new FilterGroup(Collections.singletonList(sourceName), getExtractor(sourceName), true)
+                .compile(loadFilterProperties()).get(0);
+    }
+
+    /**
+     * Reads the filter settings, i.e. the streams properties overridden by the (optional) streamsFilter.rulesFile
+     * @return properties to compile the filters with
+     */
+    private Properties loadFilterProperties() {
+        Properties properties = new Properties();
+        properties.putAll(streamsProperties);
+        properties.putAll(readRulesFile());
+        return properties;
+    }
+
+    private Properties readRulesFile() {
+        Properties rules = new Properties();
+        String rulesFile = streamsProperties.getProperty("streamsFilter.rulesFile");
+        if (rulesFile != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(rulesFile), StandardCharsets.UTF_8)) {
+                rules.load(reader);
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read filter rules file " + rulesFile + ": " + e.getMessage(), e);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Re-reads the filter rules (field, filterPattern, filterValues(File), rule, recordRule, outputFields and filterActionDrop of each
+     * source) and swaps them into the running (sub-)topologies. Either all filters are replaced or, if any of them is invalid, none.
+     * Settings that change the topology (e.g. topics, extractor or byteArrayMode) are not applied and require a restart.
+     * @return true if the new rules were applied
+     */
+    public synchronized boolean reloadRules() {
+        Properties properties;
+        List<List<SourceFilter>> compiledGroups = new ArrayList<>();
+        try {
+            properties = loadFilterProperties();
+            for (FilterGroup filterGroup : filterGroups) {
+                compiledGroups.add(filterGroup.compile(properties));
+            }
+        } catch (RuntimeException e) {
+            logger.error("Invalid filter rules, keeping the current ones: " + e.getMessage());
+            return false;
+        }
+
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("streamsFilter.") && !isReloadable(key)
+                    && !properties.getProperty(key).equals(filterProperties.getProperty(key))) {
+                logger.warn("Ignoring changed setting " + key + ", a restart is required to apply it");
+            }
+        }
+
+        for (int i = 0; i < filterGroups.size(); i++) {
+            publishReloaded(filterGroups.get(i), compiledGroups.get(i));
+        }
+        filterProperties = properties;
+        return true;
+    }
+
+    /**
+     * Re-reads the filterValuesFile of a source and recompiles only the filters sharing its input topic with the
+     * current rules, the filters (and decision caches) of the other sources are kept
+     * @param sourceName Source Name from configuration whose values file changed
+     * @return true if the new values were applied
+     */
+    synchronized boolean reloadFilterValues(String sourceName) {
+        for (FilterGroup filterGroup : filterGroups) {
+            if (filterGroup.sourceNames.contains(sourceName)) {
+                List<SourceFilter> compiled;
+                try {
+                    compiled = filterGroup.compile(filterProperties);
+                } catch (RuntimeException e) {
+                    logger.error("Invalid filter values of source " + sourceName + ", keeping the current ones: " + e.getMessage());
+                    return false;
+                }
+                publishReloaded(filterGroup, compiled);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void publishReloaded(FilterGroup filterGroup, List<SourceFilter> compiled) {
+        filterGroup.publish(compiled);
+        for (int i = 0; i < filterGroup.sourceNames.size(); i++) {
+            logger.info("Reloaded filter of source " + filterGroup.sourceNames.get(i) + ": " + compiled.get(i));
+        }
+    }
+
+    private static boolean isReloadable(String key) {
+        return key.endsWith(".field") || key.endsWith(".filterPattern") || key.endsWith(".filterValues")
+                || key.endsWith(".filterValuesFile") || key.endsWith(".rule") || key.endsWith(".recordRule")
+                || key.endsWith(".outputFields") || key.endsWith(".filterActionDrop") || key.endsWith(".samplePercent")
+                || key.endsWith(".sampleField") || key.endsWith(".maxPerSecond") || key.endsWith(".maxBurst")
+                || key.endsWith(".maxPerWindow") || key.endsWith(".windowMs");
+    }
+
+    private JsonFieldExtractor getExtractor(String sourceName) {
+        return JsonFieldExtractor.fromConfig(
+                streamsProperties.getProperty("streamsFilter." + sourceName + ".extractor", "json-object"));
+    }
+
+    private boolean isByteArrayMode(String sourceName) {
+        return Boolean.parseBoolean(streamsProperties.getProperty("streamsFilter." + sourceName + ".byteArrayMode", "false"));
+    }
+
+    int getDecisionCacheSize(String sourceName) {
+        return Integer.parseInt(streamsProperties.getProperty("streamsFilter." + sourceName + ".decisionCacheSize", "0"));
+    }
+
+    long getDecisionCacheMaxBytes(String sourceName) {
+        return Long.parseLong(streamsProperties.getProperty("streamsFilter." + sourceName + ".decisionCacheMaxBytes", "16777216"));
     }
 
     private void addSubTopologyForSourceProcessorApi(StreamsBuilder builder, String sourceName) {
 
         String inputTopicName = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".inputTopic");
         String outputTopicName = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".outputTopic");
-        String jsonFilterField = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".field");
-        String jsonFilterValue = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".filterPattern");
-        Boolean jsonFilterActionDrop = Boolean.parseBoolean(PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".filterActionDrop"));
+        Boolean byteArrayMode = isByteArrayMode(sourceName);
+        AtomicReference<SourceFilter> sourceFilter = addFilterGroup(Collections.singletonList(sourceName), getExtractor(sourceName), true).filters.get(0);
 
         logger.info("Creating sub-topology for " + inputTopicName + " -> " + outputTopicName);
-        logger.info(" - Filtering pattern: " + jsonFilterField + " = " + jsonFilterValue);
-        logger.info(" - drop matching messages: " + jsonFilterActionDrop + " = " + jsonFilterActionDrop);
+        logger.info(" - Filtering pattern: " + sourceFilter.get().getEventFilter());
+        logger.info(" - record rule: " + sourceFilter.get().getRecordFilter());
+        logger.info(" - drop matching messages: " + sourceFilter.get().isFilterActionDrop());
+        logger.info(" - byte array mode: " + byteArrayMode);
+        logger.info(" - decision cache size: " + getDecisionCacheSize(sourceName));
+        logger.info(" - output fields: " + sourceFilter.get().getProjection());
+        logger.info(" - forward limits: " + sourceFilter.get().getLimiter());
+        logger.info(" - dead letter topic: " + getDeadLetterTopic(sourceName));
+        if (parallelEvaluator != null) {
+            parallelEvaluator.register(inputTopicName, sourceName, sourceFilter::get);
+        }
 
-        builder
+        if (byteArrayMode) {
+            addFilterProcessor(builder, sourceName, inputTopicName, outputTopicName, Serdes.ByteArray(), sourceFilter::get, EventFilter::parseFields,
+                    (value, projected) -> projected.getBytes(StandardCharsets.UTF_8));
+        } else {
+            addFilterProcessor(builder, sourceName, inputTopicName, outputTopicName, Serdes.String(), sourceFilter::get, EventFilter::parseFields,
+                    (value, projected) -> projected);
+        }
+    }
+
+    /**
+     * Adds a {@link StreamFilterProcessor} between input and output topic, key and value are passed through with the given serde
+     * @param builder Streams Builder needed to generate the full topology
+     * @param sourceName Source Name from configuration, used to tag the metrics
+     * @param inputTopicName input topic
+     * @param outputTopicName output topic
+     * @param serde serde for key and value, String or ByteArray
+     * @param sourceFilter current filter and action of the source
+     * @param fieldExtraction function extracting the fields of a filter from the value
+     * @param projectedValue function converting projected JSON to the value type
+     * @param <T> key and value type
+     */
+    private <T> void addFilterProcessor(StreamsBuilder builder, String sourceName, String inputTopicName, String outputTopicName, Serde<T> serde,
+                                        Supplier<SourceFilter> sourceFilter, BiFunction<EventFilter, T, String[]> fieldExtraction,
+                                        BiFunction<T, String, T> projectedValue) {
+        boolean parallelDecisions = parallelEvaluator != null;
+        KStream<T, T> filteredStream = deduplicated(builder, builder.stream(inputTopicName, Consumed.with(serde, serde)), sourceName, fieldExtraction)
+                .process(() -> new StreamFilterProcessor<T, T>(sourceName, sourceFilter, fieldExtraction,
+                        getDecisionCacheSize(sourceName), getDecisionCacheMaxBytes(sourceName), projectedValue,
+                        getDeadLetterTopic(sourceName) != null, parallelDecisions, jsonErrorLogger));
+        toOutputTopic(filteredStream, sourceName, outputTopicName, Produced.with(serde, serde));
+    }
+
+    String getDeadLetterTopic(String sourceName) {
+        return streamsProperties.getProperty("streamsFilter." + sourceName + ".deadLetterTopic");
+    }
+
+    private void warnIfDecisionCacheIgnored(String sourceName, String reason) {
+        if (getDecisionCacheSize(sourceName) > 0) {
+            logger.warn("Decision cache of source " + sourceName + " " + reason + ", ignoring it");
+        }
+    }
+
+    private void requireNoDeadLetterTopic(String sourceName, String reason) {
+        if (getDeadLetterTopic(sourceName) != null) {
+            throw new RuntimeException("Dead letter topic of source " + sourceName + " " + reason + "!");
+        }
+    }
+
+    /**
+     * Writes the records forwarded by the {@link StreamFilterProcessor} of a source to its output topic, records with a
+     * {@link StreamFilterProcessor#DEAD_LETTER_HEADER} are written to the dead letter topic if one is configured
+     * @param stream output of the processor
+     * @param sourceName Source Name from configuration
+     * @param outputTopicName output topic
+     * @param produced serdes for key and value
+     * @param <K> key type
+     * @param <V> value type
+     */
+    private <K, V> void toOutputTopic(KStream<K, V> stream, String sourceName, String outputTopicName, Produced<K, V> produced) {
+        String deadLetterTopicName = getDeadLetterTopic(sourceName);
+        if (deadLetterTopicName == null) {
+            stream.to(outputTopicName, produced);
+        } else {
+            stream.to((key, value, recordContext) -> isDeadLetter(recordContext) ? deadLetterTopicName : outputTopicName, produced);
+        }
+    }
+
+    private static boolean isDeadLetter(RecordContext recordContext) {
+        return recordContext.headers().lastHeader(StreamFilterProcessor.DEAD_LETTER_HEADER) != null;
+    }
+
+    /**
+     * Adds a (sub-)topology routing each event of the input topic to the output topic of the first matching route
+     * defined via streamsFilter.&lt;source&gt;.routes, the input topic is consumed and each event parsed only once
+     * @param builder Streams Builder needed to generate the full topology
+     * @param sourceName Source Name from configuration
+     */
+    private void addRoutingSubTopologyForSource(StreamsBuilder builder, String sourceName) {
+
+        String inputTopicName = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".inputTopic");
+        Boolean byteArrayMode = isByteArrayMode(sourceName);
+        if (streamsProperties.getProperty("streamsFilter." + sourceName + ".recordRule") != null) {
+            throw new RuntimeException("Record rules are not supported for routing source " + sourceName + "!");
+        }
+        if (streamsProperties.getProperty("streamsFilter." + sourceName + ".outputFields") != null) {
+            throw new RuntimeException("Output fields are not supported for routing source " + sourceName + "!");
+        }
+        requireNoDeadLetterTopic(sourceName, "is not supported for routing");
+        warnIfDecisionCacheIgnored(sourceName, "is not supported for routing");
+
+        EventRouter eventRouter = createEventRouter(sourceName);
+
+        logger.info("Creating routing sub-topology for " + inputTopicName);
+        logger.info(" - Routes: " + eventRouter);
+        logger.info(" - byte array mode: " + byteArrayMode);
+
+        if (byteArrayMode) {
+            addRoutingStream(builder, sourceName, inputTopicName, Serdes.ByteArray(), eventRouter::route, EventFilter::parseFields);
+        } else {
+            addRoutingStream(builder, sourceName, inputTopicName, Serdes.String(), eventRouter::route, EventFilter::parseFields);
+        }
+    }
+
+    /**
+     * Creates the router of a source from streamsFilter.&lt;source&gt;.routes and its defaultTopic
+     * @param sourceName Source Name from configuration
+     * @return router to be shared by all tasks of the (sub-)topology
+     */
+    EventRouter createEventRouter(String sourceName) {
+        String[] routes = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".routes").split(",");
+        String defaultTopicName = streamsProperties.getProperty("streamsFilter." + sourceName + ".defaultTopic");
+        EventRouter eventRouter = new EventRouter(getExtractor(sourceName), defaultTopicName, jsonErrorLogger);
+        for (String route : routes) {
+            String routePrefix = "streamsFilter." + sourceName + ".routes." + route.trim();
+            eventRouter.addRoute(
+                    PipelineConfigTools.getPropertyChecked(streamsProperties, routePrefix + ".rule"),
+                    PipelineConfigTools.getPropertyChecked(streamsProperties, routePrefix + ".outputTopic"));
+        }
+        return eventRouter;
+    }
+
+    /**
+     * Adds routing from the input topic to the topics returned by the router, key and value are passed through with the given serde
+     * @param builder Streams Builder needed to generate the full topology
+     * @param sourceName Source Name from configuration
+     * @param inputTopicName input topic
+     * @param serde serde for key and value, String or ByteArray
+     * @param eventRouter function returning the output topic for a value, null to drop it
+     * @param fieldExtraction function extracting the fields of a filter from the value, used for deduplication
+     * @param <T> key and value type
+     */
+    private <T> void addRoutingStream(StreamsBuilder builder, String sourceName, String inputTopicName, Serde<T> serde,
+                                      Function<T, String> eventRouter, BiFunction<EventFilter, T, String[]> fieldExtraction) {
+        deduplicated(builder, builder.stream(inputTopicName, Consumed.with(serde, serde)), sourceName, fieldExtraction)
+                .mapValues(value -> RoutedValue.of(eventRouter.apply(value), value))
+                .filter((key, routedValue) -> routedValue != null)
+                .to((key, routedValue, recordContext) -> routedValue.getTopic(),
+                        Produced.with(serde, RoutedValue.serde(serde)));
+    }
+
+    /**
+     * Adds a (sub-)topology for several filter sources reading the same input topic. The topic is consumed by a single
+     * source node and the fields referenced by all filters are extracted once per event before the filters are applied.
+     * All sources need to use the same byteArrayMode, the extractor of the first source is used.
+     * @param builder Streams Builder needed to generate the full topology
+     * @param inputTopicName input topic shared by the sources
+     * @param sourceNames Source Names from configuration
+     * @param usePapi use {@link StreamFilterProcessor} instead of DSL filters
+     */
+    private void addSharedSubTopologyForSources(StreamsBuilder builder, String inputTopicName, List<String> sourceNames, boolean usePapi) {
+
+        JsonFieldExtractor extractor = getExtractor(sourceNames.get(0));
+        boolean byteArrayMode = isByteArrayMode(sourceNames.get(0));
+        List<String> outputTopicNames = new ArrayList<>();
+
+        for (String sourceName : sourceNames) {
+            if (streamsProperties.getProperty("streamsFilter." + sourceName + ".routes") != null) {
+                throw new RuntimeException("Routing source " + sourceName + " cannot share input topic " + inputTopicName + ", add routes to it instead!");
+            }
+            if (isByteArrayMode(sourceName) != byteArrayMode) {
+                throw new RuntimeException("Sources " + sourceNames + " share input topic " + inputTopicName + " and need the same byteArrayMode!");
+            }
+            if (getExtractor(sourceName) != extractor) {
+                logger.warn("Sources " + sourceNames + " share input topic " + inputTopicName + ", using extractor " + extractor + " for all of them");
+            }
+            if (!usePapi) {
+                requireNoDeadLetterTopic(sourceName, "requires use.processor.api=true");
+                warnIfDecisionCacheIgnored(sourceName, "is only supported with use.processor.api=true");
+            }
+            if (streamsProperties.getProperty("streamsFilter." + sourceName + ".dedupIdField") != null) {
+                throw new RuntimeException("Deduplication of source " + sourceName + " is not supported for sources sharing input topic " + inputTopicName + "!");
+            }
+            outputTopicNames.add(PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter." + sourceName + ".outputTopic"));
+        }
+
+        FilterGroup filterGroup = addFilterGroup(sourceNames, extractor, usePapi);
+        for (int i = 0; i < sourceNames.size(); i++) {
+            SourceFilter sourceFilter = filterGroup.filters.get(i).get();
+            logger.info("Creating shared sub-topology for " + inputTopicName + " -> " + outputTopicNames.get(i));
+            logger.info(" - Filtering pattern: " + sourceFilter.getEventFilter());
+            logger.info(" - record rule: " + sourceFilter.getRecordFilter());
+            logger.info(" - drop matching messages: " + sourceFilter.isFilterActionDrop());
+            logger.info(" - decision cache size: " + (usePapi ? getDecisionCacheSize(sourceNames.get(i)) : 0));
+            logger.info(" - output fields: " + sourceFilter.getProjection());
+            logger.info(" - forward limits: " + sourceFilter.getLimiter());
+            logger.info(" - dead letter topic: " + getDeadLetterTopic(sourceNames.get(i)));
+        }
+        logger.info(" - extracted fields: " + filterGroup.getPathSet());
+        for (int i = 0; i < sourceNames.size() && parallelEvaluator != null; i++) {
+            if (usePapi) {
+                parallelEvaluator.register(inputTopicName, sourceNames.get(i), filterGroup.filters.get(i)::get);
+            } else {
+                warnIfNotEvaluatedInParallel(sourceNames.get(i));
+            }
+        }
+
+        if (byteArrayMode) {
+            addSharedFilterStreams(builder, inputTopicName, Serdes.ByteArray(), filterGroup, outputTopicNames,
+                    (byte[] value, JsonPathSet pathSet) -> extractor.parseStringsForPaths(value, pathSet), EventFilter::parseFields,
+                    projected -> projected.getBytes(StandardCharsets.UTF_8), usePapi);
+        } else {
+            addSharedFilterStreams(builder, inputTopicName, Serdes.String(), filterGroup, outputTopicNames,
+                    (String value, JsonPathSet pathSet) -> extractor.parseStringsForPaths(value, pathSet), EventFilter::parseFields,
+                    projected -> projected, usePapi);
+        }
+    }
+
+    /**
+     * Adds a single source for the input topic, the field extraction and one filter branch per output topic. Filters
+     * replaced by a reload after the fields of an event were extracted extract their fields again.
+     * @param builder Streams Builder needed to generate the full topology
+     * @param inputTopicName input topic
+     * @param serde serde for key and value, String or ByteArray
+     * @param filterGroup filters of the sources
+     * @param outputTopicNames output topics in the order of the sources
+     * @param fieldExtraction function extracting the fields of all filters from a value
+     * @param filterFieldExtraction function extracting the fields of a single filter from a value
+     * @param projectedValue function converting projected JSON to the value type
+     * @param usePapi use {@link StreamFilterProcessor} instead of DSL filters
+     * @param <T> key and value type
+     */
+    private <T> void addSharedFilterStreams(StreamsBuilder builder, String inputTopicName, Serde<T> serde,
+                                            FilterGroup filterGroup, List<String> outputTopicNames,
+                                            BiFunction<T, JsonPathSet, String[]> fieldExtraction,
+                                            BiFunction<EventFilter, T, String[]> filterFieldExtraction,
+                                            Function<String, T> projectedValue, boolean usePapi) {
+        boolean parallelDecisions = parallelEvaluator != null;
+        KStream<T, ExtractedEvent<T>> extractedStream = builder
                 .stream(inputTopicName,
-                        Consumed.with(Serdes.String(), Serdes.String()
-                        )
+                        Consumed.with(serde, serde)
                 )
-                .process(() -> new StreamFilterProcessor(jsonFilterField, jsonFilterValue, jsonFilterActionDrop))
-                .to(outputTopicName, Produced.with(Serdes.String(), Serdes.String()));
+                .mapValues(value -> new ExtractedEvent<>(value, filterGroup.getPathSet(), fieldExtraction));
+
+        BiFunction<EventFilter, ExtractedEvent<T>, String[]> extractedFields = (eventFilter, event) ->
+                event.getPathSet() == eventFilter.getPathSet()
+                        ? event.getFields()
+                        : filterFieldExtraction.apply(eventFilter, event.getValue());
+
+        for (int i = 0; i < outputTopicNames.size(); i++) {
+            String sourceName = filterGroup.sourceNames.get(i);
+            AtomicReference<SourceFilter> sourceFilter = filterGroup.filters.get(i);
+            KStream<T, ExtractedEvent<T>> filteredStream;
+            if (usePapi) {
+                filteredStream = extractedStream.process(() -> new StreamFilterProcessor<T, ExtractedEvent<T>>(
+                        sourceName, sourceFilter::get, extractedFields,
+                        getDecisionCacheSize(sourceName), getDecisionCacheMaxBytes(sourceName),
+                        (event, projected) -> new ExtractedEvent<>(projectedValue.apply(projected), null, null),
+                        getDeadLetterTopic(sourceName) != null, parallelDecisions, jsonErrorLogger));
+            } else {
+                filteredStream = extractedStream.processValues(() -> new FilterValuesProcessor<>(
+                        sourceName, sourceFilter::get, extractedFields, jsonErrorLogger));
+            }
+            toOutputTopic(filteredStream.mapValues(ExtractedEvent::getValue), sourceName, outputTopicNames.get(i), Produced.with(serde, serde));
+        }
     }
 
-    void run() {
+    /**
+     * Filters of the sources reading one input topic, compiled against a common path set. All filters of the group are
+     * recompiled against a new path set when the rules are reloaded.
+     */
+    private static class FilterGroup {
+        final List<String> sourceNames;
+        final JsonFieldExtractor extractor;
+        final boolean processorApi;
+        final List<AtomicReference<SourceFilter>> filters = new ArrayList<>();
+
+        FilterGroup(List<String> sourceNames, JsonFieldExtractor extractor, boolean processorApi) {
+            this.sourceNames = sourceNames;
+            this.extractor = extractor;
+            this.processorApi = processorApi;
+            for (int i = 0; i < sourceNames.size(); i++) {
+                filters.add(new AtomicReference<>());
+            }
+        }
+
+        /**
+         * @param properties properties containing the filter rules
+         * @return new filters in the order of the sources, their limiters continue the counts of the current filters
+         * if the limits are unchanged
+         * @throws RuntimeException if a rule is invalid or missing
+         */
+        List<SourceFilter> compile(Properties properties) {
+            JsonPathSet pathSet = new JsonPathSet();
+            List<SourceFilter> compiled = new ArrayList<>();
+            for (String sourceName : sourceNames) {
+                String prefix = "streamsFilter." + sourceName + ".";
+                String recordRule = properties.getProperty(prefix + "recordRule");
+                if (recordRule != null && !processorApi) {
+                    throw new RuntimeException("Record rule of source " + sourceName + " requires use.processor.api=true!");
+                }
+                String outputFields = properties.getProperty(prefix + "outputFields");
+                if (outputFields != null && !processorApi) {
+                    throw new RuntimeException("Output fields of source " + sourceName + " require use.processor.api=true!");
+                }
+                String sampleField = properties.getProperty(prefix + "sampleField");
+                if (sampleField != null && !processorApi) {
+                    throw new RuntimeException("Sample field of source " + sourceName + " requires use.processor.api=true!");
+                }
+                RecordFilter recordFilter = recordRule == null ? null : new RecordFilter(recordRule);
+                boolean valueFiltered = recordFilter == null
+                        || properties.getProperty(prefix + "rule") != null || properties.getProperty(prefix + "field") != null;
+                EventFilter eventFilter = valueFiltered ? createEventFilter(properties, sourceName, extractor, pathSet)
+                        : outputFields != null || sampleField != null ? EventFilter.matchingAll(extractor, pathSet) : null;
+                ForwardLimiter limiter = ForwardLimiter.fromProperties(properties, sourceName, pathSet);
+                SourceFilter previous = filters.get(compiled.size()).get();
+                if (limiter != null && previous != null) {
+                    limiter = limiter.continuing(previous.getLimiter());
+                }
+                compiled.add(new SourceFilter(
+                        eventFilter,
+                        recordFilter,
+                        outputFields == null ? null : new JsonProjection(splitList(outputFields), pathSet),
+                        Boolean.parseBoolean(PipelineConfigTools.getPropertyChecked(properties, prefix + "filterActionDrop")),
+                        limiter));
+            }
+            return compiled;
+        }
+
+        void publish(List<SourceFilter> compiled) {
+            for (int i = 0; i < compiled.size(); i++) {
+                filters.get(i).set(compiled.get(i));
+            }
+        }
+
+        /**
+         * @return path set of the current filters, used to extract the fields for all of them at once, null if no
+         * source filters on the value
+         */
+        JsonPathSet getPathSet() {
+            for (AtomicReference<SourceFilter> filter : filters) {
+                EventFilter eventFilter = filter.get().getEventFilter();
+                if (eventFilter != null) {
+                    return eventFilter.getPathSet();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Starts the Kafka Streams application and blocks until it is shut down
+     * @param metricsPort port of the HTTP endpoint for metrics and health probes, null to disable it
+     */
+    void run(Integer metricsPort) {
         final Topology topology = createMultiTopology();
 
-        final KafkaStreams streams = new KafkaStreams(topology, streamsProperties);
+        final KafkaStreams streams = new KafkaStreams(topology, parallelEvaluator == null ? streamsProperties
+                : PipelineConfigTools.withParallelFilterInterceptor(streamsProperties, parallelEvaluator));
+        if (PipelineConfigTools.isExactlyOnce(streamsProperties)) {
+            TransactionMetrics.register(getMetrics(), streams::metrics);
+        }
+        final MetricsHttpServer metricsServer = metricsPort == null ? null : createMetricsServer(metricsPort, streams);
+        final List<FileChangeWatcher> fileWatchers = createFileWatchers();
         final CountDownLatch latch = new CountDownLatch(1);
 
         // attach shutdown handler to catch control-c
@@ -130,6 +815,13 @@ public class EventFilterPipeline {
             @Override
             public void run() {
                 streams.close();
+                if (metricsServer != null) {
+                    metricsServer.close();
+                }
+                for (FileChangeWatcher fileWatcher : fileWatchers) {
+                    fileWatcher.close();
+                }
+                close();
                 latch.countDown();
             }
         });
@@ -144,6 +836,62 @@ public class EventFilterPipeline {
         System.exit(0);
     }
 
+    /**
+     * Builds the topology and the Kafka Streams client without starting it and closes them again, e.g. to validate the
+     * configuration or as training run for a class data sharing archive. The client does not need to reach the brokers,
+     * the configuration must be read with {@link PipelineConfigTools#configureStreamsProperties(boolean, boolean, String...)}
+     * without partition lookup for that.
+     */
+    void dryRun() {
+        final Topology topology = createMultiTopology();
+        final KafkaStreams streams = new KafkaStreams(topology, parallelEvaluator == null ? streamsProperties
+                : PipelineConfigTools.withParallelFilterInterceptor(streamsProperties, parallelEvaluator));
+        streams.close();
+        close();
+        logger.info("Dry run finished: " + topology.describe());
+    }
+
+    /**
+     * Starts watching the streamsFilter.rulesFile and the filterValuesFile of each source if configured, changes are
+     * applied with {@link #reloadRules()} and {@link #reloadFilterValues(String)}. The files to watch are determined at
+     * startup.
+     * @return watchers
+     */
+    private List<FileChangeWatcher> createFileWatchers() {
+        List<FileChangeWatcher> watchers = new ArrayList<>();
+        String rulesFile = streamsProperties.getProperty("streamsFilter.rulesFile");
+        if (rulesFile != null) {
+            long intervalMs = Long.parseLong(streamsProperties.getProperty("streamsFilter.rulesFileCheckIntervalMs", "10000"));
+            watchers.add(new FileChangeWatcher(Paths.get(rulesFile), intervalMs, this::reloadRules));
+        }
+
+        for (FilterGroup filterGroup : filterGroups) {
+            for (String sourceName : filterGroup.sourceNames) {
+                String valuesFile = filterProperties.getProperty("streamsFilter." + sourceName + ".filterValuesFile");
+                if (valuesFile != null) {
+                    long intervalMs = Long.parseLong(filterProperties.getProperty(
+                            "streamsFilter." + sourceName + ".filterValuesFileCheckIntervalMs", "60000"));
+                    watchers.add(new FileChangeWatcher(Paths.get(valuesFile), intervalMs, () -> reloadFilterValues(sourceName)));
+                }
+            }
+        }
+        return watchers;
+    }
+
+    /**
+     * Starts the HTTP endpoint serving the Kafka Streams metrics and the metrics of {@link #getMetrics()}
+     * @param port port to listen on
+     * @param streams Kafka Streams client providing state and metrics
+     * @return running server
+     */
+    private MetricsHttpServer createMetricsServer(int port, KafkaStreams streams) {
+        try {
+            return new MetricsHttpServer(port, streams::state, Arrays.asList(streams::metrics, getMetrics()::metrics));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot start metrics endpoint on port " + port, e);
+        }
+    }
+
 
 
 
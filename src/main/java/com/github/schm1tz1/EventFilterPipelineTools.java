@@ -1,11 +1,16 @@
 package com.github.schm1tz1;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.regex.Pattern;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Tools for Kafka Streams Pipeline data processing
@@ -13,16 +18,91 @@ import java.util.regex.Pattern;
 public class EventFilterPipelineTools {
 
     final static Logger logger = LoggerFactory.getLogger(EventFilterPipelineTools.class);
+    /** log of the standalone extraction helpers, the pipeline handles parse errors with its own configured log */
+    final static SampledErrorLogger jsonErrorLogger = new SampledErrorLogger(logger, SampledErrorLogger.DEFAULT_MAX_PER_MINUTE);
+
+    /** error of null values (tombstones), which are reported as invalid JSON by all extractors */
+    public static final String NULL_VALUE_ERROR = "null value (tombstone)";
+
+    /** path step matching any element of an array */
+    public static final String WILDCARD = "[*]";
+
+    /** patterns cached for {@link #isEventMatchingThePattern}, the cache is cleared when it is full */
+    private static final int MAX_CACHED_PATTERNS = 256;
+    private static final ConcurrentHashMap<String, ValueMatcher> patternMatchers = new ConcurrentHashMap<>();
 
     /**
-     * Checks if we have a matching event using the logic provided as an argument
+     * Checks if we have a matching event using the logic provided as an argument. The matchers of recently used
+     * patterns are cached, filters of the pipeline compile their pattern once with {@link EventFilter} instead.
      * @param inputMessageValue Input message to be tested (value part)
      * @param jsonPath JSON path to be checked
      * @param patternToMatch Pattern that our value needs to match
      * @return predicate returns true if we match the condition to discard an event
      */
     public static boolean isEventMatchingThePattern(String inputMessageValue, String jsonPath, String patternToMatch) {
-        return Pattern.matches(patternToMatch, getStringForPath(inputMessageValue, jsonPath));
+        ValueMatcher matcher = patternMatchers.get(patternToMatch);
+        if (matcher == null) {
+            if (patternMatchers.size() >= MAX_CACHED_PATTERNS) {
+                patternMatchers.clear();
+            }
+            matcher = ValueMatcher.forPattern(patternToMatch);
+            patternMatchers.put(patternToMatch, matcher);
+        }
+        return matcher.matches(getStringForPath(inputMessageValue, jsonPath));
+    }
+
+    /**
+     * Splits a dot-separated JSON path into its steps, array indices and wildcards are separate steps
+     * @param path JSON path, e.g. attributes.friendly_name, items[0].id or items[*].id
+     * @return path steps, e.g. items, [0], id
+     */
+    public static String[] splitPath(String path) {
+        List<String> steps = new ArrayList<>();
+        for (String step : path.split("\\.")) {
+            int bracket = step.indexOf('[');
+            if (bracket < 0) {
+                steps.add(step);
+                continue;
+            }
+            if (bracket > 0) {
+                steps.add(step.substring(0, bracket));
+            }
+            while (bracket >= 0) {
+                int end = step.indexOf(']', bracket);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Invalid JSON path " + path + ": missing ']'");
+                }
+                String index = step.substring(bracket, end + 1);
+                if (!index.equals(WILDCARD) && arrayIndex(index) < 0) {
+                    throw new IllegalArgumentException("Invalid JSON path " + path + ": expected [<index>] or [*]");
+                }
+                steps.add(index);
+                bracket = end + 1 < step.length() ? end + 1 : -1;
+                if (bracket >= 0 && step.charAt(bracket) != '[') {
+                    throw new IllegalArgumentException("Invalid JSON path " + path + ": unexpected input after ']'");
+                }
+            }
+        }
+        return steps.toArray(new String[0]);
+    }
+
+    /**
+     * @param step path step
+     * @return array index of a step like [0], -1 if the step is a member name or a wildcard
+     */
+    public static int arrayIndex(String step) {
+        if (step.length() < 3 || step.charAt(0) != '[' || step.charAt(step.length() - 1) != ']') {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 1; i < step.length() - 1; i++) {
+            char c = step.charAt(i);
+            if (c < '0' || c > '9' || index > (Integer.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
     }
 
     /**
@@ -32,32 +112,240 @@ public class EventFilterPipelineTools {
      * @return String-encoded value
      */
     public static String getStringForPath(String inputJsonString, String path) {
-        logger.trace("predicate input: " + inputJsonString);
-        logger.trace("JSON path: " + path);
+        return getStringForPath(inputJsonString, splitPath(path));
+    }
+
+    /**
+     * Parses and extracts a String object from a given UTF-8 encoded JSON input
+     * @param inputJsonBytes UTF-8 encoded JSON input
+     * @param pathSegments pre-split JSON path to field that is to be extracted, see {@link #splitPath(String)}
+     * @return String-encoded value
+     */
+    public static String getStringForPath(byte[] inputJsonBytes, String[] pathSegments) {
+        return getStringForPath(decode(inputJsonBytes), pathSegments);
+    }
+
+    /**
+     * Parses and extracts a String object from a given String-based JSON input
+     * @param inputJsonString String-encoded JSON input
+     * @param pathSegments pre-split JSON path to field that is to be extracted, see {@link #splitPath(String)}
+     * @return String-encoded value
+     */
+    public static String getStringForPath(String inputJsonString, String[] pathSegments) {
+        logger.trace("predicate input: {}", inputJsonString);
 
         try {
-            JSONObject jsonObject = new JSONObject(inputJsonString);
-            for (String step : path.split("\\.")) {
-                if (jsonObject.has(step)) {
-                    Object subObject = jsonObject.get(step);
-                    logger.trace("next step: " + jsonObject);
-
-                    if (subObject.getClass().equals(JSONObject.class)) {
-                        jsonObject = (JSONObject) subObject;
-                    } else if (subObject.getClass().equals(String.class)) {
-                        logger.trace("Found String Object "+subObject);
-                        return (String) subObject;
-                    } else if (subObject.getClass().equals(Integer.class)) {
-                        logger.trace("Found Integer Object "+subObject);
-                        return String.valueOf(subObject);
-                    } else {
-                        logger.error("Unsupported field format: " + subObject.getClass().getSimpleName());
-                    }
-                }
+            return getStringForPath(parseObject(inputJsonString), pathSegments);
+        } catch (JSONException err) {
+            jsonErrorLogger.error(() -> "Error in JSON processing, cannot retrieve " + String.join(".", pathSegments) + " from input String: " + err);
+        }
+        return "";
+    }
+
+    /**
+     * Parses a String-based JSON input once and extracts String objects for multiple paths
+     * @param inputJsonString String-encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set
+     */
+    public static String[] getStringsForPaths(String inputJsonString, JsonPathSet pathSet) {
+        try {
+            return parseStringsForPaths(inputJsonString, pathSet);
+        } catch (JSONException err) {
+            jsonErrorLogger.error(() -> "Error in JSON processing, cannot retrieve " + pathSet + " from input String: " + err);
+        }
+        return emptyValues(pathSet);
+    }
+
+    /**
+     * Parses a String-based JSON input once and extracts String objects for multiple paths, errors are passed on to
+     * the caller instead of being logged
+     * @param inputJsonString String-encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set
+     * @throws JSONException if the input is not valid JSON
+     */
+    public static String[] parseStringsForPaths(String inputJsonString, JsonPathSet pathSet) {
+        logger.trace("predicate input: {}", inputJsonString);
+
+        String[] values = new String[pathSet.size()];
+        JSONObject jsonObject = parseObject(inputJsonString);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = pathSet.isRaw(i)
+                    ? getRawForPath(jsonObject, pathSet.getSegments(i))
+                    : getStringForPath(jsonObject, pathSet.getSegments(i));
+        }
+        return values;
+    }
+
+    /**
+     * Parses a UTF-8 encoded JSON input once and extracts String objects for multiple paths
+     * @param inputJsonBytes UTF-8 encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set
+     */
+    public static String[] getStringsForPaths(byte[] inputJsonBytes, JsonPathSet pathSet) {
+        return getStringsForPaths(decode(inputJsonBytes), pathSet);
+    }
+
+    /**
+     * Parses a UTF-8 encoded JSON input once and extracts String objects for multiple paths, errors are passed on to
+     * the caller instead of being logged
+     * @param inputJsonBytes UTF-8 encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set
+     * @throws JSONException if the input is not valid JSON
+     */
+    public static String[] parseStringsForPaths(byte[] inputJsonBytes, JsonPathSet pathSet) {
+        return parseStringsForPaths(decode(inputJsonBytes), pathSet);
+    }
+
+    private static String getRawForPath(JSONObject jsonObject, String[] pathSegments) {
+        Object value = getValueForPath(jsonObject, pathSegments);
+        return value == null ? "" : JSONObject.valueToString(value);
+    }
+
+    private static String getStringForPath(JSONObject jsonObject, String[] pathSegments) {
+        Object value = getValueForPath(jsonObject, pathSegments);
+        if (value instanceof String) {
+            return (String) value;
+        } else if (value instanceof Number) {
+            return JSONObject.numberToString((Number) value);
+        } else if (value instanceof Boolean) {
+            return value.toString();
+        }
+        // missing, null, objects and arrays
+        if (logger.isTraceEnabled()) {
+            logger.trace("No scalar value for {}: {}", String.join(".", pathSegments), value);
+        }
+        return "";
+    }
+
+    /**
+     * @return value at the path or null if the path cannot be resolved
+     */
+    private static Object getValueForPath(JSONObject jsonObject, String[] pathSegments) {
+        Object value = jsonObject;
+        for (String step : pathSegments) {
+            int index = arrayIndex(step);
+            if (index >= 0 && value instanceof JSONArray && index < ((JSONArray) value).length()) {
+                value = ((JSONArray) value).get(index);
+            } else if (index < 0 && value instanceof JSONObject && ((JSONObject) value).has(step)) {
+                value = ((JSONObject) value).get(step);
+            } else {
+                return null;
             }
+        }
+        return value;
+    }
+
+    /**
+     * Extracts a String object from a given String-based JSON input without parsing the whole message. Unrelated
+     * members are skipped and scanning stops at the requested field. In contrast to
+     * {@link #getStringForPath(String, String[])}, all numbers and booleans are returned with their JSON representation.
+     * @param inputJsonString String-encoded JSON input
+     * @param pathSegments pre-split JSON path to field that is to be extracted, see {@link #splitPath(String)}
+     * @return String-encoded value
+     */
+    public static String getStringForPathStreaming(String inputJsonString, String[] pathSegments) {
+        logger.trace("predicate input: {}", inputJsonString);
+
+        try {
+            return StreamingJsonScanner.of(inputJsonString).getStringForPath(pathSegments);
         } catch (JSONException err) {
-            logger.error("Error in JSON processing, cannot retrieve "+path+" from input String: " + err);
+            jsonErrorLogger.error(() -> "Error in JSON processing, cannot retrieve " + String.join(".", pathSegments) + " from input String: " + err);
         }
         return "";
     }
+
+    /**
+     * Extracts a String object from a given UTF-8 encoded JSON input without decoding or parsing the whole message,
+     * see {@link #getStringForPathStreaming(String, String[])}
+     * @param inputJsonBytes UTF-8 encoded JSON input
+     * @param pathSegments pre-split JSON path to field that is to be extracted, see {@link #splitPath(String)}
+     * @return String-encoded value
+     */
+    public static String getStringForPathStreaming(byte[] inputJsonBytes, String[] pathSegments) {
+        try {
+            return StreamingJsonScanner.of(inputJsonBytes).getStringForPath(pathSegments);
+        } catch (JSONException err) {
+            jsonErrorLogger.error(() -> "Error in JSON processing, cannot retrieve " + String.join(".", pathSegments) + " from input bytes: " + err);
+        }
+        return "";
+    }
+
+    /**
+     * Extracts String objects for multiple paths in one pass over a String-based JSON input without parsing the whole
+     * message, see {@link #getStringForPathStreaming(String, String[])}
+     * @param inputJsonString String-encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set
+     */
+    public static String[] getStringsForPathsStreaming(String inputJsonString, JsonPathSet pathSet) {
+        try {
+            return parseStringsForPathsStreaming(inputJsonString, pathSet);
+        } catch (JSONException err) {
+            jsonErrorLogger.error(() -> "Error in JSON processing, cannot retrieve " + pathSet + " from input String: " + err);
+        }
+        return emptyValues(pathSet);
+    }
+
+    /**
+     * Extracts String objects for multiple paths in one pass over a UTF-8 encoded JSON input without decoding or
+     * parsing the whole message, see {@link #getStringForPathStreaming(String, String[])}
+     * @param inputJsonBytes UTF-8 encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set
+     */
+    public static String[] getStringsForPathsStreaming(byte[] inputJsonBytes, JsonPathSet pathSet) {
+        try {
+            return parseStringsForPathsStreaming(inputJsonBytes, pathSet);
+        } catch (JSONException err) {
+            jsonErrorLogger.error(() -> "Error in JSON processing, cannot retrieve " + pathSet + " from input bytes: " + err);
+        }
+        return emptyValues(pathSet);
+    }
+
+    /**
+     * Extracts String objects for multiple paths in one pass over a String-based JSON input, errors are passed on to
+     * the caller instead of being logged, see {@link #getStringsForPathsStreaming(String, JsonPathSet)}
+     * @param inputJsonString String-encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set
+     * @throws JSONException if the input is not valid JSON
+     */
+    public static String[] parseStringsForPathsStreaming(String inputJsonString, JsonPathSet pathSet) {
+        logger.trace("predicate input: {}", inputJsonString);
+
+        return StreamingJsonScanner.of(inputJsonString).getStringsForPaths(pathSet);
+    }
+
+    /**
+     * Extracts String objects for multiple paths in one pass over a UTF-8 encoded JSON input, errors are passed on to
+     * the caller instead of being logged, see {@link #getStringsForPathsStreaming(byte[], JsonPathSet)}
+     * @param inputJsonBytes UTF-8 encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set
+     * @throws JSONException if the input is not valid JSON
+     */
+    public static String[] parseStringsForPathsStreaming(byte[] inputJsonBytes, JsonPathSet pathSet) {
+        return StreamingJsonScanner.of(inputJsonBytes).getStringsForPaths(pathSet);
+    }
+
+    private static JSONObject parseObject(String inputJsonString) {
+        if (inputJsonString == null) {
+            throw new JSONException(NULL_VALUE_ERROR);
+        }
+        return new JSONObject(inputJsonString);
+    }
+
+    private static String decode(byte[] inputJsonBytes) {
+        return inputJsonBytes == null ? null : new String(inputJsonBytes, StandardCharsets.UTF_8);
+    }
+
+    static String[] emptyValues(JsonPathSet pathSet) {
+        String[] values = new String[pathSet.size()];
+        Arrays.fill(values, "");
+        return values;
+    }
 }
@@ -0,0 +1,92 @@
+package com.github.schm1tz1;
+
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes events from one input topic to several output topics. Routes are checked in order and the first matching
+ * route determines the output topic, events matching no route go to the default topic (or are dropped if there is
+ * none). The fields referenced by all routes are extracted with a single parse of the payload no matter how many
+ * routes are configured.
+ */
+public class EventRouter {
+    private final JsonPathSet pathSet = new JsonPathSet();
+    private final List<FilterRule> rules = new ArrayList<>();
+    private final List<String> topics = new ArrayList<>();
+    private final JsonFieldExtractor extractor;
+    private final String defaultTopic;
+    private final SampledErrorLogger jsonErrorLogger;
+
+    /**
+     * Constructor, routes are added with {@link #addRoute(String, String)}
+     * @param extractor method used to extract the fields from the message
+     * @param defaultTopic topic for events not matching any route, null to drop them
+     * @param jsonErrorLogger log for values that cannot be parsed, they are routed with "" for all fields
+     */
+    public EventRouter(JsonFieldExtractor extractor, String defaultTopic, SampledErrorLogger jsonErrorLogger) {
+        this.extractor = extractor;
+        this.defaultTopic = defaultTopic;
+        this.jsonErrorLogger = jsonErrorLogger;
+    }
+
+    /**
+     * Adds a route, see {@link FilterRuleParser} for the rule syntax
+     * @param ruleExpression rule an event needs to match
+     * @param outputTopic topic to route matching events to
+     * @return this router
+     */
+    public EventRouter addRoute(String ruleExpression, String outputTopic) {
+        rules.add(FilterRuleParser.parse(ruleExpression, pathSet));
+        topics.add(outputTopic);
+        return this;
+    }
+
+    /**
+     * @param inputMessageValue Input message to be routed (value part)
+     * @return output topic for the event, null if it is to be dropped
+     */
+    public String route(String inputMessageValue) {
+        try {
+            return route(extractor.parseStringsForPaths(inputMessageValue, pathSet));
+        } catch (JSONException err) {
+            return routeInvalid(err);
+        }
+    }
+
+    /**
+     * @param inputMessageValue Input message to be routed (value part, UTF-8 encoded)
+     * @return output topic for the event, null if it is to be dropped
+     */
+    public String route(byte[] inputMessageValue) {
+        try {
+            return route(extractor.parseStringsForPaths(inputMessageValue, pathSet));
+        } catch (JSONException err) {
+            return routeInvalid(err);
+        }
+    }
+
+    private String routeInvalid(JSONException err) {
+        jsonErrorLogger.error(() -> "Error in JSON processing, cannot retrieve " + pathSet + " from input: " + err);
+        return route(EventFilterPipelineTools.emptyValues(pathSet));
+    }
+
+    private String route(String[] values) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i).evaluate(values)) {
+                return topics.get(i);
+            }
+        }
+        return defaultTopic;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < rules.size(); i++) {
+            description.append(rules.get(i)).append(" -> ").append(topics.get(i)).append(", ");
+        }
+        return description.append("default -> ").append(defaultTopic).append(" (").append(extractor).append(")").toString();
+    }
+}
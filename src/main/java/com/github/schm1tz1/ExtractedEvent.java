@@ -0,0 +1,67 @@
+package com.github.schm1tz1;
+
+import org.json.JSONException;
+
+import java.util.function.BiFunction;
+
+/**
+ * Record value together with the field values extracted from it, used to parse an event once and evaluate several
+ * filters on the result. Fields are extracted on first access, so events that all filters decide on the record
+ * metadata alone are never parsed. If the value cannot be parsed, every filter gets the same {@link JSONException}, so
+ * each source counts the parse error. Instances are not thread-safe.
+ *
+ * @param <V> value type
+ */
+public class ExtractedEvent<V> {
+    private final V value;
+    private final JsonPathSet pathSet;
+    private final BiFunction<V, JsonPathSet, String[]> fieldExtraction;
+    private String[] fields;
+    private JSONException parseError;
+
+    /**
+     * @param value record value
+     * @param pathSet path set used for extraction, filters compiled against another path set need to extract again
+     * @param fieldExtraction function extracting the field values, indexed by the slots of the path set, may throw a
+     *                        {@link JSONException}
+     */
+    public ExtractedEvent(V value, JsonPathSet pathSet, BiFunction<V, JsonPathSet, String[]> fieldExtraction) {
+        this.value = value;
+        this.pathSet = pathSet;
+        this.fieldExtraction = fieldExtraction;
+    }
+
+    public V getValue() {
+        return value;
+    }
+
+    /**
+     * @param value record value, possibly an extracted event
+     * @return true for a null value (tombstone) or an event of it
+     */
+    public static boolean isTombstone(Object value) {
+        return value == null || value instanceof ExtractedEvent && ((ExtractedEvent<?>) value).value == null;
+    }
+
+    public JsonPathSet getPathSet() {
+        return pathSet;
+    }
+
+    /**
+     * @return extracted field values
+     * @throws JSONException if the value cannot be parsed
+     */
+    public String[] getFields() {
+        if (fields == null && parseError == null) {
+            try {
+                fields = fieldExtraction.apply(value, pathSet);
+            } catch (JSONException err) {
+                parseError = err;
+            }
+        }
+        if (parseError != null) {
+            throw parseError;
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.schm1tz1;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls a file for changes of its modification time or size and runs a callback on each change. Polling is used
+ * instead of a WatchService as it also works for files on network volumes and for symlinked files replaced by
+ * Kubernetes ConfigMap updates. The callback runs on a single daemon thread.
+ */
+public class FileChangeWatcher implements AutoCloseable {
+    final static Logger logger = LoggerFactory.getLogger(FileChangeWatcher.class);
+
+    private final Path file;
+    private final Runnable onChange;
+    private final ScheduledExecutorService executor;
+    private long lastModified;
+    private long lastSize;
+
+    /**
+     * Starts watching, the current state of the file is taken as unchanged
+     * @param file file to watch
+     * @param intervalMs polling interval in milliseconds
+     * @param onChange callback invoked after the file changed
+     */
+    public FileChangeWatcher(Path file, long intervalMs, Runnable onChange) {
+        this.file = file;
+        this.onChange = onChange;
+        hasChanged();
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-watcher-" + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::check, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Watching " + file + " for changes every " + intervalMs + " ms");
+    }
+
+    private void check() {
+        try {
+            if (hasChanged()) {
+                logger.info("File " + file + " changed");
+                onChange.run();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error handling change of " + file + ": " + e);
+        }
+    }
+
+    private boolean hasChanged() {
+        long modified;
+        long size;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            modified = attributes.lastModifiedTime().toMillis();
+            size = attributes.size();
+        } catch (IOException e) {
+            logger.warn("Cannot read attributes of " + file + ": " + e);
+            return false;
+        }
+        boolean changed = modified != lastModified || size != lastSize;
+        lastModified = modified;
+        lastSize = size;
+        return changed;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,528 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsMetrics;
+import org.apache.kafka.streams.processor.Cancellable;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.Punctuator;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.processor.TaskId;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.processor.api.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Offline mode filtering local files of newline-delimited JSON (plain or gzip-compressed, *.gz) with the filters of
+ * the streamsFilter.* configuration, e.g. for backfills, without a broker. Files are read sequentially in chunks of
+ * whole lines (streamsFilter.replay.chunkBytes, default 8 MiB), the chunks are filtered in parallel on streamsFilter.replay.threads workers (default: number of cores)
+ * and written in input order to one file per output topic, &lt;output directory&gt;/&lt;topic&gt;.json.
+ * Each line is a record value without key and headers, with the start time of the replay as timestamp. Filter sources
+ * run their {@link StreamFilterProcessor} (record rules, decision cache, projection and dead letter topic included) and
+ * routing sources their {@link EventRouter}, exactly as with the Processor API. Deduplication depends on the order of
+ * the records and is not supported, nor are sampling by key (the lines have no key) and the wall clock limits
+ * maxPerSecond and maxPerWindow (a backfill is read much faster than the records were produced).
+ */
+public class FileReplay {
+    final static Logger logger = LoggerFactory.getLogger(FileReplay.class);
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final EventFilterPipeline pipeline;
+    private final List<String> filterSources = new ArrayList<>();
+    private final Map<String, SourceFilter> sourceFilters = new LinkedHashMap<>();
+    private final Map<String, EventRouter> eventRouters = new LinkedHashMap<>();
+    private final int threads;
+    private final int chunkBytes;
+    private final long timestamp = System.currentTimeMillis();
+    private final ThreadLocal<Worker> workerState = ThreadLocal.withInitial(this::createWorker);
+    private final List<Worker> workers = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger workerCount = new AtomicInteger();
+
+    /**
+     * @param streamsProperties pipeline configuration, see {@link PipelineConfigTools#readStreamsProperties(String...)}
+     * @param inputTopic replay the files as this input topic, i.e. for the sources reading it, null for all sources
+     * @throws RuntimeException if the configuration is invalid or not supported offline
+     */
+    public FileReplay(Properties streamsProperties, String inputTopic) {
+        this.pipeline = new EventFilterPipeline(streamsProperties);
+        this.threads = Integer.parseInt(streamsProperties.getProperty("streamsFilter.replay.threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        this.chunkBytes = Integer.parseInt(streamsProperties.getProperty("streamsFilter.replay.chunkBytes", String.valueOf(8 << 20)));
+
+        String[] sources = PipelineConfigTools.getPropertyChecked(streamsProperties, "streamsFilter.sources").split(",");
+        for (String source : sources) {
+            String prefix = "streamsFilter." + source + ".";
+            if (inputTopic != null && !inputTopic.equals(PipelineConfigTools.getPropertyChecked(streamsProperties, prefix + "inputTopic"))) {
+                continue;
+            }
+            if (streamsProperties.getProperty(prefix + "dedupIdField") != null) {
+                throw new RuntimeException("Deduplication of source " + source + " is not supported in replay mode!");
+            }
+            // replayed lines have no key and are read much faster than real time
+            if (streamsProperties.getProperty(prefix + "samplePercent") != null && streamsProperties.getProperty(prefix + "sampleField") == null) {
+                throw new RuntimeException("Sampling by key of source " + source + " is not supported in replay mode, set " + prefix + "sampleField!");
+            }
+            if (streamsProperties.getProperty(prefix + "maxPerSecond") != null || streamsProperties.getProperty(prefix + "maxPerWindow") != null) {
+                throw new RuntimeException("Forward limits of source " + source + " are not supported in replay mode!");
+            }
+            if (streamsProperties.getProperty(prefix + "routes") != null) {
+                eventRouters.put(source, pipeline.createEventRouter(source));
+                logger.info("Replaying source " + source + " with routes " + eventRouters.get(source));
+            } else {
+                PipelineConfigTools.getPropertyChecked(streamsProperties, prefix + "outputTopic");
+                filterSources.add(source);
+                sourceFilters.put(source, pipeline.compileSourceFilter(source));
+                logger.info("Replaying source " + source + " with filter " + sourceFilters.get(source));
+            }
+        }
+        if (filterSources.isEmpty() && eventRouters.isEmpty()) {
+            throw new RuntimeException("No source reads input topic " + inputTopic + "!");
+        }
+    }
+
+    /**
+     * Filters the input files and writes the output files, existing output files are overwritten
+     * @param inputs files or directories, directories are read recursively in file name order
+     * @param outputDirectory directory of the output files, created if missing
+     * @return records written per output topic
+     * @throws IOException if an input cannot be read or an output cannot be written
+     */
+    public Map<String, Long> run(List<Path> inputs, Path outputDirectory) throws IOException {
+        List<Path> files = listFiles(inputs);
+        Files.createDirectories(outputDirectory);
+        logger.info("Replaying " + files.size() + " files on " + threads + " threads to " + outputDirectory);
+
+        long start = System.nanoTime();
+        long inputBytes = 0;
+        long inputRecords = 0;
+        Map<String, Long> outputRecords = new LinkedHashMap<>();
+        Map<String, OutputStream> outputFiles = new LinkedHashMap<>();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                runnable -> new Thread(runnable, "kstreams-filter-replay-" + threadCount.incrementAndGet()));
+        Deque<Future<ChunkOutput>> pending = new ArrayDeque<>();
+        try {
+            for (Path file : files) {
+                inputBytes += Files.size(file);
+                try (InputStream inputStream = open(file)) {
+                    LineChunkReader reader = new LineChunkReader(inputStream, chunkBytes);
+                    for (byte[] chunk = reader.next(); chunk != null; chunk = reader.next()) {
+                        final byte[] data = chunk;
+                        final int length = reader.length;
+                        pending.add(executor.submit(() -> workerState.get().process(data, length)));
+                        // bounds the chunks in memory, the oldest one is written first to keep the input order
+                        if (pending.size() >= 2 * threads) {
+                            inputRecords += write(pending.poll(), outputDirectory, outputFiles, outputRecords);
+                        }
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                inputRecords += write(pending.poll(), outputDirectory, outputFiles, outputRecords);
+            }
+        } finally {
+            for (Future<ChunkOutput> chunk : pending) {
+                chunk.cancel(true);
+            }
+            executor.shutdown();
+            closeOutputs(outputFiles);
+            closeWorkers(executor);
+        }
+
+        long elapsedMs = Math.max(1L, (System.nanoTime() - start) / 1000000);
+        logger.info("Replayed " + inputRecords + " records (" + inputBytes / (1 << 20) + " MiB) from " + files.size()
+                + " files in " + elapsedMs + " ms (" + inputBytes * 1000 / elapsedMs / (1 << 20) + " MiB/s), written: " + outputRecords);
+        return outputRecords;
+    }
+
+    private static List<Path> listFiles(List<Path> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> paths = Files.walk(input)) {
+                    files.addAll(paths
+                            .filter(Files::isRegularFile)
+                            .filter(path -> !path.getFileName().toString().startsWith("."))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else if (Files.isRegularFile(input)) {
+                files.add(input);
+            } else {
+                throw new IOException("Input " + input + " not found");
+            }
+        }
+        return files;
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream inputStream = Files.newInputStream(file);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(inputStream, BUFFER_BYTES) : inputStream;
+    }
+
+    /**
+     * Appends the output of a chunk to the output files
+     * @return number of input records of the chunk
+     */
+    private static long write(Future<ChunkOutput> chunk, Path outputDirectory, Map<String, OutputStream> outputFiles,
+                              Map<String, Long> outputRecords) throws IOException {
+        ChunkOutput output;
+        try {
+            output = chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Replay interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new RuntimeException("Replay failed: " + e.getCause(), e.getCause());
+        }
+        for (Map.Entry<String, TopicOutput> topicOutput : output.topics.entrySet()) {
+            String topic = topicOutput.getKey();
+            OutputStream outputFile = outputFiles.get(topic);
+            if (outputFile == null) {
+                outputFile = new BufferedOutputStream(Files.newOutputStream(outputDirectory.resolve(topic + ".json")), BUFFER_BYTES);
+                outputFiles.put(topic, outputFile);
+            }
+            topicOutput.getValue().bytes.writeTo(outputFile);
+            outputRecords.merge(topic, topicOutput.getValue().records, Long::sum);
+        }
+        return output.records;
+    }
+
+    private static void closeOutputs(Map<String, OutputStream> outputFiles) throws IOException {
+        IOException error = null;
+        for (OutputStream outputFile : outputFiles.values()) {
+            try {
+                outputFile.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void closeWorkers(ExecutorService executor) {
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Worker worker : workers) {
+            worker.close();
+        }
+        pipeline.close();
+    }
+
+    private Worker createWorker() {
+        Worker worker = new Worker();
+        workers.add(worker);
+        return worker;
+    }
+
+    /**
+     * Processors of all sources for one worker thread, processors keep per-task state like the decision cache
+     */
+    private class Worker {
+        private final List<StreamFilterProcessor<byte[], byte[]>> processors = new ArrayList<>();
+        private final StreamsMetrics streamsMetrics = new ReplayMetrics(pipeline.getMetrics());
+        private final TaskId taskId = new TaskId(0, workerCount.getAndIncrement());
+        private ChunkOutput output;
+
+        Worker() {
+            for (String source : filterSources) {
+                SourceFilter sourceFilter = sourceFilters.get(source);
+                String outputTopic = pipeline.streamsProperties.getProperty("streamsFilter." + source + ".outputTopic");
+                String deadLetterTopic = pipeline.getDeadLetterTopic(source);
+                StreamFilterProcessor<byte[], byte[]> processor = new StreamFilterProcessor<>(source, () -> sourceFilter,
+                        EventFilter::parseFields, pipeline.getDecisionCacheSize(source), pipeline.getDecisionCacheMaxBytes(source),
+                        (value, projected) -> projected.getBytes(StandardCharsets.UTF_8), deadLetterTopic != null, false,
+                        pipeline.jsonErrorLogger);
+                ReplayContext<byte[], byte[]> context = new ReplayContext<>(taskId, streamsMetrics, record -> output.add(
+                        record.headers().lastHeader(StreamFilterProcessor.DEAD_LETTER_HEADER) == null ? outputTopic : deadLetterTopic,
+                        record.value()));
+                processor.init(context);
+                processors.add(processor);
+            }
+        }
+
+        ChunkOutput process(byte[] data, int length) {
+            output = new ChunkOutput();
+            int start = 0;
+            while (start < length) {
+                int end = start;
+                while (end < length && data[end] != '\n') {
+                    end++;
+                }
+                int valueEnd = end > start && data[end - 1] == '\r' ? end - 1 : end;
+                if (valueEnd > start) {
+                    processValue(Arrays.copyOfRange(data, start, valueEnd));
+                }
+                start = end + 1;
+            }
+            return output;
+        }
+
+        private void processValue(byte[] value) {
+            output.records++;
+            Record<byte[], byte[]> record = new Record<>(null, value, timestamp);
+            for (StreamFilterProcessor<byte[], byte[]> processor : processors) {
+                processor.process(record);
+            }
+            for (EventRouter eventRouter : eventRouters.values()) {
+                String topic = eventRouter.route(value);
+                if (topic != null) {
+                    output.add(topic, value);
+                }
+            }
+        }
+
+        void close() {
+            for (StreamFilterProcessor<byte[], byte[]> processor : processors) {
+                processor.close();
+            }
+        }
+    }
+
+    /**
+     * Records of one chunk per output topic, newline-delimited
+     */
+    private static final class ChunkOutput {
+        final Map<String, TopicOutput> topics = new LinkedHashMap<>();
+        long records;
+
+        void add(String topic, byte[] value) {
+            TopicOutput topicOutput = topics.computeIfAbsent(topic, name -> new TopicOutput());
+            topicOutput.bytes.write(value, 0, value.length);
+            topicOutput.bytes.write('\n');
+            topicOutput.records++;
+        }
+    }
+
+    private static final class TopicOutput {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long records;
+    }
+
+    /**
+     * Reads an input stream in chunks ending after a newline (or at the end of the input), chunks are extended for
+     * lines longer than the chunk size
+     */
+    static final class LineChunkReader {
+        private final InputStream inputStream;
+        private final int chunkBytes;
+        private byte[] rest = new byte[0];
+        /** valid bytes of the chunk returned by {@link #next()} */
+        int length;
+
+        LineChunkReader(InputStream inputStream, int chunkBytes) {
+            this.inputStream = inputStream;
+            this.chunkBytes = chunkBytes;
+        }
+
+        /**
+         * @return next chunk with {@link #length} valid bytes or null at the end of the input
+         */
+        byte[] next() throws IOException {
+            byte[] buffer = Arrays.copyOf(rest, Math.max(chunkBytes, 2 * rest.length));
+            int filled = rest.length;
+            while (true) {
+                filled += inputStream.readNBytes(buffer, filled, buffer.length - filled);
+                if (filled < buffer.length) {
+                    rest = new byte[0];
+                    length = filled;
+                    return filled == 0 ? null : buffer;
+                }
+                int lineEnd = filled - 1;
+                while (lineEnd >= 0 && buffer[lineEnd] != '\n') {
+                    lineEnd--;
+                }
+                if (lineEnd >= 0) {
+                    rest = Arrays.copyOfRange(buffer, lineEnd + 1, filled);
+                    length = lineEnd + 1;
+                    return buffer;
+                }
+                // line longer than the chunk
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+        }
+    }
+
+    /**
+     * Processor context of a worker, forwarded records are passed to a consumer. There is no record metadata, so
+     * record rules see partition -1.
+     */
+    private static final class ReplayContext<K, V> implements ProcessorContext<K, V> {
+        private final TaskId taskId;
+        private final StreamsMetrics streamsMetrics;
+        private final Consumer<Record<K, V>> forwarded;
+
+        ReplayContext(TaskId taskId, StreamsMetrics streamsMetrics, Consumer<Record<K, V>> forwarded) {
+            this.taskId = taskId;
+            this.streamsMetrics = streamsMetrics;
+            this.forwarded = forwarded;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <K1 extends K, V1 extends V> void forward(Record<K1, V1> record) {
+            forwarded.accept((Record<K, V>) record);
+        }
+
+        @Override
+        public <K1 extends K, V1 extends V> void forward(Record<K1, V1> record, String childName) {
+            forward(record);
+        }
+
+        @Override
+        public String applicationId() {
+            return "kstreams-filter-replay";
+        }
+
+        @Override
+        public TaskId taskId() {
+            return taskId;
+        }
+
+        @Override
+        public Optional<RecordMetadata> recordMetadata() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Serde<?> keySerde() {
+            return Serdes.ByteArray();
+        }
+
+        @Override
+        public Serde<?> valueSerde() {
+            return Serdes.ByteArray();
+        }
+
+        @Override
+        public File stateDir() {
+            throw new UnsupportedOperationException("No state in replay mode");
+        }
+
+        @Override
+        public StreamsMetrics metrics() {
+            return streamsMetrics;
+        }
+
+        @Override
+        public <S extends StateStore> S getStateStore(String name) {
+            throw new UnsupportedOperationException("No state stores in replay mode");
+        }
+
+        @Override
+        public Cancellable schedule(Duration interval, PunctuationType type, Punctuator callback) {
+            throw new UnsupportedOperationException("No punctuation in replay mode");
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public Map<String, Object> appConfigs() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<String, Object> appConfigsWithPrefix(String prefix) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public long currentSystemTimeMs() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long currentStreamTimeMs() {
+            return System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Streams metrics backed by the filter metrics registry of the pipeline, only plain sensors are supported
+     */
+    private static final class ReplayMetrics implements StreamsMetrics {
+        private final Metrics metrics;
+
+        ReplayMetrics(Metrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Map<MetricName, ? extends Metric> metrics() {
+            return metrics.metrics();
+        }
+
+        @Override
+        public Sensor addLatencyRateTotalSensor(String scopeName, String entityName, String operationName,
+                                                Sensor.RecordingLevel recordingLevel, String... tags) {
+            throw new UnsupportedOperationException("No latency sensors in replay mode");
+        }
+
+        @Override
+        public Sensor addRateTotalSensor(String scopeName, String entityName, String operationName,
+                                         Sensor.RecordingLevel recordingLevel, String... tags) {
+            throw new UnsupportedOperationException("No rate sensors in replay mode");
+        }
+
+        @Override
+        public Sensor addSensor(String name, Sensor.RecordingLevel recordingLevel) {
+            return metrics.sensor(name, recordingLevel);
+        }
+
+        @Override
+        public Sensor addSensor(String name, Sensor.RecordingLevel recordingLevel, Sensor... parents) {
+            return metrics.sensor(name, recordingLevel, parents);
+        }
+
+        @Override
+        public void removeSensor(Sensor sensor) {
+            metrics.removeSensor(sensor.name());
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Meter;
+import org.apache.kafka.common.metrics.stats.Percentile;
+import org.apache.kafka.common.metrics.stats.Percentiles;
+import org.apache.kafka.streams.StreamsMetrics;
+import org.json.JSONException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Sensors of one filter source in one stream task, tagged with thread-id, task-id and source. Records
+ * in/out/filtered/dead-lettered/limited counts, the match ratio and JSON parse errors on INFO level, the evaluation
+ * latency with percentiles and the JSON parse time are only measured on DEBUG level (metrics.recording.level) to avoid
+ * the clock reads per record otherwise.
+ * Instances are not thread-safe and must only be used by the stream thread they were registered for.
+ */
+public class FilterMetrics {
+    final static Logger logger = LoggerFactory.getLogger(FilterMetrics.class);
+
+    public static final String GROUP = "stream-kstreams-filter-metrics";
+    /** upper bound of the latency histograms, larger values are counted in the last bucket */
+    static final double MAX_LATENCY_MICROS = 10_000.0;
+    static final int HISTOGRAM_SIZE_BYTES = 4_000;
+
+    private final String sensorPrefix;
+    private final Map<String, String> tags;
+    private final BiFunction<String, Sensor.RecordingLevel, Sensor> sensorFactory;
+    private final Consumer<Sensor> sensorRemover;
+    private final SampledErrorLogger jsonErrorLogger;
+    private final List<Sensor> sensors = new ArrayList<>();
+
+    private final Sensor sensorIn;
+    private final Sensor sensorOut;
+    private final Sensor sensorFiltered;
+    private final Sensor sensorDeadLettered;
+    private final Sensor sensorLimited;
+    private final Sensor sensorMatchRatio;
+    private final Sensor sensorParseErrors;
+    private final Sensor sensorRecordRuleDecided;
+    private final Sensor sensorParallelEvaluated;
+    private final Sensor sensorLatency;
+    private final Sensor sensorParseTime;
+    private Sensor sensorCacheHits;
+    private Sensor sensorCacheMisses;
+
+    private FilterMetrics(String sensorPrefix, Map<String, String> tags,
+                          BiFunction<String, Sensor.RecordingLevel, Sensor> sensorFactory, Consumer<Sensor> sensorRemover,
+                          SampledErrorLogger jsonErrorLogger) {
+        this.sensorPrefix = sensorPrefix;
+        this.tags = tags;
+        this.sensorFactory = sensorFactory;
+        this.sensorRemover = sensorRemover;
+        this.jsonErrorLogger = jsonErrorLogger;
+
+        sensorIn = addMeter("filter-in", "records evaluated by the filter");
+        sensorOut = addMeter("filter-out", "records forwarded by the filter");
+        sensorFiltered = addMeter("filter-filtered", "records dropped by the filter");
+        sensorDeadLettered = addMeter("filter-dead-lettered", "records that could not be parsed and were sent to the dead letter topic");
+        sensorLimited = addMeter("filter-limited", "records dropped by sampling or forward limits instead of being forwarded");
+        sensorParseErrors = addMeter("filter-parse-errors", "records that could not be parsed as JSON");
+        sensorRecordRuleDecided = addMeter("filter-record-rule-decided", "records decided by the record rule without parsing the value");
+        sensorParallelEvaluated = addMeter("filter-parallel-evaluated", "records evaluated by the parallel filter workers");
+
+        sensorMatchRatio = addSensor("filter-match-ratio", Sensor.RecordingLevel.INFO);
+        sensorMatchRatio.add(metricName("filter-match-ratio", "share of records matching the filter rule"), new Avg());
+
+        sensorLatency = addSensor("filter-evaluation-latency", Sensor.RecordingLevel.DEBUG);
+        sensorLatency.add(metricName("filter-evaluation-latency-avg", "average time to parse and evaluate a record in microseconds"), new Avg());
+        sensorLatency.add(metricName("filter-evaluation-latency-max", "maximum time to parse and evaluate a record in microseconds"), new Max());
+        sensorLatency.add(new Percentiles(HISTOGRAM_SIZE_BYTES, MAX_LATENCY_MICROS, Percentiles.BucketSizing.LINEAR,
+                percentile("filter-evaluation-latency-p50", 50),
+                percentile("filter-evaluation-latency-p95", 95),
+                percentile("filter-evaluation-latency-p99", 99)));
+
+        sensorParseTime = addSensor("filter-parse-time", Sensor.RecordingLevel.DEBUG);
+        sensorParseTime.add(metricName("filter-parse-time-avg", "average time to extract the fields of a record in microseconds"), new Avg());
+        sensorParseTime.add(metricName("filter-parse-time-max", "maximum time to extract the fields of a record in microseconds"), new Max());
+    }
+
+    /**
+     * Registers the sensors of a source for a stream task with the Streams metrics
+     * @param streamsMetrics metrics of the processor context
+     * @param sourceName source name from the configuration
+     * @param taskId id of the task the processor belongs to
+     * @param jsonErrorLogger log for values that cannot be parsed
+     * @return sensors to be removed with {@link #close()} when the processor is closed
+     */
+    public static FilterMetrics register(StreamsMetrics streamsMetrics, String sourceName, String taskId,
+                                         SampledErrorLogger jsonErrorLogger) {
+        String threadId = Thread.currentThread().getName();
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("thread-id", threadId);
+        tags.put("task-id", taskId);
+        tags.put("source", sourceName);
+        return new FilterMetrics("kstreams-filter." + threadId + "." + taskId + "." + sourceName + ".",
+                tags, streamsMetrics::addSensor, streamsMetrics::removeSensor, jsonErrorLogger);
+    }
+
+    /**
+     * Extracts the fields of a record and evaluates the filter rule on them, recording parse time, latency, parse
+     * errors and match ratio. Records that cannot be parsed are evaluated with "" for all fields.
+     * @param eventFilter filter to evaluate
+     * @param fieldExtraction function extracting the fields of the filter, may throw a {@link JSONException}
+     * @param value record value
+     * @param <V> value type
+     * @return true if the record matches the filter
+     */
+    public <V> boolean evaluate(EventFilter eventFilter, BiFunction<EventFilter, V, String[]> fieldExtraction, V value) {
+        boolean timed = sensorLatency.shouldRecord();
+        long start = timed ? System.nanoTime() : 0L;
+
+        String[] fields;
+        try {
+            fields = fieldExtraction.apply(eventFilter, value);
+        } catch (JSONException err) {
+            sensorParseErrors.record();
+            jsonErrorLogger.error(() -> "Error in JSON processing, cannot retrieve " + eventFilter.getPathSet() + " from input: " + err);
+            fields = eventFilter.emptyFields();
+        }
+
+        if (!timed) {
+            boolean matching = eventFilter.isMatching(fields);
+            sensorMatchRatio.record(matching ? 1.0 : 0.0);
+            return matching;
+        }
+
+        long parsed = System.nanoTime();
+        boolean matching = eventFilter.isMatching(fields);
+        long evaluated = System.nanoTime();
+
+        sensorParseTime.record((parsed - start) / 1000.0);
+        sensorLatency.record((evaluated - start) / 1000.0);
+        sensorMatchRatio.record(matching ? 1.0 : 0.0);
+        return matching;
+    }
+
+    /**
+     * Counts a record decided by the {@link RecordFilter} alone, i.e. without touching its value
+     * @param matching result of the record rule
+     */
+    public void recordDecidedByRecordRule(boolean matching) {
+        sensorRecordRuleDecided.record();
+        sensorMatchRatio.record(matching ? 1.0 : 0.0);
+    }
+
+    /**
+     * Counts a record that was evaluated by the {@link ParallelFilterEvaluator}, see
+     * {@link ParallelFilterEvaluator#getDecision}
+     * @param decision decision flags of the record
+     * @return true if the record matches the filter
+     */
+    public boolean recordParallelEvaluation(int decision) {
+        boolean matching = (decision & ParallelFilterEvaluator.MATCHING) != 0;
+        sensorParallelEvaluated.record();
+        if ((decision & ParallelFilterEvaluator.PARSE_ERROR) != 0) {
+            sensorParseErrors.record();
+        }
+        if ((decision & ParallelFilterEvaluator.RECORD_RULE_DECIDED) != 0) {
+            sensorRecordRuleDecided.record();
+        }
+        sensorMatchRatio.record(matching ? 1.0 : 0.0);
+        return matching;
+    }
+
+    /**
+     * Registers the hit and miss sensors of the {@link DecisionCache}
+     * @return this
+     */
+    public FilterMetrics withDecisionCacheSensors() {
+        sensorCacheHits = addMeter("filter-cache-hits", "records whose decision was found in the cache");
+        sensorCacheMisses = addMeter("filter-cache-misses", "records whose decision was not found in the cache");
+        return this;
+    }
+
+    /**
+     * Counts a lookup in the decision cache, records found in the cache are counted for the match ratio as well
+     * @param cachedDecision decision found in the cache, null for a miss
+     */
+    public void recordCacheLookup(Boolean cachedDecision) {
+        if (cachedDecision == null) {
+            sensorCacheMisses.record();
+        } else {
+            sensorCacheHits.record();
+            sensorMatchRatio.record(cachedDecision ? 1.0 : 0.0);
+        }
+    }
+
+    /**
+     * Counts a record that was evaluated
+     * @param forwarded true if the record was forwarded, false if it was dropped
+     */
+    public void recordResult(boolean forwarded) {
+        sensorIn.record();
+        if (forwarded) {
+            sensorOut.record();
+        } else {
+            sensorFiltered.record();
+        }
+    }
+
+    /**
+     * Counts a record that was sent to the dead letter topic instead of being filtered
+     */
+    public void recordDeadLettered() {
+        sensorIn.record();
+        sensorDeadLettered.record();
+    }
+
+    /**
+     * Counts a record that would have been forwarded but was dropped by the {@link ForwardLimiter}
+     */
+    public void recordLimited() {
+        sensorIn.record();
+        sensorLimited.record();
+    }
+
+    /**
+     * Removes all sensors, e.g. when a task is migrated to another instance
+     */
+    public void close() {
+        for (Sensor sensor : sensors) {
+            sensorRemover.accept(sensor);
+        }
+        sensors.clear();
+    }
+
+    private Sensor addSensor(String name, Sensor.RecordingLevel recordingLevel) {
+        Sensor sensor = sensorFactory.apply(sensorPrefix + name, recordingLevel);
+        sensors.add(sensor);
+        return sensor;
+    }
+
+    private Sensor addMeter(String name, String description) {
+        Sensor sensor = addSensor(name, Sensor.RecordingLevel.INFO);
+        sensor.add(new Meter(metricName(name + "-rate", "rate of " + description),
+                metricName(name + "-total", "total number of " + description)));
+        return sensor;
+    }
+
+    private Percentile percentile(String name, double percentile) {
+        return new Percentile(metricName(name, percentile + "th percentile of the time to parse and evaluate a record in microseconds"), percentile);
+    }
+
+    private MetricName metricName(String name, String description) {
+        return new MetricName(name, GROUP, description, tags);
+    }
+}
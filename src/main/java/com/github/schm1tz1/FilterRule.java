@@ -0,0 +1,285 @@
+package com.github.schm1tz1;
+
+import org.json.JSONException;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compiled filter rule, i.e. an evaluation tree of field predicates combined with AND, OR and NOT. Rules are evaluated
+ * on the values of all referenced fields which are extracted beforehand in one pass (see {@link JsonPathSet}).
+ * Rules are created with {@link FilterRuleParser} and can be shared between stream threads.
+ */
+public abstract class FilterRule {
+    private int evaluations = 0;
+    private int matches = 0;
+
+    /**
+     * @param values extracted field values, indexed by the slots of the path set the rule was compiled with
+     * @return true if the rule matches
+     */
+    public abstract boolean evaluate(String[] values);
+
+    /**
+     * @return estimated relative cost of an evaluation
+     */
+    abstract double cost();
+
+    /**
+     * @return estimated probability that the rule matches, based on sampled evaluations
+     */
+    double matchProbability() {
+        return (matches + 1.0) / (evaluations + 2.0);
+    }
+
+    void recordSample(boolean result) {
+        evaluations++;
+        if (result) {
+            matches++;
+        }
+    }
+
+    void decaySamples() {
+        evaluations >>= 1;
+        matches >>= 1;
+    }
+
+    /**
+     * Predicate on a single field: String equality, full regex match, numeric comparison or membership in a set of
+     * values. Regexes are compiled into the cheapest equivalent {@link ValueMatcher}. For paths with [*] wildcards the
+     * array up to the first wildcard is extracted as JSON text and the predicate matches if any element matches,
+     * the elements are scanned until the first match.
+     */
+    static final class FieldPredicate extends FilterRule {
+        /** rough number of elements scanned for a wildcard path */
+        private static final double ARRAY_COST_FACTOR = 4.0;
+
+        private final int slot;
+        private final String[] elementPath;
+        private final String path;
+        private final String operator;
+        private final String operand;
+        private final ValueMatcher matcher;
+        private final boolean negated;
+
+        /**
+         * @param pathSet path set the field is added to
+         * @param path JSON path of the field, may contain array indices and [*] wildcards
+         * @param operator one of =, !=, ~ (regex), !~, &gt;, &gt;=, &lt;, &lt;=
+         * @param operand literal, regex or number
+         * @return predicate
+         * @throws IllegalArgumentException if the path is invalid or the operand of a comparison is not a number
+         */
+        static FieldPredicate of(JsonPathSet pathSet, String path, String operator, String operand) {
+            ValueMatcher matcher;
+            if (operator.endsWith("~")) {
+                matcher = ValueMatcher.forPattern(operand);
+            } else if (operator.startsWith("<") || operator.startsWith(">")) {
+                matcher = ValueMatcher.forComparison(operator, operand);
+            } else {
+                matcher = ValueMatcher.forLiteral(operand);
+            }
+            return new FieldPredicate(pathSet, path, operator, operand, matcher);
+        }
+
+        private FieldPredicate(JsonPathSet pathSet, String path, String operator, String operand, ValueMatcher matcher) {
+            int wildcard = path.indexOf(EventFilterPipelineTools.WILDCARD);
+            if (wildcard < 0) {
+                this.slot = pathSet.add(path);
+                this.elementPath = null;
+            } else if (wildcard == 0) {
+                throw new IllegalArgumentException("Invalid JSON path " + path + ": expected a field before " + EventFilterPipelineTools.WILDCARD);
+            } else {
+                this.slot = pathSet.addRaw(path.substring(0, wildcard));
+                this.elementPath = EventFilterPipelineTools.splitPath(path.substring(wildcard));
+            }
+            this.path = path;
+            this.operator = operator;
+            this.operand = operand;
+            this.matcher = matcher;
+            this.negated = operator.startsWith("!");
+        }
+
+        /**
+         * @param pathSet path set the field is added to
+         * @param path JSON path of the field, may contain array indices and [*] wildcards
+         * @param values matcher for a set of values, see {@link ValueMatcher#forValues(Collection)}
+         * @return predicate
+         */
+        static FieldPredicate forValues(JsonPathSet pathSet, String path, ValueMatcher values) {
+            return new FieldPredicate(pathSet, path, "in", values.toString(), values);
+        }
+
+        @Override
+        public boolean evaluate(String[] values) {
+            if (elementPath == null) {
+                return matcher.matches(values[slot]) != negated;
+            }
+            return anyElementMatches(values[slot]) != negated;
+        }
+
+        private boolean anyElementMatches(String array) {
+            if (array.isEmpty()) {
+                return false;
+            }
+            try {
+                return StreamingJsonScanner.of(array).anyValueMatches(elementPath, matcher);
+            } catch (JSONException e) {
+                return false;
+            }
+        }
+
+        @Override
+        double cost() {
+            return elementPath == null ? matcher.cost() : ARRAY_COST_FACTOR * matcher.cost();
+        }
+
+        ValueMatcher getMatcher() {
+            return matcher;
+        }
+
+        @Override
+        public String toString() {
+            return path + " " + operator + " '" + operand + "'";
+        }
+    }
+
+    /**
+     * Rule matching every event, used for sources that only filter on record metadata but still need the fields of
+     * the value, e.g. for a {@link JsonProjection}
+     */
+    static final class MatchAll extends FilterRule {
+        @Override
+        public boolean evaluate(String[] values) {
+            return true;
+        }
+
+        @Override
+        double cost() {
+            return 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return "TRUE";
+        }
+    }
+
+    /**
+     * Negation of a rule
+     */
+    static final class Negation extends FilterRule {
+        private final FilterRule rule;
+
+        Negation(FilterRule rule) {
+            this.rule = rule;
+        }
+
+        @Override
+        public boolean evaluate(String[] values) {
+            return !rule.evaluate(values);
+        }
+
+        @Override
+        double cost() {
+            return rule.cost();
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + rule;
+        }
+    }
+
+    /**
+     * AND or OR of several rules with short-circuit evaluation. The order of the operands is adapted to the data:
+     * a small random sample of evaluations runs all operands to estimate their selectivity and operands that are
+     * cheap and likely to decide the result are moved to the front. The match counts of the operands are updated
+     * without synchronization, lost updates only affect the ordering and never the result. Operands are sorted by a
+     * snapshot of their priorities, so concurrent updates cannot break the sort.
+     */
+    static final class Junction extends FilterRule {
+        private static final int SAMPLING_RATE = 64;
+        private static final int SAMPLES_PER_REORDER = 256;
+
+        private final boolean conjunction;
+        private volatile FilterRule[] rules;
+        private final AtomicInteger samples = new AtomicInteger();
+
+        /**
+         * @param conjunction true for AND, false for OR
+         * @param rules operands
+         */
+        Junction(boolean conjunction, FilterRule[] rules) {
+            this.conjunction = conjunction;
+            this.rules = sortByPriority(rules);
+        }
+
+        @Override
+        public boolean evaluate(String[] values) {
+            FilterRule[] current = rules;
+            if (ThreadLocalRandom.current().nextInt(SAMPLING_RATE) == 0) {
+                return evaluateSampled(current, values);
+            }
+            for (FilterRule rule : current) {
+                if (rule.evaluate(values) != conjunction) {
+                    return !conjunction;
+                }
+            }
+            return conjunction;
+        }
+
+        private boolean evaluateSampled(FilterRule[] current, String[] values) {
+            boolean result = conjunction;
+            for (FilterRule rule : current) {
+                boolean ruleResult = rule.evaluate(values);
+                rule.recordSample(ruleResult);
+                if (ruleResult != conjunction) {
+                    result = !conjunction;
+                }
+            }
+            // one thread reorders per SAMPLES_PER_REORDER samples, the count may wrap around
+            if (samples.incrementAndGet() % SAMPLES_PER_REORDER == 0) {
+                rules = sortByPriority(current);
+                for (FilterRule rule : current) {
+                    rule.decaySamples();
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Orders operands by expected cost per decision, i.e. cost divided by the probability that the operand
+         * short-circuits the junction (false for AND, true for OR)
+         */
+        private FilterRule[] sortByPriority(FilterRule[] current) {
+            double[] priorities = Arrays.stream(current).mapToDouble(this::priority).toArray();
+            return IntStream.range(0, current.length).boxed()
+                    .sorted(Comparator.comparingDouble(index -> priorities[index]))
+                    .map(index -> current[index])
+                    .toArray(FilterRule[]::new);
+        }
+
+        private double priority(FilterRule rule) {
+            double deciding = conjunction ? 1.0 - rule.matchProbability() : rule.matchProbability();
+            return rule.cost() / deciding;
+        }
+
+        @Override
+        double cost() {
+            return Arrays.stream(rules).mapToDouble(FilterRule::cost).sum();
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.stream(rules)
+                    .map(FilterRule::toString)
+                    .collect(Collectors.joining(conjunction ? " AND " : " OR ", "(", ")"));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.schm1tz1;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for filter rules as configured with streamsFilter.&lt;source&gt;.rule, e.g.
+ * <pre>
+ * entity_id ~ 'sensor\..*_battery' AND (attributes.device_class = 'battery' OR NOT state = '0')
+ * </pre>
+ * Predicates compare a JSON path with an operand using = (equals), != (not equals), ~ (regex matches the full
+ * value), !~ (regex does not match) or the numeric comparisons &gt;, &gt;=, &lt; and &lt;=. Predicates are combined
+ * with AND, OR, NOT (case-insensitive) and parentheses, AND binds stronger than OR. Operands are quoted with ' or ",
+ * inside quotes only the quote character itself can be escaped with a backslash, all other backslashes are passed on
+ * unchanged (e.g. to the regex). Numbers, true and false can be given without quotes and are compared with the
+ * value as written in the JSON document.
+ * <p>
+ * Paths can address array elements with an index, e.g. items[0].id, or all elements with [*], e.g.
+ * items[*].price &gt; 100 matches if any element matches, items[*].state != 'off' if no element is 'off'.
+ */
+public class FilterRuleParser {
+    private final String expression;
+    private final JsonPathSet pathSet;
+    private int pos = 0;
+
+    private FilterRuleParser(String expression, JsonPathSet pathSet) {
+        this.expression = expression;
+        this.pathSet = pathSet;
+    }
+
+    /**
+     * Parses and compiles a rule
+     * @param expression rule expression
+     * @param pathSet path set to which all referenced fields are added, the rule refers to their indices
+     * @return compiled rule
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static FilterRule parse(String expression, JsonPathSet pathSet) {
+        FilterRuleParser parser = new FilterRuleParser(expression, pathSet);
+        FilterRule rule = parser.parseOr();
+        parser.skipWhitespace();
+        if (parser.pos < expression.length()) {
+            throw parser.error("Unexpected input");
+        }
+        return rule;
+    }
+
+    private FilterRule parseOr() {
+        List<FilterRule> rules = new ArrayList<>();
+        rules.add(parseAnd());
+        while (acceptKeyword("OR")) {
+            rules.add(parseAnd());
+        }
+        return rules.size() == 1 ? rules.get(0) : new FilterRule.Junction(false, rules.toArray(new FilterRule[0]));
+    }
+
+    private FilterRule parseAnd() {
+        List<FilterRule> rules = new ArrayList<>();
+        rules.add(parseUnary());
+        while (acceptKeyword("AND")) {
+            rules.add(parseUnary());
+        }
+        return rules.size() == 1 ? rules.get(0) : new FilterRule.Junction(true, rules.toArray(new FilterRule[0]));
+    }
+
+    private FilterRule parseUnary() {
+        if (acceptKeyword("NOT")) {
+            return new FilterRule.Negation(parseUnary());
+        }
+        skipWhitespace();
+        if (accept('(')) {
+            FilterRule rule = parseOr();
+            skipWhitespace();
+            if (!accept(')')) {
+                throw error("Expected ')'");
+            }
+            return rule;
+        }
+        return parsePredicate();
+    }
+
+    private FilterRule parsePredicate() {
+        skipWhitespace();
+        int start = pos;
+        while (pos < expression.length() && isPathChar(expression.charAt(pos))) {
+            pos++;
+        }
+        if (pos == start) {
+            throw error("Expected JSON path");
+        }
+        String path = expression.substring(start, pos);
+
+        skipWhitespace();
+        String operator;
+        if (expression.startsWith("!=", pos) || expression.startsWith("!~", pos)
+                || expression.startsWith(">=", pos) || expression.startsWith("<=", pos)) {
+            operator = expression.substring(pos, pos + 2);
+        } else if (pos < expression.length() && "=~><".indexOf(expression.charAt(pos)) >= 0) {
+            operator = expression.substring(pos, pos + 1);
+        } else {
+            throw error("Expected one of =, !=, ~, !~, >, >=, <, <=");
+        }
+        int operatorPos = pos;
+        pos += operator.length();
+        String operand = parseOperand();
+
+        try {
+            return FilterRule.FieldPredicate.of(pathSet, path, operator, operand);
+        } catch (IllegalArgumentException e) {
+            pos = operatorPos;
+            throw error(e.getMessage());
+        }
+    }
+
+    private String parseOperand() {
+        skipWhitespace();
+        if (pos < expression.length() && expression.charAt(pos) != '\'' && expression.charAt(pos) != '"') {
+            int start = pos;
+            while (pos < expression.length() && isPathChar(expression.charAt(pos))) {
+                pos++;
+            }
+            String literal = expression.substring(start, pos);
+            if (!ValueMatcher.isNumber(literal) && !literal.equals("true") && !literal.equals("false")) {
+                pos = start;
+                throw error("Expected quoted value, number, true or false");
+            }
+            return literal;
+        }
+        return parseQuoted();
+    }
+
+    private String parseQuoted() {
+        if (pos >= expression.length()) {
+            throw error("Expected quoted value");
+        }
+        char quote = expression.charAt(pos++);
+        StringBuilder value = new StringBuilder();
+        while (pos < expression.length()) {
+            char c = expression.charAt(pos++);
+            if (c == quote) {
+                return value.toString();
+            }
+            if (c == '\\' && pos < expression.length() && expression.charAt(pos) == quote) {
+                c = expression.charAt(pos++);
+            }
+            value.append(c);
+        }
+        throw error("Unterminated quoted value");
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        skipWhitespace();
+        int end = pos + keyword.length();
+        if (expression.regionMatches(true, pos, keyword, 0, keyword.length())
+                && (end == expression.length() || !isPathChar(expression.charAt(end)))) {
+            pos = end;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean accept(char c) {
+        if (pos < expression.length() && expression.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isPathChar(char c) {
+        return !Character.isWhitespace(c) && "()=!~<>'\"".indexOf(c) < 0;
+    }
+
+    private void skipWhitespace() {
+        while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid filter rule '" + expression + "': " + message + " at position " + pos);
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.streams.processor.api.FixedKeyProcessor;
+import org.apache.kafka.streams.processor.api.FixedKeyProcessorContext;
+import org.apache.kafka.streams.processor.api.FixedKeyRecord;
+
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Filter of the DSL (sub-)topologies, added with {@link org.apache.kafka.streams.kstream.KStream#processValues} so that
+ * its metrics are registered per stream task like those of the {@link StreamFilterProcessor} and removed when the task
+ * is closed. Records are forwarded unchanged if the filter and the {@link ForwardLimiter} of the source, if any, pass
+ * them. The filter is looked up for every record so that reloaded filter rules apply without rebuilding the topology.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class FilterValuesProcessor<K, V> implements FixedKeyProcessor<K, V, V> {
+    private final String sourceName;
+    private final Supplier<SourceFilter> sourceFilter;
+    private final BiFunction<EventFilter, V, String[]> fieldExtraction;
+    private final SampledErrorLogger jsonErrorLogger;
+    private FixedKeyProcessorContext<K, V> context;
+    private FilterMetrics metrics;
+
+    /**
+     * @param sourceName      source name from the configuration, used to tag the metrics
+     * @param sourceFilter    current filter and action of the source
+     * @param fieldExtraction function extracting the fields of a filter from a record value
+     * @param jsonErrorLogger log for values that cannot be parsed
+     */
+    public FilterValuesProcessor(String sourceName, Supplier<SourceFilter> sourceFilter,
+                                 BiFunction<EventFilter, V, String[]> fieldExtraction, SampledErrorLogger jsonErrorLogger) {
+        this.sourceName = sourceName;
+        this.sourceFilter = sourceFilter;
+        this.fieldExtraction = fieldExtraction;
+        this.jsonErrorLogger = jsonErrorLogger;
+    }
+
+    @Override
+    public void init(FixedKeyProcessorContext<K, V> context) {
+        this.context = context;
+        this.metrics = FilterMetrics.register(context.metrics(), sourceName, context.taskId().toString(), jsonErrorLogger);
+    }
+
+    @Override
+    public void process(FixedKeyRecord<K, V> record) {
+        SourceFilter filter = sourceFilter.get();
+        boolean forward = filter.isForwarding(metrics.evaluate(filter.getEventFilter(), fieldExtraction, record.value()));
+        if (forward && filter.getLimiter() != null && !filter.getLimiter().tryForward(record.key(), null)) {
+            metrics.recordLimited();
+            return;
+        }
+        metrics.recordResult(forward);
+        if (forward) {
+            context.forward(record);
+        }
+    }
+
+    @Override
+    public void close() {
+        metrics.close();
+    }
+}
@@ -0,0 +1,253 @@
+package com.github.schm1tz1;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Load shedding for the records a source forwards, e.g. to keep a cheap preview of a busy topic: deterministic
+ * sampling of a share of the records by key or by a JSON field, a token bucket limiting the records per second and a
+ * limit of the first N records per fixed window, applied in this order. Sampling hashes the key or field, so all
+ * records with the same key or field value are either kept or dropped. The limits are kept in atomic longs updated with
+ * compare-and-set without allocation, instances are shared by all stream threads so that they apply per application
+ * instance. A reload of the filter rules keeps the counts of the limits unless they were changed, see
+ * {@link #continuing(ForwardLimiter)}.
+ */
+public final class ForwardLimiter {
+    /** resolution of the sample percentage, 0.01% */
+    static final int SAMPLE_SCALE = 10_000;
+
+    private final int sampleThreshold;
+    private final int sampleSlot;
+    private final String sampleField;
+    private final double maxPerSecond;
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final int maxPerWindow;
+    private final long windowNanos;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    /** theoretical arrival time of the next record of the token bucket (GCRA) */
+    private final AtomicLong nextArrival;
+    /** index of the current window in the upper, number of records forwarded in it in the lower 32 bits */
+    private final AtomicLong windowState;
+
+    /**
+     * @param samplePercent share of the records to keep in percent, 100 to keep all
+     * @param sampleSlot index of the sample field in the extracted fields, -1 to sample by key
+     * @param sampleField path of the sample field, null to sample by key
+     * @param maxPerSecond maximum rate of forwarded records, 0 for no rate limit
+     * @param maxBurst records forwarded at once before the rate limit applies
+     * @param maxPerWindow records forwarded per window, 0 for no limit
+     * @param windowMs size of the windows in milliseconds
+     */
+    public ForwardLimiter(double samplePercent, int sampleSlot, String sampleField, double maxPerSecond, long maxBurst,
+                          int maxPerWindow, long windowMs) {
+        this(samplePercent, sampleSlot, sampleField, maxPerSecond, maxBurst, maxPerWindow, windowMs, System::nanoTime);
+    }
+
+    ForwardLimiter(double samplePercent, int sampleSlot, String sampleField, double maxPerSecond, long maxBurst,
+                   int maxPerWindow, long windowMs, LongSupplier nanoClock) {
+        if (samplePercent < 0.0 || samplePercent > 100.0) {
+            throw new RuntimeException("Sample percentage must be between 0 and 100: " + samplePercent);
+        }
+        if (maxPerSecond < 0.0 || maxBurst < 1 || maxPerWindow < 0 || windowMs < 1) {
+            throw new RuntimeException("Invalid limits: maxPerSecond=" + maxPerSecond + ", maxBurst=" + maxBurst
+                    + ", maxPerWindow=" + maxPerWindow + ", windowMs=" + windowMs);
+        }
+        this.sampleThreshold = (int) Math.round(samplePercent * (SAMPLE_SCALE / 100));
+        this.sampleSlot = sampleSlot;
+        this.sampleField = sampleField;
+        this.maxPerSecond = maxPerSecond;
+        this.emissionIntervalNanos = maxPerSecond > 0.0 ? Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / maxPerSecond)) : 0L;
+        this.burstToleranceNanos = emissionIntervalNanos * (maxBurst - 1);
+        this.maxPerWindow = maxPerWindow;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        this.nextArrival = new AtomicLong(startNanos);
+        this.windowState = new AtomicLong();
+    }
+
+    /**
+     * Creates a limiter with the sampling and limits of one limiter and the clock and counts of another one
+     */
+    private ForwardLimiter(ForwardLimiter settings, ForwardLimiter state) {
+        this.sampleThreshold = settings.sampleThreshold;
+        this.sampleSlot = settings.sampleSlot;
+        this.sampleField = settings.sampleField;
+        this.maxPerSecond = settings.maxPerSecond;
+        this.emissionIntervalNanos = settings.emissionIntervalNanos;
+        this.burstToleranceNanos = settings.burstToleranceNanos;
+        this.maxPerWindow = settings.maxPerWindow;
+        this.windowNanos = settings.windowNanos;
+        this.nanoClock = state.nanoClock;
+        this.startNanos = state.startNanos;
+        this.nextArrival = state.nextArrival;
+        this.windowState = state.windowState;
+    }
+
+    /**
+     * Creates the limiter of a source from streamsFilter.&lt;source&gt;.samplePercent, .sampleField, .maxPerSecond,
+     * .maxBurst (default: one second of records), .maxPerWindow and .windowMs (default 60000)
+     * @param properties properties containing the filter rules
+     * @param sourceName source name from the configuration
+     * @param pathSet path set the sample field is added to
+     * @return limiter of the source, null if none of the settings is given
+     * @throws RuntimeException if a setting is invalid
+     */
+    public static ForwardLimiter fromProperties(Properties properties, String sourceName, JsonPathSet pathSet) {
+        String prefix = "streamsFilter." + sourceName + ".";
+        String samplePercent = properties.getProperty(prefix + "samplePercent");
+        String sampleField = properties.getProperty(prefix + "sampleField");
+        String maxPerSecond = properties.getProperty(prefix + "maxPerSecond");
+        String maxPerWindow = properties.getProperty(prefix + "maxPerWindow");
+        if (samplePercent == null && maxPerSecond == null && maxPerWindow == null) {
+            if (sampleField != null) {
+                throw new RuntimeException("Sample field of source " + sourceName + " requires " + prefix + "samplePercent!");
+            }
+            return null;
+        }
+        try {
+            double rate = maxPerSecond == null ? 0.0 : Double.parseDouble(maxPerSecond);
+            return new ForwardLimiter(
+                    samplePercent == null ? 100.0 : Double.parseDouble(samplePercent),
+                    sampleField == null ? -1 : pathSet.add(sampleField),
+                    sampleField,
+                    rate,
+                    Long.parseLong(properties.getProperty(prefix + "maxBurst", String.valueOf(Math.max(1L, (long) rate)))),
+                    maxPerWindow == null ? 0 : Integer.parseInt(maxPerWindow),
+                    Long.parseLong(properties.getProperty(prefix + "windowMs", "60000")));
+        } catch (NumberFormatException err) {
+            throw new RuntimeException("Invalid sampling or limit of source " + sourceName + ": " + err.getMessage());
+        }
+    }
+
+    /**
+     * Carries the counts of the rate and window limits over a reload of the filter rules, so that a change of another
+     * setting does not allow a new burst or window of records. Sampling has no state and may change.
+     * @param previous limiter of the source before the reload, may be null
+     * @return a limiter sharing the counts of the previous one if both have the same limits, this limiter otherwise
+     */
+    public ForwardLimiter continuing(ForwardLimiter previous) {
+        if (previous == null || previous.emissionIntervalNanos != emissionIntervalNanos
+                || previous.burstToleranceNanos != burstToleranceNanos || previous.maxPerWindow != maxPerWindow
+                || previous.windowNanos != windowNanos) {
+            return this;
+        }
+        return new ForwardLimiter(this, previous);
+    }
+
+    /**
+     * @return index of the sample field in the extracted fields, -1 if records are sampled by key
+     */
+    public int getSampleSlot() {
+        return sampleSlot;
+    }
+
+    /**
+     * Takes the decision for a record the filter forwards and counts it for the limits if it is kept
+     * @param key record key, used for sampling if there is no sample field
+     * @param fields extracted fields, only used if there is a sample field
+     * @return true if the record is forwarded, false if it is dropped
+     */
+    public boolean tryForward(Object key, String[] fields) {
+        if (sampleThreshold < SAMPLE_SCALE) {
+            Object sampled = sampleSlot < 0 ? key : fields[sampleSlot];
+            if ((mix(hash(sampled)) & Integer.MAX_VALUE) % SAMPLE_SCALE >= sampleThreshold) {
+                return false;
+            }
+        }
+        if (emissionIntervalNanos == 0L && maxPerWindow == 0) {
+            return true;
+        }
+        long now = nanoClock.getAsLong();
+        if (emissionIntervalNanos == 0L) {
+            return tryAcquireWindow(now);
+        }
+        if (!tryAcquireRate(now)) {
+            return false;
+        }
+        if (maxPerWindow > 0 && !tryAcquireWindow(now)) {
+            // the record is not forwarded, give its slot of the rate limit back
+            nextArrival.addAndGet(-emissionIntervalNanos);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean tryAcquireRate(long now) {
+        while (true) {
+            long arrival = nextArrival.get();
+            long start = arrival - now < 0 ? now : arrival;
+            if (start - now > burstToleranceNanos) {
+                return false;
+            }
+            if (nextArrival.compareAndSet(arrival, start + emissionIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean tryAcquireWindow(long now) {
+        long window = (now - startNanos) / windowNanos;
+        while (true) {
+            long state = windowState.get();
+            long count = (state >>> 32) == (window & 0xffffffffL) ? state & 0xffffffffL : 0L;
+            if (count >= maxPerWindow) {
+                return false;
+            }
+            if (windowState.compareAndSet(state, (window << 32) | (count + 1))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return hash of a String, byte[] or other key, 0 for null, without allocation. ASCII keys hash the same as String
+     * and as byte[] so that records are sampled alike in byte array mode.
+     */
+    static int hash(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof byte[]) {
+            int hash = 0;
+            for (byte b : (byte[]) value) {
+                hash = 31 * hash + (b & 0xff);
+            }
+            return hash;
+        }
+        return value.hashCode();
+    }
+
+    /**
+     * finalizer of MurmurHash3, spreads the bits of hash codes that differ in few bits only (e.g. sequential keys)
+     */
+    static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        if (sampleThreshold < SAMPLE_SCALE) {
+            description.append("sample ").append(sampleThreshold * 100.0 / SAMPLE_SCALE).append("% by ")
+                    .append(sampleField == null ? "key" : sampleField);
+        }
+        if (emissionIntervalNanos > 0L) {
+            description.append(description.length() == 0 ? "" : ", ").append("max ").append(maxPerSecond).append("/s");
+        }
+        if (maxPerWindow > 0) {
+            description.append(description.length() == 0 ? "" : ", ").append("first ").append(maxPerWindow)
+                    .append(" per ").append(TimeUnit.NANOSECONDS.toMillis(windowNanos)).append(" ms");
+        }
+        return description.toString();
+    }
+}
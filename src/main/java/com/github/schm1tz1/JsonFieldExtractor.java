@@ -0,0 +1,136 @@
+package com.github.schm1tz1;
+
+/**
+ * Selects how a JSON field is extracted from a message, configured per source with streamsFilter.&lt;source&gt;.extractor
+ */
+public enum JsonFieldExtractor {
+    /**
+     * Full parse of the message into an org.json object tree (default)
+     */
+    JSON_OBJECT {
+        @Override
+        public String getStringForPath(String inputJsonString, String[] pathSegments) {
+            return EventFilterPipelineTools.getStringForPath(inputJsonString, pathSegments);
+        }
+
+        @Override
+        public String getStringForPath(byte[] inputJsonBytes, String[] pathSegments) {
+            return EventFilterPipelineTools.getStringForPath(inputJsonBytes, pathSegments);
+        }
+
+        @Override
+        public String[] getStringsForPaths(String inputJsonString, JsonPathSet pathSet) {
+            return EventFilterPipelineTools.getStringsForPaths(inputJsonString, pathSet);
+        }
+
+        @Override
+        public String[] getStringsForPaths(byte[] inputJsonBytes, JsonPathSet pathSet) {
+            return EventFilterPipelineTools.getStringsForPaths(inputJsonBytes, pathSet);
+        }
+
+        @Override
+        public String[] parseStringsForPaths(String inputJsonString, JsonPathSet pathSet) {
+            return EventFilterPipelineTools.parseStringsForPaths(inputJsonString, pathSet);
+        }
+
+        @Override
+        public String[] parseStringsForPaths(byte[] inputJsonBytes, JsonPathSet pathSet) {
+            return EventFilterPipelineTools.parseStringsForPaths(inputJsonBytes, pathSet);
+        }
+    },
+    /**
+     * Streaming scan that skips unrelated members and stops once the path is resolved
+     */
+    STREAMING {
+        @Override
+        public String getStringForPath(String inputJsonString, String[] pathSegments) {
+            return EventFilterPipelineTools.getStringForPathStreaming(inputJsonString, pathSegments);
+        }
+
+        @Override
+        public String getStringForPath(byte[] inputJsonBytes, String[] pathSegments) {
+            return EventFilterPipelineTools.getStringForPathStreaming(inputJsonBytes, pathSegments);
+        }
+
+        @Override
+        public String[] getStringsForPaths(String inputJsonString, JsonPathSet pathSet) {
+            return EventFilterPipelineTools.getStringsForPathsStreaming(inputJsonString, pathSet);
+        }
+
+        @Override
+        public String[] getStringsForPaths(byte[] inputJsonBytes, JsonPathSet pathSet) {
+            return EventFilterPipelineTools.getStringsForPathsStreaming(inputJsonBytes, pathSet);
+        }
+
+        @Override
+        public String[] parseStringsForPaths(String inputJsonString, JsonPathSet pathSet) {
+            return EventFilterPipelineTools.parseStringsForPathsStreaming(inputJsonString, pathSet);
+        }
+
+        @Override
+        public String[] parseStringsForPaths(byte[] inputJsonBytes, JsonPathSet pathSet) {
+            return EventFilterPipelineTools.parseStringsForPathsStreaming(inputJsonBytes, pathSet);
+        }
+    };
+
+    /**
+     * Extracts a String object from a given String-based JSON input
+     * @param inputJsonString String-encoded JSON input
+     * @param pathSegments pre-split JSON path to field that is to be extracted
+     * @return String-encoded value, "" if not found
+     */
+    public abstract String getStringForPath(String inputJsonString, String[] pathSegments);
+
+    /**
+     * Extracts a String object from a given UTF-8 encoded JSON input
+     * @param inputJsonBytes UTF-8 encoded JSON input
+     * @param pathSegments pre-split JSON path to field that is to be extracted
+     * @return String-encoded value, "" if not found
+     */
+    public abstract String getStringForPath(byte[] inputJsonBytes, String[] pathSegments);
+
+    /**
+     * Extracts String objects for all paths of a path set with a single parse of the input
+     * @param inputJsonString String-encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set, "" if not found
+     */
+    public abstract String[] getStringsForPaths(String inputJsonString, JsonPathSet pathSet);
+
+    /**
+     * Extracts String objects for all paths of a path set with a single parse of the input
+     * @param inputJsonBytes UTF-8 encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set, "" if not found
+     */
+    public abstract String[] getStringsForPaths(byte[] inputJsonBytes, JsonPathSet pathSet);
+
+    /**
+     * Extracts String objects for all paths of a path set with a single parse of the input, invalid input is not
+     * logged but reported to the caller
+     * @param inputJsonString String-encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set, "" if not found
+     * @throws org.json.JSONException if the input is not valid JSON
+     */
+    public abstract String[] parseStringsForPaths(String inputJsonString, JsonPathSet pathSet);
+
+    /**
+     * Extracts String objects for all paths of a path set with a single parse of the input, invalid input is not
+     * logged but reported to the caller
+     * @param inputJsonBytes UTF-8 encoded JSON input
+     * @param pathSet JSON paths to fields that are to be extracted
+     * @return String-encoded values in the order of the path set, "" if not found
+     * @throws org.json.JSONException if the input is not valid JSON
+     */
+    public abstract String[] parseStringsForPaths(byte[] inputJsonBytes, JsonPathSet pathSet);
+
+    /**
+     * Maps configuration values like json-object or streaming to the extractor
+     * @param name name of the extractor as used in the configuration
+     * @return extractor
+     */
+    public static JsonFieldExtractor fromConfig(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.schm1tz1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Set of JSON paths that are extracted together in one pass over a message. Paths are merged into a tree so that the
+ * streaming extractor only needs to look at each member once, the extracted values are returned in the order the paths
+ * were added. Raw paths (see {@link #addRaw(String)}) are extracted as JSON text of any type, e.g. for a
+ * {@link JsonProjection}.
+ */
+public final class JsonPathSet {
+    private final List<String> paths = new ArrayList<>();
+    private final List<String[]> segments = new ArrayList<>();
+    private final List<Boolean> raw = new ArrayList<>();
+    final Node root = new Node("");
+
+    /**
+     * Adds a path if not yet contained
+     * @param path dot-separated JSON path
+     * @return index of the path (i.e. of its value in the extraction result)
+     */
+    public int add(String path) {
+        return add(path, false);
+    }
+
+    /**
+     * Adds a path whose value is extracted as JSON text (quoted Strings, numbers, objects, arrays, null) if not yet
+     * contained, "" if the path cannot be resolved
+     * @param path dot-separated JSON path
+     * @return index of the path (i.e. of its value in the extraction result)
+     */
+    public int addRaw(String path) {
+        return add(path, true);
+    }
+
+    private int add(String path, boolean rawValue) {
+        if (path.contains(EventFilterPipelineTools.WILDCARD)) {
+            throw new IllegalArgumentException("Wildcard paths cannot be extracted directly: " + path);
+        }
+        for (int i = 0; i < paths.size(); i++) {
+            if (paths.get(i).equals(path) && raw.get(i) == rawValue) {
+                return i;
+            }
+        }
+        int index = paths.size();
+        String[] pathSegments = EventFilterPipelineTools.splitPath(path);
+        paths.add(path);
+        segments.add(pathSegments);
+        raw.add(rawValue);
+
+        Node node = root;
+        node.subtreeSlots = append(node.subtreeSlots, index);
+        for (String segment : pathSegments) {
+            node = node.child(segment);
+            node.subtreeSlots = append(node.subtreeSlots, index);
+        }
+        if (rawValue) {
+            node.rawSlot = index;
+        } else {
+            node.slot = index;
+        }
+        return index;
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    public String getPath(int index) {
+        return paths.get(index);
+    }
+
+    public String[] getSegments(int index) {
+        return segments.get(index);
+    }
+
+    /**
+     * @param index index of the path
+     * @return true if the value is extracted as JSON text, see {@link #addRaw(String)}
+     */
+    public boolean isRaw(int index) {
+        return raw.get(index);
+    }
+
+    @Override
+    public String toString() {
+        return paths.toString();
+    }
+
+    /**
+     * Tree node, one per distinct path prefix
+     */
+    static final class Node {
+        final String name;
+        /** array index for steps like [0], -1 for object members */
+        final int index;
+        Node[] children = new Node[0];
+        boolean memberChildren = false;
+        boolean indexChildren = false;
+        /** index of the path ending at this node, -1 if none */
+        int slot = -1;
+        /** index of the raw path ending at this node, -1 if none */
+        int rawSlot = -1;
+        /** indices of all paths ending at or below this node */
+        int[] subtreeSlots = new int[0];
+
+        Node(String name) {
+            this.name = name;
+            this.index = EventFilterPipelineTools.arrayIndex(name);
+        }
+
+        Node child(String childName) {
+            for (Node child : children) {
+                if (child.name.equals(childName)) {
+                    return child;
+                }
+            }
+            Node child = new Node(childName);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+            if (child.index >= 0) {
+                indexChildren = true;
+            } else {
+                memberChildren = true;
+            }
+            return child;
+        }
+    }
+}
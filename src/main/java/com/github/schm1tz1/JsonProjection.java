@@ -0,0 +1,113 @@
+package com.github.schm1tz1;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Projection of a JSON document to selected fields, configured with streamsFilter.&lt;source&gt;.outputFields. The fields
+ * are added as raw paths to the path set of the filter, so they are extracted in the same pass as the filter fields,
+ * and written as a new document with the same nesting, e.g. a.b,c gives {"a":{"b":...},"c":...}. Fields missing in
+ * the input are left out. Instances can be shared between stream threads.
+ */
+public class JsonProjection {
+    private final List<String> outputFields;
+    private final JsonPathSet pathSet;
+    private final Node root = new Node("");
+
+    /**
+     * @param outputFields dot-separated JSON paths of the fields to keep
+     * @param pathSet path set the fields are added to, i.e. the one of the filter
+     * @throws IllegalArgumentException if a field is contained in another one or addresses array elements
+     */
+    public JsonProjection(List<String> outputFields, JsonPathSet pathSet) {
+        this.outputFields = outputFields;
+        this.pathSet = pathSet;
+        for (String outputField : outputFields) {
+            Node node = root;
+            for (String segment : EventFilterPipelineTools.splitPath(outputField)) {
+                if (segment.startsWith("[")) {
+                    throw new IllegalArgumentException("Output field " + outputField + " must not contain array indices");
+                }
+                if (node.slot >= 0) {
+                    throw new IllegalArgumentException("Output field " + outputField + " is contained in another output field");
+                }
+                node = node.child(segment);
+            }
+            if (node.slot >= 0 || !node.children.isEmpty()) {
+                throw new IllegalArgumentException("Output field " + outputField + " overlaps with another output field");
+            }
+            node.slot = pathSet.addRaw(outputField);
+        }
+    }
+
+    /**
+     * @param fields values extracted with the path set of this projection
+     * @return projected JSON document
+     */
+    public String project(String[] fields) {
+        StringBuilder builder = new StringBuilder();
+        writeObject(builder, root, fields);
+        return builder.toString();
+    }
+
+    private static void writeObject(StringBuilder builder, Node node, String[] fields) {
+        builder.append('{');
+        boolean empty = true;
+        for (Node child : node.children) {
+            int memberStart = builder.length();
+            if (!empty) {
+                builder.append(',');
+            }
+            builder.append(JSONObject.quote(child.name)).append(':');
+            if (child.slot >= 0) {
+                if (fields[child.slot].isEmpty()) {
+                    builder.setLength(memberStart);
+                    continue;
+                }
+                builder.append(fields[child.slot]);
+            } else {
+                int valueStart = builder.length();
+                writeObject(builder, child, fields);
+                if (builder.length() - valueStart == 2) {
+                    // no field of the sub-object found
+                    builder.setLength(memberStart);
+                    continue;
+                }
+            }
+            empty = false;
+        }
+        builder.append('}');
+    }
+
+    public JsonPathSet getPathSet() {
+        return pathSet;
+    }
+
+    @Override
+    public String toString() {
+        return outputFields.toString();
+    }
+
+    private static final class Node {
+        final String name;
+        final List<Node> children = new ArrayList<>();
+        int slot = -1;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        Node child(String childName) {
+            for (Node child : children) {
+                if (child.name.equals(childName)) {
+                    return child;
+                }
+            }
+            Node child = new Node(childName);
+            children.add(child);
+            return child;
+        }
+    }
+}
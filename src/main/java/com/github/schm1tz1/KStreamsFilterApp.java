@@ -4,6 +4,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Properties;
 
 @CommandLine.Command(name = "KStreamsFilterApp",
@@ -29,6 +32,30 @@ public class KStreamsFilterApp implements Runnable {
             description = "Enable MonitoringInterceptors (for Control Center)")
     protected boolean monitoringInterceptors = false;
 
+    @CommandLine.Option(names = {"--exactly-once"},
+            description = "Process with exactly-once semantics (processing.guarantee=exactly_once_v2), using the exactly_once performance profile unless another one is configured")
+    protected boolean exactlyOnce = false;
+
+    @CommandLine.Option(names = {"--metrics-port"},
+            description = "If provided, serve Prometheus metrics on /metrics and health probes on /health/live and /health/ready via HTTP on this port")
+    protected Integer metricsPort = null;
+
+    @CommandLine.Option(names = {"--dry-run"},
+            description = "Build the topology and the Kafka Streams client without starting them and exit, e.g. to validate the configuration or to train a class data sharing archive")
+    protected boolean dryRun = false;
+
+    @CommandLine.Option(names = {"--replay"},
+            description = "If provided, filter these newline-delimited JSON files or directories (*.gz is decompressed) offline instead of running against the cluster, can be repeated")
+    protected List<Path> replayInputs = null;
+
+    @CommandLine.Option(names = {"--replay-output"}, defaultValue = "replay-output",
+            description = "Directory for the output files of --replay, one <topic>.json per output topic (default: ${DEFAULT-VALUE})")
+    protected Path replayOutput;
+
+    @CommandLine.Option(names = {"--replay-topic"},
+            description = "Replay the files as this input topic, i.e. only for the sources reading it (default: all sources)")
+    protected String replayTopic = null;
+
     public static void main(String[] args) throws Exception {
         int returnCode = new CommandLine(new KStreamsFilterApp()).execute(args);
         System.exit(returnCode);
@@ -36,11 +63,28 @@ public class KStreamsFilterApp implements Runnable {
 
     @Override
     public void run() {
-        Properties streamProperties = PipelineConfigTools.configureStreamsProperties(configFile, additionalConfigFile);
+        if (replayInputs != null) {
+            replay();
+            return;
+        }
+        Properties streamProperties = PipelineConfigTools.configureStreamsProperties(exactlyOnce, !dryRun, configFile, additionalConfigFile);
         if(monitoringInterceptors) {
             PipelineConfigTools.addMonitoringInterceptorConfig(streamProperties);
         }
         EventFilterPipeline eventFilterPipeline = new EventFilterPipeline(streamProperties);
-        eventFilterPipeline.run();
+        if (dryRun) {
+            eventFilterPipeline.dryRun();
+            return;
+        }
+        eventFilterPipeline.run(metricsPort);
+    }
+
+    private void replay() {
+        Properties streamProperties = PipelineConfigTools.readStreamsProperties(configFile, additionalConfigFile);
+        try {
+            new FileReplay(streamProperties, replayTopic).run(replayInputs, replayOutput);
+        } catch (IOException e) {
+            throw new RuntimeException("Replay failed: " + e.getMessage(), e);
+        }
     }
 }
@@ -0,0 +1,175 @@
+package com.github.schm1tz1;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.streams.KafkaStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Minimal HTTP endpoint serving metrics in the Prometheus text format and health probes, an alternative to the JMX
+ * exporter agent that reads the metrics directly from the registries instead of the MBean server:
+ * <ul>
+ *     <li>/metrics: all numeric metrics as gauges named kafka_streams_&lt;group&gt;_&lt;name&gt; with their tags as labels</li>
+ *     <li>/health/live: 200 unless the Kafka Streams client failed or stopped, for liveness probes</li>
+ *     <li>/health/ready: 200 while the Kafka Streams client is running or rebalancing, for readiness probes</li>
+ * </ul>
+ * Requests are handled by a single thread of the JDK HTTP server.
+ */
+public class MetricsHttpServer implements AutoCloseable {
+    final static Logger logger = LoggerFactory.getLogger(MetricsHttpServer.class);
+    static final String CONTENT_TYPE_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final Supplier<KafkaStreams.State> streamsState;
+    private final List<Supplier<Map<MetricName, ? extends Metric>>> metricSources;
+
+    /**
+     * Creates and starts the server
+     * @param port port to listen on, 0 for any free port
+     * @param streamsState current state of the Kafka Streams client, e.g. {@link KafkaStreams#state()}
+     * @param metricSources metric registries to be served, e.g. {@link KafkaStreams#metrics()}
+     * @throws IOException if the port cannot be bound
+     */
+    public MetricsHttpServer(int port, Supplier<KafkaStreams.State> streamsState,
+                             List<Supplier<Map<MetricName, ? extends Metric>>> metricSources) throws IOException {
+        this.streamsState = streamsState;
+        this.metricSources = metricSources;
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> respond(exchange, 200, CONTENT_TYPE_PROMETHEUS, scrape()));
+        server.createContext("/health/live", exchange -> respondState(exchange, isLive(streamsState.get())));
+        server.createContext("/health/ready", exchange -> respondState(exchange, streamsState.get().isRunningOrRebalancing()));
+        server.start();
+
+        logger.info("Serving metrics and health probes on port " + getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    static boolean isLive(KafkaStreams.State state) {
+        return state != KafkaStreams.State.ERROR
+                && state != KafkaStreams.State.PENDING_ERROR
+                && state != KafkaStreams.State.NOT_RUNNING;
+    }
+
+    private void respondState(HttpExchange exchange, boolean healthy) throws IOException {
+        respond(exchange, healthy ? 200 : 503, "text/plain; charset=utf-8", streamsState.get() + "\n");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * @return current values of all metric sources in the Prometheus text format
+     */
+    String scrape() {
+        List<Map<MetricName, ? extends Metric>> metrics = new ArrayList<>();
+        for (Supplier<Map<MetricName, ? extends Metric>> metricSource : metricSources) {
+            metrics.add(metricSource.get());
+        }
+        return toPrometheusText(metrics);
+    }
+
+    /**
+     * Formats all numeric metrics as Prometheus gauges, metrics with other values (e.g. state or version) are skipped
+     * @param metrics metric registries
+     * @return Prometheus text format
+     */
+    static String toPrometheusText(List<Map<MetricName, ? extends Metric>> metrics) {
+        Map<String, StringBuilder> samplesByName = new TreeMap<>();
+        for (Map<MetricName, ? extends Metric> registry : metrics) {
+            for (Map.Entry<MetricName, ? extends Metric> metric : registry.entrySet()) {
+                Object value = metric.getValue().metricValue();
+                if (!(value instanceof Number)) {
+                    continue;
+                }
+                MetricName metricName = metric.getKey();
+                String name = sanitize("kafka_streams_" + metricName.group() + "_" + metricName.name());
+
+                StringBuilder samples = samplesByName.computeIfAbsent(name, key -> new StringBuilder());
+                samples.append(name);
+                appendLabels(samples, metricName.tags());
+                samples.append(' ').append(formatValue(((Number) value).doubleValue())).append('\n');
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, StringBuilder> samples : samplesByName.entrySet()) {
+            text.append("# TYPE ").append(samples.getKey()).append(" gauge\n").append(samples.getValue());
+        }
+        return text.toString();
+    }
+
+    private static void appendLabels(StringBuilder samples, Map<String, String> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        samples.append('{');
+        boolean first = true;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (!first) {
+                samples.append(',');
+            }
+            first = false;
+            samples.append(sanitize(tag.getKey())).append("=\"");
+            String tagValue = tag.getValue() == null ? "" : tag.getValue();
+            for (int i = 0; i < tagValue.length(); i++) {
+                char c = tagValue.charAt(i);
+                if (c == '\\' || c == '"') {
+                    samples.append('\\').append(c);
+                } else if (c == '\n') {
+                    samples.append("\\n");
+                } else {
+                    samples.append(c);
+                }
+            }
+            samples.append('"');
+        }
+        samples.append('}');
+    }
+
+    private static String sanitize(String name) {
+        StringBuilder sanitized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = Character.toLowerCase(name.charAt(i));
+            sanitized.append((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') ? c : '_');
+        }
+        return sanitized.toString();
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.toString(value);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
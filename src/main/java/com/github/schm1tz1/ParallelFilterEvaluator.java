@@ -0,0 +1,252 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.json.JSONException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates the filters of a whole poll batch in parallel on a bounded worker pool, so that JSON parsing can use all
+ * cores even for topics with few partitions. Batches are handed over by {@link ParallelFilterInterceptor} on the stream
+ * thread before Kafka Streams queues the records, the stream thread waits until the batch is evaluated. The decision
+ * for each source is attached to the record as a header and taken by {@link StreamFilterProcessor} instead of
+ * evaluating the filter again. Decision headers already present in the polled records are removed, so they cannot be
+ * forged by producers. Records are still processed one by one in offset order, so forwarding, commits and
+ * punctuation are not affected. Records without a decision (small batches, null values, errors) are evaluated by the
+ * processor as before.
+ * Decisions are made with the rules active when the batch was polled.
+ */
+public class ParallelFilterEvaluator implements AutoCloseable {
+    final static Logger logger = LoggerFactory.getLogger(ParallelFilterEvaluator.class);
+
+    /** consumer config under which the evaluator is passed to the {@link ParallelFilterInterceptor} */
+    public static final String CONFIG = "kstreams.filter.parallel.evaluator";
+    static final String HEADER_PREFIX = "kstreams-filter.decision.";
+
+    static final int MATCHING = 1;
+    static final int PARSE_ERROR = 2;
+    static final int RECORD_RULE_DECIDED = 4;
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final int threads;
+    private final int minBatchSize;
+    private final SampledErrorLogger jsonErrorLogger;
+    private final Map<String, List<Source>> sourcesByTopic = new ConcurrentHashMap<>();
+    private ExecutorService workers;
+
+    /**
+     * @param threads size of the worker pool shared by all stream threads
+     * @param minBatchSize smaller batches are left to the processors
+     * @param jsonErrorLogger log for values that cannot be parsed
+     */
+    public ParallelFilterEvaluator(int threads, int minBatchSize, SampledErrorLogger jsonErrorLogger) {
+        this.threads = threads;
+        this.minBatchSize = minBatchSize;
+        this.jsonErrorLogger = jsonErrorLogger;
+    }
+
+    /**
+     * Adds a source whose records are evaluated in parallel, its filter has to be applied by a
+     * {@link StreamFilterProcessor} with the same source name
+     * @param topic input topic of the source
+     * @param sourceName source name from the configuration
+     * @param sourceFilter current filter and action of the source
+     */
+    public void register(String topic, String sourceName, Supplier<SourceFilter> sourceFilter) {
+        sourcesByTopic.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(new Source(sourceName, sourceFilter));
+    }
+
+    /**
+     * Evaluates the filters of all registered sources for the records of a poll batch and attaches the decisions
+     * @param records records as polled by the main consumer of Kafka Streams
+     */
+    public void evaluate(ConsumerRecords<byte[], byte[]> records) {
+        List<ConsumerRecord<byte[], byte[]>> batch = new ArrayList<>(records.count());
+        for (ConsumerRecord<byte[], byte[]> record : records) {
+            // decisions can only come from this evaluator, not from producers or upstream applications
+            removeDecisions(record.headers());
+            if (record.value() != null && sourcesByTopic.containsKey(record.topic())) {
+                batch.add(record);
+            }
+        }
+        if (batch.isEmpty() || batch.size() < minBatchSize) {
+            return;
+        }
+
+        // workers only read the records, the headers are added on the calling thread once all decisions are made
+        int[][] decisions = new int[batch.size()][];
+        int taskCount = Math.min(threads * TASKS_PER_THREAD, batch.size());
+        int chunkSize = (batch.size() + taskCount - 1) / taskCount;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < batch.size(); start += chunkSize) {
+            int from = start;
+            int to = Math.min(start + chunkSize, batch.size());
+            tasks.add(() -> {
+                for (int i = from; i < to; i++) {
+                    decisions[i] = evaluate(batch.get(i), sourcesByTopic.get(batch.get(i).topic()));
+                }
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> result : getWorkers().invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            logger.error("Error in parallel filter evaluation, evaluating the batch in the processors: " + e.getCause());
+            return;
+        }
+
+        for (int i = 0; i < decisions.length; i++) {
+            List<Source> sources = sourcesByTopic.get(batch.get(i).topic());
+            Headers headers = batch.get(i).headers();
+            for (int j = 0; j < decisions[i].length; j++) {
+                headers.add(HEADER_PREFIX + sources.get(j).name, new byte[]{(byte) decisions[i][j]});
+            }
+        }
+    }
+
+    /**
+     * Evaluates the filters of all sources of a topic, the value is parsed once for sources sharing a path set
+     */
+    private int[] evaluate(ConsumerRecord<byte[], byte[]> record, List<Source> sources) {
+        int[] decisions = new int[sources.size()];
+        ParsedValue parsedValue = new ParsedValue();
+        for (int j = 0; j < decisions.length; j++) {
+            decisions[j] = evaluate(sources.get(j).sourceFilter.get(), record, parsedValue);
+        }
+        return decisions;
+    }
+
+    /**
+     * Same logic as {@link StreamFilterProcessor} and {@link FilterMetrics#evaluate}, without the metrics
+     * @return decision flags
+     */
+    int evaluate(SourceFilter filter, ConsumerRecord<byte[], byte[]> record) {
+        return evaluate(filter, record, new ParsedValue());
+    }
+
+    private int evaluate(SourceFilter filter, ConsumerRecord<byte[], byte[]> record, ParsedValue parsedValue) {
+        RecordFilter recordFilter = filter.getRecordFilter();
+        if (recordFilter != null && !recordFilter.isMatching(record.key(), record.headers(), record.timestamp(), record.partition())) {
+            return RECORD_RULE_DECIDED;
+        }
+        EventFilter eventFilter = filter.getEventFilter();
+        if (eventFilter == null) {
+            return RECORD_RULE_DECIDED | MATCHING;
+        }
+
+        if (parsedValue.pathSet != eventFilter.getPathSet()) {
+            parsedValue.pathSet = eventFilter.getPathSet();
+            try {
+                parsedValue.fields = eventFilter.parseFields(record.value());
+                parsedValue.parseError = false;
+            } catch (JSONException err) {
+                jsonErrorLogger.error(() -> "Error in JSON processing, cannot retrieve " + eventFilter.getPathSet() + " from input: " + err);
+                parsedValue.fields = eventFilter.emptyFields();
+                parsedValue.parseError = true;
+            }
+        }
+        int flags = parsedValue.parseError ? PARSE_ERROR : 0;
+        return eventFilter.isMatching(parsedValue.fields) ? flags | MATCHING : flags;
+    }
+
+    /**
+     * @param headers record headers
+     * @param sourceName source name from the configuration
+     * @return decision flags for the source or -1 if the record was not evaluated in parallel
+     */
+    static int getDecision(Headers headers, String sourceName) {
+        Header header = headers.lastHeader(HEADER_PREFIX + sourceName);
+        if (header == null || header.value() == null || header.value().length != 1) {
+            return -1;
+        }
+        return header.value()[0] & (MATCHING | PARSE_ERROR | RECORD_RULE_DECIDED);
+    }
+
+    private static void removeDecisions(Headers headers) {
+        Iterator<Header> iterator = headers.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().key().startsWith(HEADER_PREFIX)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @param headers record headers including decisions
+     * @return copy of the headers without the decisions, to be forwarded to the output topic
+     */
+    static Headers withoutDecisions(Headers headers) {
+        RecordHeaders forwarded = new RecordHeaders();
+        for (Header header : headers) {
+            if (!header.key().startsWith(HEADER_PREFIX)) {
+                forwarded.add(header);
+            }
+        }
+        return forwarded;
+    }
+
+    private synchronized ExecutorService getWorkers() {
+        if (workers == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "filter-worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.info("Started " + threads + " filter workers for topics " + sourcesByTopic.keySet());
+        }
+        return workers;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private static final class ParsedValue {
+        JsonPathSet pathSet;
+        String[] fields;
+        boolean parseError;
+    }
+
+    static final class Source {
+        final String name;
+        final Supplier<SourceFilter> sourceFilter;
+
+        Source(String name, Supplier<SourceFilter> sourceFilter) {
+            this.name = name;
+            this.sourceFilter = sourceFilter;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
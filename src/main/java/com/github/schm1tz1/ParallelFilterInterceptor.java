@@ -0,0 +1,40 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.clients.consumer.ConsumerInterceptor;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Map;
+
+/**
+ * Interceptor of the Kafka Streams main consumer handing each poll batch to the {@link ParallelFilterEvaluator} passed
+ * in the consumer config {@link ParallelFilterEvaluator#CONFIG}, see {@link EventFilterPipeline} for the setup
+ */
+public class ParallelFilterInterceptor implements ConsumerInterceptor<byte[], byte[]> {
+    private ParallelFilterEvaluator evaluator;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object configuredEvaluator = configs.get(ParallelFilterEvaluator.CONFIG);
+        if (!(configuredEvaluator instanceof ParallelFilterEvaluator)) {
+            throw new RuntimeException(getClass().getSimpleName() + " requires a " + ParallelFilterEvaluator.class.getSimpleName()
+                    + " in the consumer config " + ParallelFilterEvaluator.CONFIG + "!");
+        }
+        evaluator = (ParallelFilterEvaluator) configuredEvaluator;
+    }
+
+    @Override
+    public ConsumerRecords<byte[], byte[]> onConsume(ConsumerRecords<byte[], byte[]> records) {
+        evaluator.evaluate(records);
+        return records;
+    }
+
+    @Override
+    public void onCommit(Map<TopicPartition, OffsetAndMetadata> offsets) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.streams.StreamsConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client and Kafka Streams settings tuned for stateless filtering, selected with streamsFilter.performanceProfile and
+ * applied by {@link PipelineConfigTools#applyPerformanceProfile}. Settings of the configuration files take precedence.
+ * The filter topologies have no state stores apart from the deduplication store, whose entries are never updated, so
+ * the record cache is disabled in all profiles.
+ */
+public enum PerformanceProfile {
+    /**
+     * Large, compressed producer batches and large fetches, trading some latency for fewer requests
+     */
+    THROUGHPUT {
+        @Override
+        Map<String, String> getProperties() {
+            Map<String, String> properties = common();
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.LINGER_MS_CONFIG), "100");
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.BATCH_SIZE_CONFIG), "262144");
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.COMPRESSION_TYPE_CONFIG), "lz4");
+            properties.put(StreamsConfig.consumerPrefix(ConsumerConfig.FETCH_MIN_BYTES_CONFIG), "65536");
+            properties.put(StreamsConfig.consumerPrefix(ConsumerConfig.MAX_POLL_RECORDS_CONFIG), "2000");
+            return properties;
+        }
+    },
+    /**
+     * Records are sent and fetched as soon as they are available
+     */
+    LATENCY {
+        @Override
+        Map<String, String> getProperties() {
+            Map<String, String> properties = common();
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.LINGER_MS_CONFIG), "0");
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.COMPRESSION_TYPE_CONFIG), "none");
+            properties.put(StreamsConfig.consumerPrefix(ConsumerConfig.FETCH_MIN_BYTES_CONFIG), "1");
+            properties.put(StreamsConfig.consumerPrefix(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG), "50");
+            properties.put(StreamsConfig.consumerPrefix(ConsumerConfig.MAX_POLL_RECORDS_CONFIG), "100");
+            return properties;
+        }
+    },
+    /**
+     * Settings recommended for resiliency, i.e. no data loss if brokers or instances fail
+     */
+    DURABLE {
+        @Override
+        Map<String, String> getProperties() {
+            Map<String, String> properties = common();
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.ACKS_CONFIG), "all");
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG), "true");
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.LINGER_MS_CONFIG), "20");
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.COMPRESSION_TYPE_CONFIG), "lz4");
+            properties.put(StreamsConfig.REPLICATION_FACTOR_CONFIG, "3");
+            properties.put(StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG, "1");
+            return properties;
+        }
+    },
+    /**
+     * Exactly-once processing (exactly_once_v2) with large transactions: a commit ends the transaction of each stream
+     * thread, so the commit interval is raised from 100 ms (default with exactly-once) to {@link #EOS_COMMIT_INTERVAL_MS}
+     * and records are batched as with {@link #THROUGHPUT}. Output becomes visible to read_committed consumers with the
+     * commit, i.e. end-to-end latency grows with the commit interval.
+     */
+    EXACTLY_ONCE {
+        @Override
+        Map<String, String> getProperties() {
+            Map<String, String> properties = common();
+            properties.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.EXACTLY_ONCE_V2);
+            properties.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, EOS_COMMIT_INTERVAL_MS);
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.LINGER_MS_CONFIG), "50");
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.BATCH_SIZE_CONFIG), "262144");
+            properties.put(StreamsConfig.producerPrefix(ProducerConfig.COMPRESSION_TYPE_CONFIG), "lz4");
+            properties.put(StreamsConfig.consumerPrefix(ConsumerConfig.FETCH_MIN_BYTES_CONFIG), "65536");
+            properties.put(StreamsConfig.consumerPrefix(ConsumerConfig.MAX_POLL_RECORDS_CONFIG), "2000");
+            return properties;
+        }
+    };
+
+    /**
+     * commit interval for exactly-once with the throughput oriented profiles, every commit is a transaction commit
+     * on all output partitions of a stream thread
+     */
+    static final String EOS_COMMIT_INTERVAL_MS = "1000";
+
+    /**
+     * @return settings of the profile, without num.stream.threads which depends on the input topics
+     */
+    abstract Map<String, String> getProperties();
+
+    private static Map<String, String> common() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG, "0");
+        return properties;
+    }
+
+    /**
+     * @param name name of the profile as in the configuration, e.g. throughput
+     * @return profile
+     */
+    public static PerformanceProfile fromConfig(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -1,5 +1,7 @@
 package com.github.schm1tz1;
 
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.TopicDescription;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.Serdes;
@@ -9,7 +11,16 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -17,6 +28,7 @@ import java.util.stream.Collectors;
  */
 public class PipelineConfigTools {
     final static Logger logger = LoggerFactory.getLogger(PipelineConfigTools.class);
+    private static final long PARTITION_LOOKUP_TIMEOUT_S = 30;
 
     /**
      * Configure streams application using defaults and a configuration file.
@@ -24,15 +36,140 @@ public class PipelineConfigTools {
      * @return Kafka Streams configuration
      */
     public static Properties configureStreamsProperties(String... configFiles) {
+        return configureStreamsProperties(false, true, configFiles);
+    }
+
+    /**
+     * Configure streams application using defaults and a configuration file.
+     * @param exactlyOnce process with processing.guarantee=exactly_once_v2 regardless of the configuration, with the
+     *                    exactly_once performance profile unless another profile is configured
+     * @param lookupPartitions size num.stream.threads of a performance profile by the partitions of the input topics,
+     *                         looked up on the cluster, false to size it by the cores only (e.g. for a dry run)
+     * @param configFiles Additional properties to read from input files
+     * @return Kafka Streams configuration
+     */
+    public static Properties configureStreamsProperties(boolean exactlyOnce, boolean lookupPartitions, String... configFiles) {
+        Properties properties = readStreamsProperties(configFiles);
+
+        if (exactlyOnce) {
+            properties.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.EXACTLY_ONCE_V2);
+            properties.putIfAbsent("streamsFilter.performanceProfile", PerformanceProfile.EXACTLY_ONCE.name().toLowerCase());
+        }
+
+        String profile = properties.getProperty("streamsFilter.performanceProfile");
+        if (profile != null) {
+            applyPerformanceProfile(properties, PerformanceProfile.fromConfig(profile), Runtime.getRuntime().availableProcessors(),
+                    lookupPartitions ? topics -> countPartitions(properties, topics) : topics -> null);
+        }
+
+        return properties;
+    }
+
+    /**
+     * Reads defaults and configuration files without applying a performance profile, e.g. for {@link FileReplay}
+     * which does not connect to the cluster
+     * @param configFiles Additional properties to read from input files
+     * @return configuration
+     */
+    public static Properties readStreamsProperties(String... configFiles) {
         Properties properties = setDefaultStreamsProperties();
 
         for (String configFile : configFiles) {
             PipelineConfigTools.readPropertiesFile(properties, configFile);
         }
-
         return properties;
     }
 
+    /**
+     * Adds the settings of a performance profile that are not configured yet (with or without producer./consumer.
+     * prefix). Unless configured, num.stream.threads is set to the number of cores, limited to the total number of
+     * partitions of the input topics as threads without a task would be idle. With exactly-once processing, the
+     * commit interval is raised for all profiles but latency.
+     * @param properties Properties object to modify
+     * @param profile profile to apply
+     * @param cores available cores
+     * @param partitionCounter returns the total number of partitions of the given topics or null if unknown
+     */
+    static void applyPerformanceProfile(Properties properties, PerformanceProfile profile, int cores,
+                                        Function<Collection<String>, Integer> partitionCounter) {
+        Map<String, String> applied = new LinkedHashMap<>();
+        for (Map.Entry<String, String> setting : profile.getProperties().entrySet()) {
+            if (!isConfigured(properties, setting.getKey())) {
+                applied.put(setting.getKey(), setting.getValue());
+            }
+        }
+
+        // with exactly-once every commit is a transaction commit, the default interval of 100 ms limits the throughput
+        if (profile != PerformanceProfile.LATENCY && isExactlyOnce(properties)
+                && !properties.containsKey(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG)) {
+            applied.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, PerformanceProfile.EOS_COMMIT_INTERVAL_MS);
+        }
+
+        if (!properties.containsKey(StreamsConfig.NUM_STREAM_THREADS_CONFIG)) {
+            int threads = cores;
+            Integer partitions = partitionCounter.apply(getInputTopics(properties));
+            if (partitions != null && partitions > 0) {
+                threads = Math.min(cores, partitions);
+            }
+            applied.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, Integer.toString(Math.max(1, threads)));
+        }
+
+        properties.putAll(applied);
+        logger.info("Applied performance profile " + profile + ": " + applied);
+    }
+
+    /**
+     * @param properties Properties object with the pipeline configuration
+     * @return true if processing.guarantee is exactly_once_v2 (or one of the deprecated exactly-once variants)
+     */
+    static boolean isExactlyOnce(Properties properties) {
+        return properties.getProperty(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.AT_LEAST_ONCE).startsWith("exactly_once");
+    }
+
+    private static boolean isConfigured(Properties properties, String key) {
+        for (String prefix : new String[]{StreamsConfig.PRODUCER_PREFIX, StreamsConfig.CONSUMER_PREFIX}) {
+            if (key.startsWith(prefix) && properties.containsKey(key.substring(prefix.length()))) {
+                return true;
+            }
+        }
+        return properties.containsKey(key);
+    }
+
+    /**
+     * @param properties Properties object with the pipeline configuration
+     * @return input topics of all streamsFilter.sources
+     */
+    static Set<String> getInputTopics(Properties properties) {
+        Set<String> topics = new LinkedHashSet<>();
+        for (String source : getPropertyChecked(properties, "streamsFilter.sources").split(",")) {
+            topics.add(getPropertyChecked(properties, "streamsFilter." + source + ".inputTopic"));
+        }
+        return topics;
+    }
+
+    /**
+     * Looks up the partitions of the topics with an admin client
+     * @param properties Kafka Streams configuration to create the admin client with
+     * @param topics topics to look up
+     * @return total number of partitions or null if the lookup failed
+     */
+    private static Integer countPartitions(Properties properties, Collection<String> topics) {
+        Map<String, Object> adminConfig = new StreamsConfig(properties).getAdminConfigs("kstreams-filter-profile");
+        try (Admin admin = Admin.create(adminConfig)) {
+            int partitions = 0;
+            for (TopicDescription topic : admin.describeTopics(topics).allTopicNames().get(PARTITION_LOOKUP_TIMEOUT_S, TimeUnit.SECONDS).values()) {
+                partitions += topic.partitions().size();
+            }
+            return partitions;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Cannot look up the partitions of " + topics + ", sizing stream threads by cores only: " + e);
+            return null;
+        }
+    }
+
     /**
      * Sets the default properties including bootstrap servers set to localhost. No pipeline configuration included
      * @return Properties object to start the pipeline
@@ -94,6 +231,25 @@ public class PipelineConfigTools {
                 "io.confluent.monitoring.clients.interceptor.MonitoringConsumerInterceptor");
     }
 
+    /**
+     * Creates a copy of the streams properties with the {@link ParallelFilterInterceptor} added to the interceptors of
+     * the main consumer, already configured interceptors (e.g. monitoring) are kept
+     * @param streamProperties Properties object to copy
+     * @param evaluator evaluator the interceptor hands the poll batches to
+     * @return properties to create Kafka Streams with
+     */
+    public static Properties withParallelFilterInterceptor(Properties streamProperties, ParallelFilterEvaluator evaluator) {
+        Properties properties = new Properties();
+        properties.putAll(streamProperties);
+        String key = StreamsConfig.MAIN_CONSUMER_PREFIX + ConsumerConfig.INTERCEPTOR_CLASSES_CONFIG;
+        String interceptors = streamProperties.getProperty(key);
+        properties.put(key, interceptors == null || interceptors.trim().isEmpty()
+                ? ParallelFilterInterceptor.class.getName()
+                : interceptors + "," + ParallelFilterInterceptor.class.getName());
+        properties.put(StreamsConfig.MAIN_CONSUMER_PREFIX + ParallelFilterEvaluator.CONFIG, evaluator);
+        return properties;
+    }
+
     /**
      * Wrapper for properties getter to handle missing/null properties
      * @param properties Properties object to use
@@ -0,0 +1,105 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Filter on record metadata that is evaluated before the value is touched, configured with
+ * streamsFilter.&lt;source&gt;.recordRule. The rule syntax is the same as for value rules (see {@link FilterRuleParser})
+ * with these fields instead of JSON paths:
+ * <ul>
+ *     <li>key: record key (UTF-8 for byte[] keys, "" if null)</li>
+ *     <li>header:&lt;name&gt;: value of the last header with this name (UTF-8, "" if missing)</li>
+ *     <li>timestamp: record timestamp in milliseconds</li>
+ *     <li>partition: input partition ("" if unknown)</li>
+ * </ul>
+ * Instances can be shared between stream threads.
+ */
+public class RecordFilter {
+    private static final String HEADER_PREFIX = "header:";
+
+    private static final int KEY = 0;
+    private static final int HEADER = 1;
+    private static final int TIMESTAMP = 2;
+    private static final int PARTITION = 3;
+
+    private final String ruleExpression;
+    private final FilterRule rule;
+    private final int[] fieldTypes;
+    private final String[] headerNames;
+
+    /**
+     * @param ruleExpression rule on record metadata
+     * @throws IllegalArgumentException if the rule is invalid or refers to an unknown field
+     */
+    public RecordFilter(String ruleExpression) {
+        JsonPathSet fields = new JsonPathSet();
+        this.ruleExpression = ruleExpression;
+        this.rule = FilterRuleParser.parse(ruleExpression, fields);
+        this.fieldTypes = new int[fields.size()];
+        this.headerNames = new String[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            String field = fields.getPath(i);
+            if (fields.isRaw(i)) {
+                throw new IllegalArgumentException("Invalid record rule '" + ruleExpression + "': wildcards are not supported for " + field);
+            } else if (field.equals("key")) {
+                fieldTypes[i] = KEY;
+            } else if (field.equals("timestamp")) {
+                fieldTypes[i] = TIMESTAMP;
+            } else if (field.equals("partition")) {
+                fieldTypes[i] = PARTITION;
+            } else if (field.startsWith(HEADER_PREFIX) && field.length() > HEADER_PREFIX.length()) {
+                fieldTypes[i] = HEADER;
+                headerNames[i] = field.substring(HEADER_PREFIX.length());
+            } else {
+                throw new IllegalArgumentException("Invalid record rule '" + ruleExpression + "': unknown field " + field
+                        + ", expected key, header:<name>, timestamp or partition");
+            }
+        }
+    }
+
+    /**
+     * @param key record key, String or byte[]
+     * @param headers record headers
+     * @param timestamp record timestamp
+     * @param partition input partition, negative if unknown
+     * @return true if the rule matches
+     */
+    public boolean isMatching(Object key, Headers headers, long timestamp, int partition) {
+        String[] values = new String[fieldTypes.length];
+        for (int i = 0; i < fieldTypes.length; i++) {
+            switch (fieldTypes[i]) {
+                case KEY:
+                    values[i] = toString(key);
+                    break;
+                case TIMESTAMP:
+                    values[i] = Long.toString(timestamp);
+                    break;
+                case PARTITION:
+                    values[i] = partition < 0 ? "" : Integer.toString(partition);
+                    break;
+                default:
+                    Header header = headers == null ? null : headers.lastHeader(headerNames[i]);
+                    values[i] = header == null ? "" : toString(header.value());
+            }
+        }
+        return rule.evaluate(values);
+    }
+
+    private static String toString(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return value.toString();
+    }
+
+    @Override
+    public String toString() {
+        return ruleExpression;
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Record value together with the output topic chosen by an {@link EventRouter}. Only the wrapped value is written to
+ * the output topic, the topic is used by the TopicNameExtractor.
+ *
+ * @param <V> value type
+ */
+public class RoutedValue<V> {
+    private final String topic;
+    private final V value;
+
+    private RoutedValue(String topic, V value) {
+        this.topic = topic;
+        this.value = value;
+    }
+
+    /**
+     * @param topic output topic, null if the record is to be dropped
+     * @param value record value
+     * @param <V> value type
+     * @return routed value or null if topic is null
+     */
+    public static <V> RoutedValue<V> of(String topic, V value) {
+        return topic == null ? null : new RoutedValue<>(topic, value);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public V getValue() {
+        return value;
+    }
+
+    /**
+     * Serde writing the wrapped value with the given serde, routed values are never read back
+     * @param valueSerde serde of the wrapped value
+     * @param <V> value type
+     * @return serde for routed values
+     */
+    public static <V> Serde<RoutedValue<V>> serde(Serde<V> valueSerde) {
+        Serializer<RoutedValue<V>> serializer = (topic, routedValue) ->
+                valueSerde.serializer().serialize(topic, routedValue == null ? null : routedValue.value);
+        Deserializer<RoutedValue<V>> deserializer = (topic, data) -> {
+            throw new UnsupportedOperationException("Routed values are not deserialized");
+        };
+        return Serdes.serdeFrom(serializer, deserializer);
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.schm1tz1;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Error log for per-record failures like invalid JSON, limited to a number of messages per minute (for the pipeline:
+ * streamsFilter.errorLog.maxPerMinute, default 10) so that a burst of bad input does not slow down the stream threads
+ * with logging. The first messages of each minute are logged, the number of suppressed ones is appended to the next
+ * logged message. Messages are only built if they are logged. Instances can be shared between threads, the counters
+ * are updated with compare-and-set so that threads hitting bad input at the same time do not wait for each other.
+ */
+public class SampledErrorLogger {
+    public static final int DEFAULT_MAX_PER_MINUTE = 10;
+    private static final long INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Logger logger;
+    private final int maxPerMinute;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    /** index of the current minute in the upper, number of logged messages in it in the lower 32 bits */
+    private final AtomicLong intervalState = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * @param logger logger the messages are written to
+     * @param maxPerMinute messages logged per minute, 0 to only count errors in the metrics
+     */
+    public SampledErrorLogger(Logger logger, int maxPerMinute) {
+        this(logger, maxPerMinute, System::nanoTime);
+    }
+
+    SampledErrorLogger(Logger logger, int maxPerMinute, LongSupplier nanoClock) {
+        this.logger = logger;
+        this.maxPerMinute = maxPerMinute;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Logs a message on ERROR level unless the limit of the current minute is reached
+     * @param message supplier of the message, only called if the message is logged
+     * @return true if the message was logged
+     */
+    public boolean error(Supplier<String> message) {
+        if (!tryAcquire()) {
+            suppressed.incrementAndGet();
+            return false;
+        }
+        long suppressedBefore = suppressed.getAndSet(0L);
+        if (suppressedBefore > 0) {
+            logger.error(message.get() + " (" + suppressedBefore + " similar errors suppressed)");
+        } else {
+            logger.error(message.get());
+        }
+        return true;
+    }
+
+    private boolean tryAcquire() {
+        long interval = (nanoClock.getAsLong() - startNanos) / INTERVAL_NANOS;
+        while (true) {
+            long state = intervalState.get();
+            long count = (state >>> 32) == (interval & 0xffffffffL) ? state & 0xffffffffL : 0L;
+            if (count >= maxPerMinute) {
+                return false;
+            }
+            if (intervalState.compareAndSet(state, (interval << 32) | (count + 1))) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.schm1tz1;
+
+/**
+ * Compiled filter of one source together with its action, replaced as a whole when the filter rules are reloaded.
+ * A record matches if it matches both the (optional) record filter on key, headers and metadata and the (optional)
+ * filter on the value, the record filter is evaluated first. Forwarded records are optionally reduced to selected
+ * fields by a {@link JsonProjection} compiled against the path set of the event filter. An optional
+ * {@link ForwardLimiter} samples or rate-limits the records that would be forwarded.
+ */
+public final class SourceFilter {
+    private final EventFilter eventFilter;
+    private final RecordFilter recordFilter;
+    private final JsonProjection projection;
+    private final boolean filterActionDrop;
+    private final ForwardLimiter limiter;
+
+    /**
+     * @param eventFilter compiled filter on the value, required if a projection or a sample field is set
+     * @param recordFilter compiled filter on key, headers and metadata, null if only the value is filtered
+     * @param projection projection of forwarded values, null to forward them unchanged
+     * @param filterActionDrop drop matching messages if true, forward them otherwise
+     * @param limiter sampling and limits of forwarded messages, null to forward all of them
+     */
+    public SourceFilter(EventFilter eventFilter, RecordFilter recordFilter, JsonProjection projection, boolean filterActionDrop,
+                        ForwardLimiter limiter) {
+        this.eventFilter = eventFilter;
+        this.recordFilter = recordFilter;
+        this.projection = projection;
+        this.filterActionDrop = filterActionDrop;
+        this.limiter = limiter;
+    }
+
+    /**
+     * @param eventFilter compiled filter on the value
+     * @param filterActionDrop drop matching messages if true, forward them otherwise
+     * @return filter without record filter, projection and limiter
+     */
+    public static SourceFilter forEventFilter(EventFilter eventFilter, boolean filterActionDrop) {
+        return new SourceFilter(eventFilter, null, null, filterActionDrop, null);
+    }
+
+    public EventFilter getEventFilter() {
+        return eventFilter;
+    }
+
+    public RecordFilter getRecordFilter() {
+        return recordFilter;
+    }
+
+    public JsonProjection getProjection() {
+        return projection;
+    }
+
+    public ForwardLimiter getLimiter() {
+        return limiter;
+    }
+
+    public boolean isFilterActionDrop() {
+        return filterActionDrop;
+    }
+
+    /**
+     * @param matching result of the filter
+     * @return true if the message is to be forwarded, i.e. matching XOR drop
+     */
+    public boolean isForwarding(boolean matching) {
+        return matching != filterActionDrop;
+    }
+
+    @Override
+    public String toString() {
+        return (recordFilter == null ? "" : "record rule " + recordFilter + (eventFilter == null ? "" : " AND "))
+                + (eventFilter == null ? "" : eventFilter)
+                + (filterActionDrop ? ", drop matching messages" : ", forward matching messages")
+                + (projection == null ? "" : ", output fields " + projection)
+                + (limiter == null ? "" : ", " + limiter);
+    }
+}
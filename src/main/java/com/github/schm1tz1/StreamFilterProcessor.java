@@ -1,88 +1,233 @@
 package com.github.schm1tz1;
-import org.apache.kafka.common.metrics.Sensor;
-import org.apache.kafka.streams.StreamsMetrics;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.apache.kafka.streams.processor.api.Processor;
 import org.apache.kafka.streams.processor.api.ProcessorContext;
 import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.processor.api.RecordMetadata;
+import org.json.JSONException;
 
-public class StreamFilterProcessor implements Processor<String, String, String, String> {
-    private Boolean jsonFilterActionDrop;
-    private ProcessorContext<String, String> context;
-    private String jsonFilterField;
-    private String jsonFilterValue;
-    private Sensor sensorFiltered;
-    private Sensor sensorIn;
-    private Sensor sensorOut;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Processor forwarding or dropping records based on a filter. Records are forwarded unchanged, so key and
+ * value types are the same on input and output (String or byte[] for pass-through). The filter is looked up for every
+ * record so that reloaded filter rules apply without rebuilding the topology. A {@link RecordFilter} on key, headers
+ * and metadata is evaluated first, records it rejects are dropped without touching the value. Optionally, decisions
+ * for repeated payloads are taken from a {@link DecisionCache}. If the source is registered with a
+ * {@link ParallelFilterEvaluator}, records it already evaluated are decided by their decision header, which is removed
+ * before forwarding.
+ * If the source has a {@link JsonProjection}, forwarded values are replaced by the projection of the fields extracted
+ * for the filter, values that were not parsed for the decision (cache, record rule, parallel evaluation) are parsed once
+ * before forwarding. Records to be forwarded are finally passed through the {@link ForwardLimiter} of the source, if
+ * any.
+ * With dead letters enabled, records whose value cannot be parsed are forwarded unchanged with a
+ * {@link #DEAD_LETTER_HEADER} holding the error instead of being filtered, the sink routes them to the dead letter topic.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class StreamFilterProcessor<K, V> implements Processor<K, V, K, V> {
+    /** header marking records for the dead letter topic, contains the parse error */
+    public static final String DEAD_LETTER_HEADER = "kstreams-filter.error";
+
+    private final String sourceName;
+    private final Supplier<SourceFilter> sourceFilter;
+    private final BiFunction<EventFilter, V, String[]> fieldExtraction;
+    private final BiFunction<EventFilter, V, String[]> recordingFieldExtraction;
+    private final BiFunction<V, String, V> projectedValue;
+    private final boolean deadLetters;
+    private final boolean parallelDecisions;
+    private final SampledErrorLogger jsonErrorLogger;
+    private final int decisionCacheSize;
+    private final long decisionCacheMaxBytes;
+    private DecisionCache decisionCache;
+    private ProcessorContext<K, V> context;
+    private FilterMetrics metrics;
+    private String[] extractedFields;
+    private String parseError;
 
     /**
-     * constructor
-     *
-     * @param jsonFilterField      JSON path to field that is to be checked
-     * @param jsonFilterValue      value of JSON field to be checked
-     * @param jsonFilterActionDrop
+     * @param sourceName            source name from the configuration, used to tag the metrics
+     * @param sourceFilter          current filter and action of the source, e.g. {@link java.util.concurrent.atomic.AtomicReference#get()}
+     * @param fieldExtraction       function extracting the fields of a filter from a record value, can be shared between
+     *                              processor instances, e.g. {@link EventFilter#parseFields(String)}
+     * @param decisionCacheSize     maximum number of cached decisions per task, 0 to disable the cache
+     * @param decisionCacheMaxBytes maximum estimated memory of the cached payloads per task
+     * @param projectedValue        function creating the output value from the input value and its projected JSON,
+     *                              null if the source has no projection
+     * @param deadLetters           forward records that cannot be parsed with a {@link #DEAD_LETTER_HEADER}
+     * @param parallelDecisions     take the decisions of the {@link ParallelFilterEvaluator} the source is registered
+     *                              with, decision headers are ignored otherwise
+     * @param jsonErrorLogger       log for values that cannot be parsed, may be shared between processors
      */
-    public StreamFilterProcessor(String jsonFilterField, String jsonFilterValue, Boolean jsonFilterActionDrop)
+    public StreamFilterProcessor(String sourceName, Supplier<SourceFilter> sourceFilter,
+                                 BiFunction<EventFilter, V, String[]> fieldExtraction,
+                                 int decisionCacheSize, long decisionCacheMaxBytes,
+                                 BiFunction<V, String, V> projectedValue, boolean deadLetters, boolean parallelDecisions,
+                                 SampledErrorLogger jsonErrorLogger)
     {
-        this.jsonFilterField = jsonFilterField;
-        this.jsonFilterValue = jsonFilterValue;
-        this.jsonFilterActionDrop = jsonFilterActionDrop;
+        this.sourceName = sourceName;
+        this.sourceFilter = sourceFilter;
+        this.fieldExtraction = fieldExtraction;
+        this.recordingFieldExtraction = (eventFilter, value) -> {
+            try {
+                return extractedFields = fieldExtraction.apply(eventFilter, value);
+            } catch (JSONException err) {
+                parseError = String.valueOf(err.getMessage());
+                throw err;
+            }
+        };
+        this.projectedValue = projectedValue;
+        this.deadLetters = deadLetters;
+        this.parallelDecisions = parallelDecisions;
+        this.jsonErrorLogger = jsonErrorLogger;
+        this.decisionCacheSize = decisionCacheSize;
+        this.decisionCacheMaxBytes = decisionCacheMaxBytes;
+    }
+
+    /**
+     * Creates a processor without projection, dead letters and parallel evaluation, logging parse errors with the
+     * default limit
+     *
+     * @param sourceName            source name from the configuration, used to tag the metrics
+     * @param sourceFilter          current filter and action of the source
+     * @param fieldExtraction       function extracting the fields of a filter from a record value
+     * @param decisionCacheSize     maximum number of cached decisions per task, 0 to disable the cache
+     * @param decisionCacheMaxBytes maximum estimated memory of the cached payloads per task
+     * @param <K>                   key type
+     * @param <V>                   value type
+     * @return processor filtering the records of the source
+     */
+    public static <K, V> StreamFilterProcessor<K, V> forSource(String sourceName, Supplier<SourceFilter> sourceFilter,
+                                                               BiFunction<EventFilter, V, String[]> fieldExtraction,
+                                                               int decisionCacheSize, long decisionCacheMaxBytes) {
+        return new StreamFilterProcessor<>(sourceName, sourceFilter, fieldExtraction, decisionCacheSize, decisionCacheMaxBytes,
+                null, false, false, new SampledErrorLogger(FilterMetrics.logger, SampledErrorLogger.DEFAULT_MAX_PER_MINUTE));
     }
 
     /**
      * @param context the context; may not be null
      */
     @Override
-    public void init(ProcessorContext<String, String> context) {
+    public void init(ProcessorContext<K, V> context) {
         this.context = context;
-        registerCustomMetrics();
+        this.metrics = FilterMetrics.register(context.metrics(), sourceName, context.taskId().toString(), jsonErrorLogger);
+        if (decisionCacheSize > 0) {
+            this.decisionCache = new DecisionCache(decisionCacheSize, decisionCacheMaxBytes);
+            metrics.withDecisionCacheSensors();
+        }
 
         Processor.super.init(context);
     }
 
-    private void registerCustomMetrics() {
-        StreamsMetrics streamMetrics = context.metrics();
+    /**
+     * @param record the record to process, will be forwarded/dropped if it matches the pattern depending on the configuration
+     */
+    @Override
+    public void process(Record<K, V> record) {
+        SourceFilter filter = sourceFilter.get();
+        V value = record.value();
+        boolean matching;
+        extractedFields = null;
+        parseError = null;
+        int decision = parallelDecisions ? ParallelFilterEvaluator.getDecision(record.headers(), sourceName) : -1;
+        RecordFilter recordFilter = filter.getRecordFilter();
+        if (decision >= 0) {
+            matching = metrics.recordParallelEvaluation(decision);
+            if ((decision & ParallelFilterEvaluator.PARSE_ERROR) != 0) {
+                parseError = "invalid JSON";
+            }
+            record = record.withHeaders(ParallelFilterEvaluator.withoutDecisions(record.headers()));
+        } else if (recordFilter != null && !recordFilter.isMatching(record.key(), record.headers(), record.timestamp(), partition())) {
+            metrics.recordDecidedByRecordRule(false);
+            matching = false;
+        } else if (filter.getEventFilter() == null) {
+            metrics.recordDecidedByRecordRule(true);
+            matching = true;
+        } else if (decisionCache == null || ExtractedEvent.isTombstone(value)) {
+            matching = metrics.evaluate(filter.getEventFilter(), recordingFieldExtraction, value);
+        } else {
+            Boolean cachedDecision = decisionCache.get(filter, value);
+            metrics.recordCacheLookup(cachedDecision);
+            if (cachedDecision == null) {
+                matching = metrics.evaluate(filter.getEventFilter(), recordingFieldExtraction, value);
+                if (parseError == null) {
+                    decisionCache.put(value, matching);
+                }
+            } else {
+                matching = cachedDecision;
+            }
+        }
 
-        sensorIn = streamMetrics.addRateTotalSensor("kstreams-filter",
-                context.applicationId(),
-                "filter-in",
-                Sensor.RecordingLevel.INFO,
-                "task-id", "none");
+        if (deadLetters) {
+            if (parseError != null) {
+                metrics.recordDeadLettered();
+                context.forward(record.withHeaders(withDeadLetterHeader(record.headers(), parseError)));
+                return;
+            }
+            if (record.headers().lastHeader(DEAD_LETTER_HEADER) != null) {
+                // header of an upstream application, must not send the record to the dead letter topic
+                record = record.withHeaders(withDeadLetterHeader(record.headers(), null));
+            }
+        }
 
-        sensorOut = streamMetrics.addRateTotalSensor("kstreams-filter",
-                context.applicationId(),
-                "filter-out",
-                Sensor.RecordingLevel.INFO,
-                "task-id", "none");
+        // basically we have a XNOR condition to match (i.e. drop if drop-on-match and match both are true or false)
+        if(filter.isForwarding(matching)) {
+            ForwardLimiter limiter = filter.getLimiter();
+            if (limiter != null && !limiter.tryForward(record.key(), limiter.getSampleSlot() < 0 ? null : getFields(filter, value))) {
+                metrics.recordLimited();
+                return;
+            }
+            metrics.recordResult(true);
+            if (filter.getProjection() != null && !ExtractedEvent.isTombstone(value)) {
+                record = record.withValue(projectedValue.apply(value, filter.getProjection().project(getFields(filter, value))));
+            }
+            context.forward(record);
+        } else {
+            metrics.recordResult(false);
+        }
+    }
 
-        sensorFiltered = streamMetrics.addRateTotalSensor("kstreams-filter",
-                context.applicationId(),
-                "filter-filtered",
-                Sensor.RecordingLevel.INFO,
-                "task-id", "none");
+    /**
+     * @return fields extracted while evaluating the filter or, if the decision was taken without them, parsed now
+     */
+    private String[] getFields(SourceFilter filter, V value) {
+        if (extractedFields != null) {
+            return extractedFields;
+        }
+        try {
+            return fieldExtraction.apply(filter.getEventFilter(), value);
+        } catch (JSONException err) {
+            return filter.getEventFilter().emptyFields();
+        }
     }
 
     /**
-     * @param record the record to process, will be forwarded/dropped if it matches the pattern depending on the configuration
+     * @return copy of the headers with the given error as {@link #DEAD_LETTER_HEADER}, the input headers may be shared
+     * with other processors reading the same record
      */
-    @Override
-    public void process(Record<String, String> record) {
-        String value = record.value();
-        sensorIn.record();
+    private static Headers withDeadLetterHeader(Headers headers, String error) {
+        Headers copy = new RecordHeaders(headers.toArray());
+        copy.remove(DEAD_LETTER_HEADER);
+        if (error != null) {
+            copy.add(DEAD_LETTER_HEADER, error.getBytes(StandardCharsets.UTF_8));
+        }
+        return copy;
+    }
 
-        // basically we have a XNOR condition to match (i.e. drop if drop-on-match and match both are true or false)
-        if(jsonFilterActionDrop == EventFilterPipelineTools.isEventMatchingThePattern(value, this.jsonFilterField, this.jsonFilterValue)) {
-            sensorFiltered.record();
-        } else {
-            sensorOut.record();
-            context.forward(record);
-        };
+    private int partition() {
+        return context.recordMetadata().map(RecordMetadata::partition).orElse(-1);
     }
 
     /**
-     *
+     * removes the sensors of this task
      */
     @Override
     public void close() {
+        metrics.close();
         Processor.super.close();
     }
 }
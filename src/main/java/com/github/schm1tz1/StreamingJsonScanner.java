@@ -0,0 +1,631 @@
+package com.github.schm1tz1;
+
+import org.json.JSONException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal pull-style JSON scanner used to resolve a single path without building an object tree. Members that are not
+ * on the path are skipped without being materialized and scanning stops as soon as the path has been resolved, so the
+ * remainder of the payload is never looked at (and hence not validated either).
+ * Structural characters are all ASCII, which allows the same logic to run on chars or on UTF-8 bytes.
+ */
+abstract class StreamingJsonScanner {
+    protected int pos = 0;
+    private int unresolved = 0;
+
+    /**
+     * @return length of the input in units of {@link #at(int)}
+     */
+    protected abstract int length();
+
+    /**
+     * @param index position in the input
+     * @return char (or unsigned byte) at position index
+     */
+    protected abstract int at(int index);
+
+    /**
+     * @param start start position (inclusive)
+     * @param end end position (exclusive)
+     * @return raw input between start and end as String, no unescaping done
+     */
+    protected abstract String text(int start, int end);
+
+    /**
+     * @throws JSONException for a null input (tombstone)
+     */
+    static StreamingJsonScanner of(String input) {
+        if (input == null) {
+            throw new JSONException(EventFilterPipelineTools.NULL_VALUE_ERROR);
+        }
+        return new StringScanner(input);
+    }
+
+    /**
+     * @throws JSONException for a null input (tombstone)
+     */
+    static StreamingJsonScanner of(byte[] input) {
+        if (input == null) {
+            throw new JSONException(EventFilterPipelineTools.NULL_VALUE_ERROR);
+        }
+        return new ByteArrayScanner(input);
+    }
+
+    /**
+     * Resolves a path in the input
+     * @param pathSegments pre-split JSON path, may contain array indices
+     * @return String-encoded value, "" if the path cannot be resolved or does not point to a scalar value
+     * @throws JSONException if the input is malformed before the path could be resolved
+     */
+    String getStringForPath(String[] pathSegments) {
+        skipWhitespace();
+        if (pathSegments.length == 0) {
+            expect('{');
+            return "";
+        }
+
+        for (int step = 0; step < pathSegments.length; step++) {
+            int index = EventFilterPipelineTools.arrayIndex(pathSegments[step]);
+            int container = index >= 0 ? '[' : '{';
+            if (step == 0) {
+                expect(container);
+            } else if (peek() != container) {
+                return "";
+            } else {
+                pos++;
+            }
+            if (!(index >= 0 ? seekElement(index) : seekMember(pathSegments[step]))) {
+                return "";
+            }
+        }
+        return readScalar();
+    }
+
+    /**
+     * Checks the values at a path relative to the value at the current position, steps may be array indices or
+     * [*] for any element. Scanning stops at the first matching value.
+     * @param pathSegments pre-split relative path, e.g. [*], id
+     * @param matcher matcher for the values
+     * @return true if any value matches
+     * @throws JSONException if the input is malformed before a match was found
+     */
+    boolean anyValueMatches(String[] pathSegments, ValueMatcher matcher) {
+        skipWhitespace();
+        return valueMatches(pathSegments, 0, matcher);
+    }
+
+    /**
+     * Position is expected at a value, which is read completely unless a match was found
+     */
+    private boolean valueMatches(String[] pathSegments, int step, ValueMatcher matcher) {
+        if (step == pathSegments.length) {
+            return matcher.matches(readScalar());
+        }
+        String segment = pathSegments[step];
+        boolean wildcard = segment.equals(EventFilterPipelineTools.WILDCARD);
+        int index = EventFilterPipelineTools.arrayIndex(segment);
+        if (wildcard || index >= 0) {
+            if (peek() != '[') {
+                skipValue();
+                return false;
+            }
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return false;
+            }
+            for (int i = 0; ; i++) {
+                if (wildcard || i == index) {
+                    if (valueMatches(pathSegments, step + 1, matcher)) {
+                        return true;
+                    }
+                } else {
+                    skipValue();
+                }
+                if (endOfContainer(']')) {
+                    return false;
+                }
+            }
+        }
+
+        if (peek() != '{') {
+            skipValue();
+            return false;
+        }
+        pos++;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return false;
+        }
+        boolean found = false;
+        while (true) {
+            expect('"');
+            boolean member = matchKey(segment) && !found;
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (member) {
+                // first occurrence wins
+                found = true;
+                if (valueMatches(pathSegments, step + 1, matcher)) {
+                    return true;
+                }
+            } else {
+                skipValue();
+            }
+            if (endOfContainer('}')) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads the separator after a value
+     * @return true if the container ended, false if another value follows
+     */
+    private boolean endOfContainer(int end) {
+        skipWhitespace();
+        int c = next();
+        if (c == end) {
+            return true;
+        } else if (c != ',') {
+            throw error("Expected ',' or '" + (char) end + "'");
+        }
+        skipWhitespace();
+        return false;
+    }
+
+    /**
+     * Resolves all paths of a path set in one pass, scanning stops as soon as all paths are resolved
+     * @param pathSet paths to extract
+     * @return String-encoded values in the order of the path set, "" for paths that cannot be resolved
+     * @throws JSONException if the input is malformed before all paths could be resolved
+     */
+    String[] getStringsForPaths(JsonPathSet pathSet) {
+        String[] values = new String[pathSet.size()];
+        unresolved = values.length;
+        skipWhitespace();
+        expect('{');
+        scanObject(pathSet.root, values);
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                values[i] = "";
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Scans the members of an object (position after the opening brace) until its end or until all paths are resolved
+     */
+    private void scanObject(JsonPathSet.Node node, String[] values) {
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            expect('"');
+            JsonPathSet.Node child = matchChild(node.children);
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (child == null) {
+                skipValue();
+            } else {
+                readMember(child, values);
+                if (unresolved == 0) {
+                    return;
+                }
+            }
+            skipWhitespace();
+            int c = next();
+            if (c == '}') {
+                return;
+            } else if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+            skipWhitespace();
+        }
+    }
+
+    private void readMember(JsonPathSet.Node node, String[] values) {
+        int start = pos;
+        if (peek() == '{' && node.memberChildren) {
+            pos++;
+            scanObject(node, values);
+        } else if (peek() == '[' && node.indexChildren) {
+            pos++;
+            scanArray(node, values);
+        } else if (node.slot >= 0 && values[node.slot] == null) {
+            resolve(values, node.slot, readScalar());
+        } else {
+            skipValue();
+        }
+        // an unresolved raw slot keeps scanObject from stopping early, so the value has been read completely
+        if (node.rawSlot >= 0 && values[node.rawSlot] == null) {
+            resolve(values, node.rawSlot, text(start, pos));
+        }
+        // first occurrence wins: whatever was not found below this member is not available
+        for (int slot : node.subtreeSlots) {
+            if (values[slot] == null) {
+                resolve(values, slot, "");
+            }
+        }
+    }
+
+    /**
+     * Scans the elements of an array (position after the opening bracket) until its end or until all paths are resolved
+     */
+    private void scanArray(JsonPathSet.Node node, String[] values) {
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return;
+        }
+        for (int index = 0; ; index++) {
+            JsonPathSet.Node child = null;
+            for (JsonPathSet.Node candidate : node.children) {
+                if (candidate.index == index) {
+                    child = candidate;
+                }
+            }
+            if (child == null) {
+                skipValue();
+            } else {
+                readMember(child, values);
+                if (unresolved == 0) {
+                    return;
+                }
+            }
+            if (endOfContainer(']')) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Advances to the element with the given index in the current array
+     * @param index element index
+     * @return true if found (position is at the value), false if the end of the array was reached
+     */
+    private boolean seekElement(int index) {
+        skipWhitespace();
+        if (peek() == ']') {
+            return false;
+        }
+        for (int i = 0; i < index; i++) {
+            skipValue();
+            if (endOfContainer(']')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resolve(String[] values, int slot, String value) {
+        values[slot] = value;
+        unresolved--;
+    }
+
+    /**
+     * Advances to the value of the member with the given name in the current object
+     * @param name member name to look for
+     * @return true if found (position is at the value), false if the end of the object was reached
+     */
+    private boolean seekMember(String name) {
+        skipWhitespace();
+        if (peek() == '}') {
+            return false;
+        }
+        while (true) {
+            expect('"');
+            boolean found = matchKey(name);
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (found) {
+                return true;
+            }
+            skipValue();
+            skipWhitespace();
+            int c = next();
+            if (c == '}') {
+                return false;
+            } else if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+            skipWhitespace();
+        }
+    }
+
+    /**
+     * Compares the key at the current position (after the opening quote) with name and moves behind the closing quote
+     */
+    private boolean matchKey(String name) {
+        int start = pos;
+        if (skipKey()) {
+            return regionEquals(start, pos - 1, name);
+        }
+        // escapes or non-ASCII: compare decoded key instead
+        pos = start;
+        return readString().equals(name);
+    }
+
+    /**
+     * Finds the child node for the key at the current position (after the opening quote) and moves behind the closing quote
+     * @return matching child or null
+     */
+    private JsonPathSet.Node matchChild(JsonPathSet.Node[] children) {
+        int start = pos;
+        if (skipKey()) {
+            for (JsonPathSet.Node child : children) {
+                if (child.index < 0 && regionEquals(start, pos - 1, child.name)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+        pos = start;
+        String key = readString();
+        for (JsonPathSet.Node child : children) {
+            if (child.index < 0 && child.name.equals(key)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves behind the closing quote of a key
+     * @return true if the key is plain ASCII without escapes, i.e. can be compared char by char
+     */
+    private boolean skipKey() {
+        boolean plain = true;
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                return plain;
+            }
+            if (c == '\\') {
+                plain = false;
+                pos++;
+            } else if (c >= 0x80) {
+                plain = false;
+            }
+        }
+    }
+
+    private boolean regionEquals(int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (at(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the value at the current position
+     * @return String-encoded value, "" for null, objects and arrays
+     */
+    private String readScalar() {
+        int c = peek();
+        if (c == '"') {
+            pos++;
+            return readString();
+        } else if (c == '{' || c == '[') {
+            skipContainer();
+            return "";
+        }
+        int start = pos;
+        skipLiteral();
+        return c == 'n' ? "" : text(start, pos);
+    }
+
+    /**
+     * Reads a String value, position is expected after the opening quote
+     */
+    private String readString() {
+        int start = pos;
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                return text(start, pos - 1);
+            }
+            if (c == '\\') {
+                break;
+            }
+        }
+        pos = start;
+        return readEscapedString();
+    }
+
+    private String readEscapedString() {
+        StringBuilder builder = new StringBuilder();
+        int chunkStart = pos;
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                builder.append(text(chunkStart, pos - 1));
+                return builder.toString();
+            }
+            if (c == '\\') {
+                builder.append(text(chunkStart, pos - 1));
+                int escaped = next();
+                switch (escaped) {
+                    case 'b': builder.append('\b'); break;
+                    case 't': builder.append('\t'); break;
+                    case 'n': builder.append('\n'); break;
+                    case 'f': builder.append('\f'); break;
+                    case 'r': builder.append('\r'); break;
+                    case 'u':
+                        builder.append(readUnicodeEscape());
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        builder.append((char) escaped);
+                        break;
+                    default:
+                        throw error("Illegal escape");
+                }
+                chunkStart = pos;
+            }
+        }
+    }
+
+    private char readUnicodeEscape() {
+        if (pos + 4 > length()) {
+            throw error("Unexpected end of input");
+        }
+        try {
+            char c = (char) Integer.parseInt(text(pos, pos + 4), 16);
+            pos += 4;
+            return c;
+        } catch (NumberFormatException e) {
+            throw error("Illegal escape");
+        }
+    }
+
+    private void skipValue() {
+        int c = peek();
+        if (c == '"') {
+            pos++;
+            skipString();
+        } else if (c == '{' || c == '[') {
+            skipContainer();
+        } else {
+            skipLiteral();
+        }
+    }
+
+    private void skipString() {
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                pos++;
+            }
+        }
+    }
+
+    private void skipContainer() {
+        int depth = 0;
+        do {
+            int c = next();
+            if (c == '"') {
+                skipString();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private void skipLiteral() {
+        int start = pos;
+        while (pos < length()) {
+            int c = at(pos);
+            if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) {
+                break;
+            }
+            pos++;
+        }
+        if (pos == start) {
+            throw error("Expected a value");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < length() && isWhitespace(at(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private void expect(int expected) {
+        if (next() != expected) {
+            throw error("Expected '" + (char) expected + "'");
+        }
+    }
+
+    private int peek() {
+        if (pos >= length()) {
+            throw error("Unexpected end of input");
+        }
+        return at(pos);
+    }
+
+    private int next() {
+        int c = peek();
+        pos++;
+        return c;
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message + " at " + pos);
+    }
+
+    private static final class StringScanner extends StreamingJsonScanner {
+        private final String input;
+
+        StringScanner(String input) {
+            this.input = input;
+        }
+
+        @Override
+        protected int length() {
+            return input.length();
+        }
+
+        @Override
+        protected int at(int index) {
+            return input.charAt(index);
+        }
+
+        @Override
+        protected String text(int start, int end) {
+            return input.substring(start, end);
+        }
+    }
+
+    /**
+     * Scans UTF-8 encoded input directly, only the extracted value is decoded
+     */
+    private static final class ByteArrayScanner extends StreamingJsonScanner {
+        private final byte[] input;
+
+        ByteArrayScanner(byte[] input) {
+            this.input = input;
+        }
+
+        @Override
+        protected int length() {
+            return input.length;
+        }
+
+        @Override
+        protected int at(int index) {
+            return input[index] & 0xff;
+        }
+
+        @Override
+        protected String text(int start, int end) {
+            return new String(input, start, end - start, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.Metrics;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Transaction metrics of a Kafka Streams client with exactly-once processing, derived from the metrics of its
+ * producers and stream threads on every read and registered in the filter metrics registry:
+ * <ul>
+ *     <li>transaction-commit-latency-avg: average time of a transaction commit in milliseconds, i.e. the time all
+ *     producers spent in commitTransaction divided by the commits of all stream threads</li>
+ *     <li>transaction-commit-time-total: time spent in commitTransaction in milliseconds</li>
+ *     <li>transaction-abort-time-total: time spent in abortTransaction in milliseconds, any increase means that
+ *     transactions were aborted (e.g. tasks migrated during a rebalance or fenced producers) and their records will be
+ *     processed again</li>
+ * </ul>
+ */
+public class TransactionMetrics {
+    static final String PRODUCER_GROUP = "producer-metrics";
+    static final String THREAD_GROUP = "stream-thread-metrics";
+
+    /**
+     * @param registry registry to add the metrics to, e.g. {@link EventFilterPipeline#getMetrics()}
+     * @param clientMetrics metrics of the Kafka Streams client, e.g. {@link org.apache.kafka.streams.KafkaStreams#metrics()}
+     */
+    public static void register(Metrics registry, Supplier<Map<MetricName, ? extends Metric>> clientMetrics) {
+        add(registry, "transaction-commit-latency-avg", "average time of a transaction commit in milliseconds",
+                (config, now) -> {
+                    Map<MetricName, ? extends Metric> metrics = clientMetrics.get();
+                    double commits = sum(metrics, THREAD_GROUP, "commit-total");
+                    return commits == 0 ? 0.0 : sum(metrics, PRODUCER_GROUP, "txn-commit-time-ns-total") / commits / 1e6;
+                });
+        add(registry, "transaction-commit-time-total", "total time spent committing transactions in milliseconds",
+                (config, now) -> sum(clientMetrics.get(), PRODUCER_GROUP, "txn-commit-time-ns-total") / 1e6);
+        add(registry, "transaction-abort-time-total", "total time spent aborting transactions in milliseconds",
+                (config, now) -> sum(clientMetrics.get(), PRODUCER_GROUP, "txn-abort-time-ns-total") / 1e6);
+    }
+
+    private static void add(Metrics registry, String name, String description, Measurable measurable) {
+        registry.addMetric(registry.metricName(name, FilterMetrics.GROUP, description), measurable);
+    }
+
+    /**
+     * @return sum of the metric over all clients or threads, 0 if there are none
+     */
+    static double sum(Map<MetricName, ? extends Metric> metrics, String group, String name) {
+        double sum = 0.0;
+        for (Map.Entry<MetricName, ? extends Metric> metric : metrics.entrySet()) {
+            if (metric.getKey().group().equals(group) && metric.getKey().name().equals(name)
+                    && metric.getValue().metricValue() instanceof Number) {
+                sum += ((Number) metric.getValue().metricValue()).doubleValue();
+            }
+        }
+        return sum;
+    }
+}
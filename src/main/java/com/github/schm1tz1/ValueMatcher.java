@@ -0,0 +1,491 @@
+package com.github.schm1tz1;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Matcher for a single field value. Patterns are classified when the filter is compiled and common cases are matched
+ * without java.util.regex: literals (String equality), patterns like prefix.*, .*suffix and prefix(.*)suffix
+ * (startsWith/endsWith), .*infix.* (contains) and alternations of literals like a|b|c (hash set). All other patterns
+ * fall back to a full regex match. Results are the same as for {@link Pattern#matches(String, CharSequence)}.
+ */
+public abstract class ValueMatcher {
+
+    /**
+     * @param value field value
+     * @return true if the whole value matches
+     */
+    public abstract boolean matches(String value);
+
+    /**
+     * @return estimated relative cost of a match
+     */
+    abstract double cost();
+
+    /**
+     * Compiles a regex into the cheapest equivalent matcher
+     * @param regex Java regex that needs to match the full value
+     * @return matcher
+     */
+    public static ValueMatcher forPattern(String regex) {
+        List<Object> tokens = tokenize(regex);
+        ValueMatcher matcher = tokens == null ? null : classify(tokens);
+        return matcher != null ? matcher : new RegexMatcher(Pattern.compile(regex));
+    }
+
+    /**
+     * @param value literal the field value needs to be equal to
+     * @return matcher
+     */
+    public static ValueMatcher forLiteral(String value) {
+        return new LiteralMatcher(value);
+    }
+
+    /**
+     * @param values literals one of which the field value needs to be equal to
+     * @return matcher
+     */
+    public static ValueMatcher forValues(Collection<String> values) {
+        return new ValueSetMatcher(new HashSet<>(values));
+    }
+
+    /**
+     * @param values large set of literals one of which the field value needs to be equal to
+     * @return matcher
+     */
+    public static ValueMatcher forValues(CompactValueSet values) {
+        return new CompactSetMatcher(values);
+    }
+
+    /**
+     * @param operator one of &gt;, &gt;=, &lt;, &lt;=
+     * @param bound number the field value is compared with
+     * @return matcher comparing numeric field values, values that are no numbers never match
+     * @throws IllegalArgumentException if the bound is not a number
+     */
+    public static ValueMatcher forComparison(String operator, String bound) {
+        if (!isNumber(bound)) {
+            throw new IllegalArgumentException("Expected a number for " + operator + " but got '" + bound + "'");
+        }
+        return new NumericMatcher(operator, Double.parseDouble(bound));
+    }
+
+    /**
+     * Checks for the JSON number syntax, e.g. -1.5e3, so that values can be parsed without catching exceptions
+     */
+    static boolean isNumber(String value) {
+        int i = 0;
+        int length = value.length();
+        if (i < length && value.charAt(i) == '-') {
+            i++;
+        }
+        int digits = i;
+        while (i < length && isDigit(value.charAt(i))) {
+            i++;
+        }
+        if (i == digits) {
+            return false;
+        }
+        if (i < length && value.charAt(i) == '.') {
+            digits = ++i;
+            while (i < length && isDigit(value.charAt(i))) {
+                i++;
+            }
+            if (i == digits) {
+                return false;
+            }
+        }
+        if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+                i++;
+            }
+            digits = i;
+            while (i < length && isDigit(value.charAt(i))) {
+                i++;
+            }
+            if (i == digits) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** token for .* */
+    private static final Object ANY = new Object() {
+        @Override
+        public String toString() {
+            return ".*";
+        }
+    };
+    private static final Character ALTERNATION = '|';
+    private static final Character GROUP_OPEN = '(';
+    private static final Character GROUP_CLOSE = ')';
+
+    /**
+     * Splits a regex into literal Strings and the tokens {@link #ANY}, {@link #ALTERNATION}, {@link #GROUP_OPEN} and
+     * {@link #GROUP_CLOSE}. Leading ^ and a trailing $ outside of a quote are dropped as the full value is matched anyway.
+     * @return tokens or null if the regex contains other constructs
+     */
+    private static List<Object> tokenize(String regex) {
+        List<Object> tokens = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        int end = regex.length();
+        if (regex.startsWith("^")) {
+            i++;
+        }
+
+        while (i < end) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= end) {
+                    return null;
+                }
+                char escaped = regex.charAt(i + 1);
+                if (escaped == 'Q') {
+                    // quoted up to \E or the end of the regex, a $ in the quote is a literal
+                    int quoteEnd = regex.indexOf("\\E", i + 2);
+                    literal.append(regex, i + 2, quoteEnd < 0 ? end : quoteEnd);
+                    i = quoteEnd < 0 ? end : quoteEnd + 2;
+                } else if (Character.isLetterOrDigit(escaped)) {
+                    return null;
+                } else {
+                    literal.append(escaped);
+                    i += 2;
+                }
+            } else if (c == '.' && i + 1 < end && regex.charAt(i + 1) == '*') {
+                if (i + 2 < end && (regex.charAt(i + 2) == '?' || regex.charAt(i + 2) == '+')) {
+                    return null;
+                }
+                addLiteral(tokens, literal);
+                tokens.add(ANY);
+                i += 2;
+            } else if (c == '(') {
+                addLiteral(tokens, literal);
+                tokens.add(GROUP_OPEN);
+                i += regex.startsWith("(?:", i) ? 3 : 1;
+                if (i < end && regex.charAt(i) == '?') {
+                    return null;
+                }
+            } else if (c == ')' || c == '|') {
+                addLiteral(tokens, literal);
+                tokens.add(c == ')' ? GROUP_CLOSE : ALTERNATION);
+                i++;
+            } else if (c == '$' && i == end - 1) {
+                // trailing anchor outside of a quote
+                i++;
+            } else if ("^$.[]{}?*+".indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        addLiteral(tokens, literal);
+        return tokens;
+    }
+
+    private static void addLiteral(List<Object> tokens, StringBuilder literal) {
+        if (literal.length() > 0) {
+            tokens.add(literal.toString());
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * @return specialized matcher or null if the tokens do not form a supported pattern
+     */
+    private static ValueMatcher classify(List<Object> tokens) {
+        for (Object token : tokens) {
+            if (token instanceof String && hasLineTerminator((String) token)) {
+                return null; // .* does not match line terminators, keep the exact regex semantics
+            }
+        }
+
+        if (tokens.contains(ALTERNATION)) {
+            return classifyAlternation(tokens);
+        }
+
+        // (.*) is the same as .* for a full match
+        List<Object> simplified = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.get(i) == GROUP_OPEN && i + 2 < tokens.size() && tokens.get(i + 1) == ANY && tokens.get(i + 2) == GROUP_CLOSE) {
+                simplified.add(ANY);
+                i += 2;
+            } else if (tokens.get(i) == GROUP_OPEN || tokens.get(i) == GROUP_CLOSE) {
+                return null;
+            } else {
+                simplified.add(tokens.get(i));
+            }
+        }
+
+        switch (simplified.size()) {
+            case 0:
+                return new LiteralMatcher("");
+            case 1:
+                return simplified.get(0) == ANY ? new InfixMatcher("") : new LiteralMatcher((String) simplified.get(0));
+            case 2:
+                if (simplified.get(0) == ANY && simplified.get(1) instanceof String) {
+                    return new AffixMatcher("", (String) simplified.get(1));
+                }
+                if (simplified.get(0) instanceof String && simplified.get(1) == ANY) {
+                    return new AffixMatcher((String) simplified.get(0), "");
+                }
+                return null;
+            case 3:
+                if (simplified.get(0) instanceof String && simplified.get(1) == ANY && simplified.get(2) instanceof String) {
+                    return new AffixMatcher((String) simplified.get(0), (String) simplified.get(2));
+                }
+                if (simplified.get(0) == ANY && simplified.get(1) instanceof String && simplified.get(2) == ANY) {
+                    return new InfixMatcher((String) simplified.get(1));
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Alternation of literals, optionally wrapped in a single group, e.g. a|b|c or (a|b|)
+     */
+    private static ValueMatcher classifyAlternation(List<Object> tokens) {
+        int from = 0;
+        int to = tokens.size();
+        if (tokens.get(0) == GROUP_OPEN && tokens.get(to - 1) == GROUP_CLOSE) {
+            from++;
+            to--;
+        }
+        Set<String> values = new HashSet<>();
+        boolean expectValue = true;
+        for (int i = from; i < to; i++) {
+            Object token = tokens.get(i);
+            if (token == ALTERNATION) {
+                if (expectValue) {
+                    values.add("");
+                }
+                expectValue = true;
+            } else if (token instanceof String && expectValue) {
+                values.add((String) token);
+                expectValue = false;
+            } else {
+                return null;
+            }
+        }
+        if (expectValue) {
+            values.add("");
+        }
+        return new ValueSetMatcher(values);
+    }
+
+    /**
+     * Line terminators as defined for . in {@link Pattern}
+     */
+    static boolean hasLineTerminator(String value) {
+        return hasLineTerminator(value, 0, value.length());
+    }
+
+    static boolean hasLineTerminator(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static final class LiteralMatcher extends ValueMatcher {
+        private final String literal;
+
+        LiteralMatcher(String literal) {
+            this.literal = literal;
+        }
+
+        @Override
+        public boolean matches(String value) {
+            return literal.equals(value);
+        }
+
+        @Override
+        double cost() {
+            return 1.0;
+        }
+
+        @Override
+        public String toString() {
+            return literal;
+        }
+    }
+
+    /**
+     * prefix.*suffix where prefix and suffix may be empty
+     */
+    static final class AffixMatcher extends ValueMatcher {
+        private final String prefix;
+        private final String suffix;
+
+        AffixMatcher(String prefix, String suffix) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        @Override
+        public boolean matches(String value) {
+            int middleEnd = value.length() - suffix.length();
+            return middleEnd >= prefix.length()
+                    && value.startsWith(prefix)
+                    && value.endsWith(suffix)
+                    && !hasLineTerminator(value, prefix.length(), middleEnd);
+        }
+
+        @Override
+        double cost() {
+            return 1.5;
+        }
+
+        @Override
+        public String toString() {
+            return prefix + ".*" + suffix;
+        }
+    }
+
+    /**
+     * .*infix.*
+     */
+    static final class InfixMatcher extends ValueMatcher {
+        private final String infix;
+
+        InfixMatcher(String infix) {
+            this.infix = infix;
+        }
+
+        @Override
+        public boolean matches(String value) {
+            return value.contains(infix) && !hasLineTerminator(value);
+        }
+
+        @Override
+        double cost() {
+            return 2.0;
+        }
+
+        @Override
+        public String toString() {
+            return ".*" + infix + ".*";
+        }
+    }
+
+    static final class ValueSetMatcher extends ValueMatcher {
+        private final Set<String> values;
+
+        ValueSetMatcher(Set<String> values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean matches(String value) {
+            return values.contains(value);
+        }
+
+        @Override
+        double cost() {
+            return 1.5;
+        }
+
+        @Override
+        public String toString() {
+            return values.size() <= 8 ? String.join("|", values) : "[" + values.size() + " values]";
+        }
+    }
+
+    static final class CompactSetMatcher extends ValueMatcher {
+        private final CompactValueSet values;
+
+        CompactSetMatcher(CompactValueSet values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean matches(String value) {
+            return values.contains(value);
+        }
+
+        @Override
+        double cost() {
+            return 2.0;
+        }
+
+        @Override
+        public String toString() {
+            return values.toString();
+        }
+    }
+
+    static final class RegexMatcher extends ValueMatcher {
+        private final Pattern pattern;
+
+        RegexMatcher(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean matches(String value) {
+            return pattern.matcher(value).matches();
+        }
+
+        @Override
+        double cost() {
+            return 3.0 + pattern.pattern().length() / 8.0;
+        }
+
+        @Override
+        public String toString() {
+            return pattern.pattern();
+        }
+    }
+
+    /**
+     * Numeric comparison, field values are parsed as double
+     */
+    static final class NumericMatcher extends ValueMatcher {
+        private final String operator;
+        private final double bound;
+        private final boolean greater;
+        private final boolean inclusive;
+
+        NumericMatcher(String operator, double bound) {
+            this.operator = operator;
+            this.bound = bound;
+            this.greater = operator.startsWith(">");
+            this.inclusive = operator.endsWith("=");
+        }
+
+        @Override
+        public boolean matches(String value) {
+            if (!isNumber(value)) {
+                return false;
+            }
+            double number = Double.parseDouble(value);
+            return number == bound ? inclusive : (number > bound) == greater;
+        }
+
+        @Override
+        double cost() {
+            return 2.0;
+        }
+
+        @Override
+        public String toString() {
+            return operator + " " + bound;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.schm1tz1;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+class CompactValueSetTest {
+
+    @Test
+    void testSameResultsAsHashSet() {
+        Random random = new Random(42);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            values.add("device-" + random.nextInt(100000));
+        }
+        values.addAll(Arrays.asList("", "a", "ab", "Ä", "aÄ", "aÿ", "€uro", "😀", "z"));
+        CompactValueSet compactValueSet = CompactValueSet.of(values);
+        Set<String> hashSet = new HashSet<>(values);
+
+        Assertions.assertEquals(hashSet.size(), compactValueSet.size());
+        for (int i = 0; i < 100000; i++) {
+            String value = "device-" + i;
+            Assertions.assertEquals(hashSet.contains(value), compactValueSet.contains(value), value);
+        }
+        for (String value : Arrays.asList("", "a", "ab", "abc", "Ä", "aÄ", "aÄb", "aÿ", "a\u0080", "€uro", "€",
+                "😀", "\ud83d", "y", "z", "zz", "device-", "Device-1")) {
+            Assertions.assertEquals(hashSet.contains(value), compactValueSet.contains(value), value);
+        }
+    }
+
+    @Test
+    void testFromFile(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("ids.txt");
+        Files.write(file, Arrays.asList("# allowed IDs", "id-1", "", "id-2", "id-1"), StandardCharsets.UTF_8);
+        CompactValueSet compactValueSet = CompactValueSet.fromFile(file);
+
+        Assertions.assertEquals(2, compactValueSet.size());
+        Assertions.assertTrue(compactValueSet.contains("id-1"));
+        Assertions.assertTrue(compactValueSet.contains("id-2"));
+        Assertions.assertFalse(compactValueSet.contains("# allowed IDs"));
+        Assertions.assertFalse(compactValueSet.contains(""));
+        Assertions.assertFalse(CompactValueSet.of(new ArrayList<>()).contains(""));
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.schm1tz1;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+class DecisionCacheTest {
+
+    @Test
+    void testContentEqualityAndFilterChange() {
+        DecisionCache decisionCache = new DecisionCache(10, 1 << 20);
+        Object filter = new Object();
+
+        Assertions.assertNull(decisionCache.get(filter, "{\"a\": 1}".getBytes(StandardCharsets.UTF_8)));
+        decisionCache.put("{\"a\": 1}".getBytes(StandardCharsets.UTF_8), true);
+        decisionCache.put(new String("{\"a\": 2}"), false);
+
+        Assertions.assertEquals(Boolean.TRUE, decisionCache.get(filter, "{\"a\": 1}".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(Boolean.FALSE, decisionCache.get(filter, new String("{\"a\": 2}")));
+        Assertions.assertNull(decisionCache.get(filter, "{\"a\": 3}"));
+
+        // e.g. reloaded rules
+        Assertions.assertNull(decisionCache.get(new Object(), "{\"a\": 2}"));
+        Assertions.assertEquals(0, decisionCache.size());
+    }
+
+    @Test
+    void testEviction() {
+        DecisionCache decisionCache = new DecisionCache(3, 1 << 20);
+        Object filter = new Object();
+        decisionCache.get(filter, "0");
+        for (int i = 0; i < 4; i++) {
+            decisionCache.put(String.valueOf(i), true);
+            decisionCache.get(filter, "0"); // keep "0" recently used
+        }
+        Assertions.assertEquals(3, decisionCache.size());
+        Assertions.assertNotNull(decisionCache.get(filter, "0"));
+        Assertions.assertNull(decisionCache.get(filter, "1"));
+
+        long maxBytes = 2 * DecisionCache.sizeOf(new byte[100]);
+        DecisionCache boundedCache = new DecisionCache(1000, maxBytes);
+        boundedCache.get(filter, new byte[0]);
+        for (int i = 0; i < 10; i++) {
+            boundedCache.put(new byte[]{(byte) i, 0, 0}, false);
+        }
+        boundedCache.put(new byte[100], true);
+        Assertions.assertTrue(boundedCache.getBytes() <= maxBytes);
+        Assertions.assertEquals(Boolean.TRUE, boundedCache.get(filter, new byte[100]));
+
+        boundedCache.put(new byte[(int) maxBytes], true); // too large to be cached
+        Assertions.assertNull(boundedCache.get(filter, new byte[(int) maxBytes]));
+    }
+}
@@ -1,10 +1,13 @@
 package com.github.schm1tz1;
 
+import org.json.JSONObject;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -53,11 +56,10 @@ class EventFilterPipelineTest {
     }
 
     @Test
-    void testJsonParserCrashesNullInput() {
-        logger.info("Testing for handling of null input JSON messages.");
-        assertThrows(NullPointerException.class, () -> {
-            EventFilterPipelineTools.getStringForPath(null, "not.here");
-        });
+    void testJsonParserSkipsNullInput() {
+        logger.info("Testing for handling of null input JSON messages (tombstones) - should log an error.");
+        assertEquals("", EventFilterPipelineTools.getStringForPath(null, "not.here"));
+        assertEquals("", EventFilterPipelineTools.getStringForPathStreaming((byte[]) null, new String[]{"not", "here"}));
     }
 
     @Test
@@ -115,4 +117,115 @@ class EventFilterPipelineTest {
         logger.info("Testing predicate for events to be forwarded.");
         assertFalse(EventFilterPipelineTools.isEventMatchingThePattern(testMessageSecondNonDewPoint, "entity_id", "sensor.basement_thermal_comfort_dewpoint"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCompiledEventFilterMatching() {
+        logger.info("Testing pre-compiled filter against the same events as the static predicate.");
+        EventFilter eventFilter = new EventFilter("attributes.friendly_name", ".*B99F.*");
+        assertTrue(eventFilter.isMatching(testMessageFirstB99F));
+        assertFalse(eventFilter.isMatching(testMessageFirstNonB99F));
+    }
+
+    @Test
+    void testCompiledEventFilterInvalidPattern() {
+        logger.info("Testing that invalid patterns are rejected when the filter is created.");
+        assertThrows(RuntimeException.class, () -> new EventFilter("entity_id", "sensor.(.*"));
+    }
+
+    @Test
+    void testGetStringForPathStreaming() {
+        String testMessage = "{\"id\":\"0001\",\"type\":\"donut\",\"name\":\"Cake\",\"image\":{\"url\":\"images/0001.jpg\",\"width\":200,\"height\":200},\"thumbnail\":{\"url\":\"images/thumbnails/0001.jpg\",\"width\":32,\"height\":32}}";
+        logger.info("Testing streaming JSON path retrieval method.");
+        Assertions.assertEquals("200", EventFilterPipelineTools.getStringForPathStreaming(testMessage, new String[]{"image", "width"}));
+        Assertions.assertEquals("32", EventFilterPipelineTools.getStringForPathStreaming(testMessage, new String[]{"thumbnail", "height"}));
+        Assertions.assertEquals("images/thumbnails/0001.jpg", EventFilterPipelineTools.getStringForPathStreaming(testMessage, new String[]{"thumbnail", "url"}));
+        Assertions.assertEquals("", EventFilterPipelineTools.getStringForPathStreaming(testMessage, new String[]{"image", "depth"}));
+        Assertions.assertEquals("", EventFilterPipelineTools.getStringForPathStreaming(testMessage, new String[]{"name", "url"}));
+    }
+
+    @Test
+    void testStreamingExtractorMatchesJsonObjectExtractor() {
+        logger.info("Testing that the streaming extractor returns the same values as the org.json based one.");
+        String[][] paths = {{"entity_id"}, {"state"}, {"attributes", "friendly_name"}, {"attributes", "unit_of_measurement"}, {"context", "id"}, {"context", "parent_id"}, {"missing"}};
+        for (String message : new String[]{testMessageFirstNonB99F, testMessageFirstB99F, testMessageSecondNonDewPoint, testMessageSecondDewPoint}) {
+            for (String[] path : paths) {
+                String expected = JsonFieldExtractor.JSON_OBJECT.getStringForPath(message, path);
+                assertEquals(expected, JsonFieldExtractor.STREAMING.getStringForPath(message, path));
+                assertEquals(expected, JsonFieldExtractor.STREAMING.getStringForPath(message.getBytes(StandardCharsets.UTF_8), path));
+                assertEquals(expected, JsonFieldExtractor.JSON_OBJECT.getStringForPath(message.getBytes(StandardCharsets.UTF_8), path));
+            }
+        }
+    }
+
+    @Test
+    void testMultiplePathsSingleParse() {
+        logger.info("Testing extraction of multiple paths in one pass.");
+        JsonPathSet pathSet = new JsonPathSet();
+        for (String path : new String[]{"attributes.friendly_name", "entity_id", "attributes", "context.id", "context.parent_id", "missing.path", "state"}) {
+            pathSet.add(path);
+        }
+        for (String message : new String[]{testMessageFirstNonB99F, testMessageFirstB99F, testMessageSecondNonDewPoint, testMessageSecondDewPoint}) {
+            String[] expected = new String[pathSet.size()];
+            for (int i = 0; i < pathSet.size(); i++) {
+                expected[i] = JsonFieldExtractor.STREAMING.getStringForPath(message, pathSet.getSegments(i));
+            }
+            Assertions.assertArrayEquals(expected, JsonFieldExtractor.STREAMING.getStringsForPaths(message, pathSet));
+            Assertions.assertArrayEquals(expected, JsonFieldExtractor.STREAMING.getStringsForPaths(message.getBytes(StandardCharsets.UTF_8), pathSet));
+            Assertions.assertArrayEquals(expected, JsonFieldExtractor.JSON_OBJECT.getStringsForPaths(message, pathSet));
+        }
+    }
+
+    @Test
+    void testStreamingExtractorEscapes() {
+        logger.info("Testing escaped keys and values with the streaming extractor.");
+        String testMessage = "{\"skip\": {\"a\": [1, \"}\\\"]\"]}, \"k\\u0065y\": \"line\\nbreak \\u00b0C\"}";
+        assertEquals("line\nbreak \u00b0C", EventFilterPipelineTools.getStringForPathStreaming(testMessage, new String[]{"key"}));
+    }
+
+    @Test
+    void testStreamingExtractorNonAsciiBytes() {
+        logger.info("Testing non-ASCII keys and values on UTF-8 input with the streaming extractor.");
+        byte[] testMessage = "{\"unit\": \"\u00b0C\", \"gr\u00f6\u00dfe\": \"gr\u00fcn\"}".getBytes(StandardCharsets.UTF_8);
+        assertEquals("\u00b0C", EventFilterPipelineTools.getStringForPathStreaming(testMessage, new String[]{"unit"}));
+        assertEquals("gr\u00fcn", EventFilterPipelineTools.getStringForPathStreaming(testMessage, new String[]{"gr\u00f6\u00dfe"}));
+    }
+
+    @Test
+    void testStreamingExtractorSkipsOnInvalidInput() {
+        logger.info("Testing for handling of invalid JSON messages with the streaming extractor - should log an error.");
+        assertEquals("", EventFilterPipelineTools.getStringForPathStreaming("{ test: data, invalid-json }", new String[]{"not", "here"}));
+        assertEquals("", EventFilterPipelineTools.getStringForPathStreaming("{\"truncated\": \"val", new String[]{"truncated"}));
+    }
+
+    @Test
+    void testProjectionWithBothExtractors() {
+        logger.info("Testing projection of output fields extracted in the same pass as the filter field.");
+        String expected = "{\"entity_id\":\"sensor.temperature_humidity_sensor_b99f_battery\","
+                + "\"attributes\":{\"device_class\":\"battery\"},\"context\":{\"id\":\"01GQ0WJJVG1BMFA4AW4KBEBWG0\",\"parent_id\":null}}";
+        for (JsonFieldExtractor extractor : JsonFieldExtractor.values()) {
+            JsonPathSet pathSet = new JsonPathSet();
+            EventFilter eventFilter = new EventFilter("attributes.device_class", "battery", extractor, pathSet);
+            JsonProjection projection = new JsonProjection(Arrays.asList("entity_id", "attributes.device_class",
+                    "context.id", "context.parent_id", "missing", "attributes.missing.field"), pathSet);
+
+            String[] fields = eventFilter.parseFields(testMessageFirstB99F);
+            assertTrue(eventFilter.isMatching(fields));
+            assertEquals(expected, projection.project(fields));
+            assertEquals(expected, projection.project(eventFilter.parseFields(testMessageFirstB99F.getBytes(StandardCharsets.UTF_8))));
+            assertEquals("{}", projection.project(eventFilter.emptyFields()));
+        }
+
+        // objects, numbers and escapes are copied as JSON
+        String nested = "{\"a\": {\"b\": [1, {\"c\": \"}\"}], \"n\": 1.5}, \"s\": \"x\\\"y\", \"t\": true}";
+        for (JsonFieldExtractor extractor : JsonFieldExtractor.values()) {
+            JsonPathSet pathSet = new JsonPathSet();
+            EventFilter eventFilter = new EventFilter("a.n", "1.5", extractor, pathSet);
+            JsonProjection projection = new JsonProjection(Arrays.asList("a", "s", "t"), pathSet);
+            String[] fields = eventFilter.parseFields(nested);
+            assertTrue(new JSONObject(nested).similar(new JSONObject(projection.project(fields))));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new JsonProjection(Arrays.asList("a", "a.b"), new JsonPathSet()));
+        assertThrows(IllegalArgumentException.class, () -> new JsonProjection(Arrays.asList("a.b", "a"), new JsonPathSet()));
+    }
+}
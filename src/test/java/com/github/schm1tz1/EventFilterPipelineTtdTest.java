@@ -1,19 +1,37 @@
 package com.github.schm1tz1;
 
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.TestInputTopic;
 import org.apache.kafka.streams.TestOutputTopic;
 import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.test.TestRecord;
+import org.json.JSONObject;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 class EventFilterPipelineTtdTest {
@@ -119,4 +137,851 @@ class EventFilterPipelineTtdTest {
             topologyTestDriverFromProperties.close();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCombinedEventPipelineStreamingExtractor() {
+
+        for (String apiSwitch : processorApiSwitch) {
+            logger.info("PAPI usage: "+apiSwitch);
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            readAdditionalProperties(testProperties, "streams_combined_test.properties");
+            testProperties.put("use.processor.api", apiSwitch);
+            testProperties.put("streamsFilter.First.extractor", "streaming");
+            testProperties.put("streamsFilter.Second.extractor", "streaming");
+
+            TopologyTestDriver topologyTestDriverFromProperties = createTopologyTestDriverFromProperties(testProperties);
+
+            List<String> thermalComfortList = readStringFile("thermal_comfort_1000.json");
+            List<String> batteryList = readStringFile("battery_1000.json");
+
+            inputTopicFirst.pipeValueList(batteryList);
+            inputTopicSecond.pipeValueList(thermalComfortList);
+
+            Assertions.assertEquals(553, outputTopicFirst.getQueueSize() );
+            Assertions.assertEquals(thermalComfortList.size()-125, outputTopicSecond.getQueueSize() );
+
+            topologyTestDriverFromProperties.close();
+        }
+    }
+
+    @Test
+    void testCombinedEventPipelineByteArrayMode() {
+
+        for (String apiSwitch : processorApiSwitch) {
+            for (String extractor : new String[]{"json-object", "streaming"}) {
+                logger.info("PAPI usage: " + apiSwitch + ", extractor: " + extractor);
+                Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+                readAdditionalProperties(testProperties, "streams_combined_test.properties");
+                testProperties.put("use.processor.api", apiSwitch);
+                testProperties.put("streamsFilter.First.byteArrayMode", "true");
+                testProperties.put("streamsFilter.Second.byteArrayMode", "true");
+                testProperties.put("streamsFilter.First.extractor", extractor);
+                testProperties.put("streamsFilter.Second.extractor", extractor);
+
+                TopologyTestDriver topologyTestDriverFromProperties = createTopologyTestDriverFromProperties(testProperties);
+
+                List<String> thermalComfortList = readStringFile("thermal_comfort_1000.json");
+                List<String> batteryList = readStringFile("battery_1000.json");
+
+                inputTopicFirst.pipeValueList(batteryList);
+                inputTopicSecond.pipeValueList(thermalComfortList);
+
+                Assertions.assertEquals(553, outputTopicFirst.getQueueSize());
+                Assertions.assertEquals(thermalComfortList.size() - 125, outputTopicSecond.getQueueSize());
+                Assertions.assertEquals(batteryList.get(0), outputTopicFirst.readValue()); // payload forwarded unchanged
+
+                topologyTestDriverFromProperties.close();
+            }
+        }
+    }
+
+    @Test
+    void testCombinedEventPipelineRules() {
+
+        for (String apiSwitch : processorApiSwitch) {
+            logger.info("PAPI usage: "+apiSwitch);
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            readAdditionalProperties(testProperties, "streams_combined_test.properties");
+            testProperties.put("use.processor.api", apiSwitch);
+            testProperties.remove("streamsFilter.First.field");
+            testProperties.remove("streamsFilter.First.filterPattern");
+            testProperties.put("streamsFilter.First.rule", "attributes.friendly_name ~ 'Temperature/Humidity Sensor (.*) Battery' OR attributes.device_class = 'no-such-class'");
+            testProperties.put("streamsFilter.Second.rule", "entity_id ~ 'sensor.(.*)_thermal_comfort_dewpoint' AND NOT attributes.state_class = 'no-such-class'");
+            testProperties.put("streamsFilter.Second.extractor", "streaming");
+
+            TopologyTestDriver topologyTestDriverFromProperties = createTopologyTestDriverFromProperties(testProperties);
+
+            List<String> thermalComfortList = readStringFile("thermal_comfort_1000.json");
+            List<String> batteryList = readStringFile("battery_1000.json");
+
+            inputTopicFirst.pipeValueList(batteryList);
+            inputTopicSecond.pipeValueList(thermalComfortList);
+
+            Assertions.assertEquals(553, outputTopicFirst.getQueueSize() );
+            Assertions.assertEquals(thermalComfortList.size()-125, outputTopicSecond.getQueueSize() );
+
+            topologyTestDriverFromProperties.close();
+        }
+    }
+
+    @Test
+    void testFilterValuesFromListAndFile(@TempDir Path tempDir) throws IOException {
+        Path valuesFile = tempDir.resolve("device_classes.txt");
+        Files.write(valuesFile, Arrays.asList("# device classes to forward", "battery", "", "temperature"), StandardCharsets.UTF_8);
+
+        for (String apiSwitch : processorApiSwitch) {
+            for (String valuesOption : Arrays.asList("filterValues", "filterValuesFile")) {
+                logger.info("PAPI usage: " + apiSwitch + ", values from " + valuesOption);
+                Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+                readAdditionalProperties(testProperties, "streams_combined_test.properties");
+                testProperties.put("use.processor.api", apiSwitch);
+                testProperties.put("streamsFilter.First.field", "attributes.device_class");
+                testProperties.put("streamsFilter.First." + valuesOption,
+                        valuesOption.equals("filterValues") ? "battery, temperature" : valuesFile.toString());
+
+                TopologyTestDriver topologyTestDriverFromProperties = createTopologyTestDriverFromProperties(testProperties);
+                inputTopicFirst.pipeValueList(readStringFile("battery_1000.json"));
+
+                Assertions.assertEquals(752 + 90, outputTopicFirst.getQueueSize()); // battery and temperature events in test data
+
+                topologyTestDriverFromProperties.close();
+            }
+        }
+    }
+
+    @Test
+    void testRecordRuleSkipsValueParsing() {
+        for (String sources : Arrays.asList("First", "First,Shared")) {
+            logger.info("Sources: " + sources);
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            readAdditionalProperties(testProperties, "streams_combined_test.properties");
+            testProperties.put("use.processor.api", "true");
+            testProperties.put("streamsFilter.sources", sources);
+            testProperties.put("streamsFilter.First.recordRule", "header:type = 'battery' AND key ~ 'sensor\\..*' AND partition = '0'");
+            testProperties.put("streamsFilter.Shared.inputTopic", testProperties.getProperty("streamsFilter.First.inputTopic"));
+            testProperties.put("streamsFilter.Shared.outputTopic", "github.schm1tz1.shared.output");
+            testProperties.put("streamsFilter.Shared.recordRule", "header:type != 'battery'");
+            testProperties.put("streamsFilter.Shared.filterActionDrop", "false");
+
+            TopologyTestDriver topologyTestDriver = createTopologyTestDriverFromProperties(testProperties);
+            List<String> batteryList = readStringFile("battery_1000.json");
+            for (String value : batteryList) {
+                inputTopicFirst.pipeInput(new TestRecord<>("sensor.x", value, new RecordHeaders().add("type", "battery".getBytes(StandardCharsets.UTF_8))));
+            }
+            // decided on the header and key alone, the invalid JSON values are never parsed
+            inputTopicFirst.pipeInput(new TestRecord<>("sensor.x", "{invalid", new RecordHeaders().add("type", "power".getBytes(StandardCharsets.UTF_8))));
+            inputTopicFirst.pipeInput(new TestRecord<>("other", "{invalid", new RecordHeaders().add("type", "battery".getBytes(StandardCharsets.UTF_8))));
+            inputTopicFirst.pipeInput("sensor.x", "{invalid");
+
+            // header and key match, value filter as configured
+            Assertions.assertEquals(553, outputTopicFirst.getQueueSize());
+
+            Map<MetricName, ? extends Metric> metrics = topologyTestDriver.metrics();
+            Assertions.assertEquals(0, getFilterMetric(metrics, "filter-parse-errors-total", "First"));
+            Assertions.assertEquals(3, getFilterMetric(metrics, "filter-record-rule-decided-total", "First"));
+            if (sources.contains("Shared")) {
+                Assertions.assertEquals(batteryList.size() + 3, getFilterMetric(metrics, "filter-record-rule-decided-total", "Shared"));
+                Assertions.assertEquals(2.0 / (batteryList.size() + 3), getFilterMetric(metrics, "filter-match-ratio", "Shared"), 1e-9);
+            }
+
+            topologyTestDriver.close();
+        }
+
+        // headers are not available to DSL filters
+        Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+        readAdditionalProperties(testProperties, "streams_combined_test.properties");
+        testProperties.put("streamsFilter.First.recordRule", "header:type = 'battery'");
+        Assertions.assertThrows(RuntimeException.class, () -> new EventFilterPipeline(testProperties).createMultiTopology());
+    }
+
+    @Test
+    void testTombstones() {
+        for (String apiSwitch : processorApiSwitch) {
+            for (String sources : Arrays.asList("First", "First,Shared")) {
+                for (String extractor : new String[]{"json-object", "streaming"}) {
+                    for (String byteArrayMode : new String[]{"false", "true"}) {
+                        logger.info("PAPI usage: " + apiSwitch + ", sources: " + sources + ", extractor: " + extractor + ", byte array mode: " + byteArrayMode);
+                        Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+                        readAdditionalProperties(testProperties, "streams_combined_test.properties");
+                        testProperties.put("use.processor.api", apiSwitch);
+                        testProperties.put("streamsFilter.sources", sources);
+                        testProperties.put("streamsFilter.First.extractor", extractor);
+                        testProperties.put("streamsFilter.First.byteArrayMode", byteArrayMode);
+                        testProperties.put("streamsFilter.First.filterActionDrop", "true");
+                        testProperties.put("streamsFilter.Shared.inputTopic", testProperties.getProperty("streamsFilter.First.inputTopic"));
+                        testProperties.put("streamsFilter.Shared.outputTopic", "github.schm1tz1.shared.output");
+                        testProperties.put("streamsFilter.Shared.rule", "state ~ '.*'");
+                        testProperties.put("streamsFilter.Shared.filterActionDrop", "false");
+                        testProperties.put("streamsFilter.Shared.byteArrayMode", byteArrayMode);
+                        if (apiSwitch.equals("true")) {
+                            testProperties.put("streamsFilter.First.decisionCacheSize", "100");
+                            testProperties.put("streamsFilter.First.outputFields", "entity_id");
+                        }
+
+                        TopologyTestDriver topologyTestDriver = createTopologyTestDriverFromProperties(testProperties);
+                        TestOutputTopic<String, String> sharedTopic = topologyTestDriver.createOutputTopic("github.schm1tz1.shared.output",
+                                Serdes.String().deserializer(), Serdes.String().deserializer());
+
+                        // tombstones are evaluated like invalid JSON, i.e. with "" for all fields
+                        inputTopicFirst.pipeInput("k", (String) null);
+                        inputTopicFirst.pipeInput("k", (String) null);
+                        List<TestRecord<String, String>> output = outputTopicFirst.readRecordsToList();
+                        Assertions.assertEquals(2, output.size());
+                        Assertions.assertEquals("k", output.get(0).key());
+                        Assertions.assertNull(output.get(0).value());
+                        Assertions.assertEquals(2, getFilterMetric(topologyTestDriver.metrics(), "filter-parse-errors-total", "First"));
+                        if (sources.contains("Shared")) {
+                            Assertions.assertEquals(2, sharedTopic.getQueueSize()); // "" matches .*
+                            Assertions.assertEquals(2, getFilterMetric(topologyTestDriver.metrics(), "filter-parse-errors-total", "Shared"));
+                        }
+
+                        topologyTestDriver.close();
+                    }
+                }
+            }
+        }
+
+        // dead letter topic
+        Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+        readAdditionalProperties(testProperties, "streams_combined_test.properties");
+        testProperties.put("use.processor.api", "true");
+        testProperties.put("streamsFilter.First.deadLetterTopic", "github.schm1tz1.first.dlq");
+        TopologyTestDriver topologyTestDriver = createTopologyTestDriverFromProperties(testProperties);
+        TestOutputTopic<String, String> deadLetterTopic = topologyTestDriver.createOutputTopic("github.schm1tz1.first.dlq",
+                Serdes.String().deserializer(), Serdes.String().deserializer());
+        inputTopicFirst.pipeInput("k", (String) null);
+        TestRecord<String, String> deadLetter = deadLetterTopic.readRecord();
+        Assertions.assertNull(deadLetter.value());
+        Assertions.assertEquals(EventFilterPipelineTools.NULL_VALUE_ERROR,
+                new String(deadLetter.headers().lastHeader(StreamFilterProcessor.DEAD_LETTER_HEADER).value(), StandardCharsets.UTF_8));
+        Assertions.assertTrue(outputTopicFirst.isEmpty());
+        topologyTestDriver.close();
+
+        // routing sends tombstones to the default topic
+        for (String extractor : new String[]{"json-object", "streaming"}) {
+            Properties routingProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            routingProperties.put("streamsFilter.sources", "Router");
+            routingProperties.put("streamsFilter.Router.inputTopic", "router.input");
+            routingProperties.put("streamsFilter.Router.routes", "battery");
+            routingProperties.put("streamsFilter.Router.routes.battery.rule", "attributes.device_class = 'battery'");
+            routingProperties.put("streamsFilter.Router.routes.battery.outputTopic", "router.battery");
+            routingProperties.put("streamsFilter.Router.defaultTopic", "router.other");
+            routingProperties.put("streamsFilter.Router.extractor", extractor);
+            topologyTestDriver = new TopologyTestDriver(new EventFilterPipeline(routingProperties).createMultiTopology());
+            TestInputTopic<String, String> inputTopic = topologyTestDriver.createInputTopic("router.input",
+                    Serdes.String().serializer(), Serdes.String().serializer());
+            TestOutputTopic<String, String> otherTopic = topologyTestDriver.createOutputTopic("router.other",
+                    Serdes.String().deserializer(), Serdes.String().deserializer());
+            inputTopic.pipeInput("k", (String) null);
+            Assertions.assertNull(otherTopic.readValue());
+            topologyTestDriver.close();
+        }
+    }
+
+    @Test
+    void testRoutingPipelineFromFiles() {
+
+        for (String byteArrayMode : new String[]{"false", "true"}) {
+            logger.info("Byte array mode: " + byteArrayMode);
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            testProperties.put("streamsFilter.sources", "Router");
+            testProperties.put("streamsFilter.Router.inputTopic", "router.input");
+            testProperties.put("streamsFilter.Router.routes", "battery,temperature");
+            testProperties.put("streamsFilter.Router.routes.battery.rule", "attributes.device_class = 'battery'");
+            testProperties.put("streamsFilter.Router.routes.battery.outputTopic", "router.battery");
+            testProperties.put("streamsFilter.Router.routes.temperature.rule", "attributes.device_class = 'temperature' OR attributes.device_class = 'battery'");
+            testProperties.put("streamsFilter.Router.routes.temperature.outputTopic", "router.temperature");
+            testProperties.put("streamsFilter.Router.defaultTopic", "router.other");
+            testProperties.put("streamsFilter.Router.extractor", "streaming");
+            testProperties.put("streamsFilter.Router.byteArrayMode", byteArrayMode);
+
+            TopologyTestDriver topologyTestDriver = new TopologyTestDriver(new EventFilterPipeline(testProperties).createMultiTopology());
+            TestInputTopic<String, String> inputTopic = topologyTestDriver.createInputTopic("router.input",
+                    Serdes.String().serializer(), Serdes.String().serializer());
+            TestOutputTopic<String, String> batteryTopic = topologyTestDriver.createOutputTopic("router.battery",
+                    Serdes.String().deserializer(), Serdes.String().deserializer());
+            TestOutputTopic<String, String> temperatureTopic = topologyTestDriver.createOutputTopic("router.temperature",
+                    Serdes.String().deserializer(), Serdes.String().deserializer());
+            TestOutputTopic<String, String> otherTopic = topologyTestDriver.createOutputTopic("router.other",
+                    Serdes.String().deserializer(), Serdes.String().deserializer());
+
+            List<String> batteryList = readStringFile("battery_1000.json");
+            inputTopic.pipeValueList(batteryList);
+
+            // device classes in test data: 752 battery, 90 temperature, 158 other -> first matching route wins
+            Assertions.assertEquals(752, batteryTopic.getQueueSize());
+            Assertions.assertEquals(90, temperatureTopic.getQueueSize());
+            Assertions.assertEquals(158, otherTopic.getQueueSize());
+            Assertions.assertTrue(batteryList.contains(batteryTopic.readValue()));
+
+            topologyTestDriver.close();
+        }
+    }
+
+    @Test
+    void testSharedInputTopicFromFiles() {
+
+        for (String apiSwitch : processorApiSwitch) {
+            logger.info("PAPI usage: "+apiSwitch);
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            readAdditionalProperties(testProperties, "streams_combined_test.properties");
+            testProperties.put("use.processor.api", apiSwitch);
+            testProperties.put("streamsFilter.sources", "First,NoBattery");
+            testProperties.put("streamsFilter.First.extractor", "streaming");
+            testProperties.put("streamsFilter.NoBattery.inputTopic", testProperties.getProperty("streamsFilter.First.inputTopic"));
+            testProperties.put("streamsFilter.NoBattery.outputTopic", "github.schm1tz1.nobattery.output");
+            testProperties.put("streamsFilter.NoBattery.rule", "attributes.device_class = 'battery'");
+            testProperties.put("streamsFilter.NoBattery.filterActionDrop", "true");
+
+            Topology topology = new EventFilterPipeline(testProperties).createMultiTopology();
+            Assertions.assertEquals(1, topology.describe().subtopologies().size());
+
+            TopologyTestDriver topologyTestDriver = new TopologyTestDriver(topology);
+            TestInputTopic<String, String> inputTopic = topologyTestDriver.createInputTopic(testProperties.getProperty("streamsFilter.First.inputTopic"),
+                    Serdes.String().serializer(), Serdes.String().serializer());
+            TestOutputTopic<String, String> outputTopicMatching = topologyTestDriver.createOutputTopic(testProperties.getProperty("streamsFilter.First.outputTopic"),
+                    Serdes.String().deserializer(), Serdes.String().deserializer());
+            TestOutputTopic<String, String> outputTopicNoBattery = topologyTestDriver.createOutputTopic("github.schm1tz1.nobattery.output",
+                    Serdes.String().deserializer(), Serdes.String().deserializer());
+
+            List<String> batteryList = readStringFile("battery_1000.json");
+            inputTopic.pipeValueList(batteryList);
+
+            Assertions.assertEquals(553, outputTopicMatching.getQueueSize());
+            Assertions.assertEquals(batteryList.size() - 752, outputTopicNoBattery.getQueueSize());
+            Assertions.assertTrue(batteryList.contains(outputTopicNoBattery.readValue()));
+
+            topologyTestDriver.close();
+        }
+    }
+
+    private static double getFilterMetric(Map<MetricName, ? extends Metric> metrics, String name, String sourceName) {
+        return metrics.entrySet().stream()
+                .filter(metric -> metric.getKey().group().equals(FilterMetrics.GROUP)
+                        && metric.getKey().name().equals(name)
+                        && sourceName.equals(metric.getKey().tags().get("source")))
+                .mapToDouble(metric -> ((Number) metric.getValue().metricValue()).doubleValue())
+                .sum();
+    }
+
+    @Test
+    void testFilterMetrics() {
+
+        for (String apiSwitch : processorApiSwitch) {
+            logger.info("PAPI usage: "+apiSwitch);
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            readAdditionalProperties(testProperties, "streams_combined_test.properties");
+            testProperties.put("use.processor.api", apiSwitch);
+            testProperties.put(StreamsConfig.METRICS_RECORDING_LEVEL_CONFIG, "DEBUG");
+
+            EventFilterPipeline eventFilterPipeline = new EventFilterPipeline(testProperties);
+            TopologyTestDriver topologyTestDriver = new TopologyTestDriver(eventFilterPipeline.createMultiTopology(), testProperties);
+            TestInputTopic<String, String> inputTopic = topologyTestDriver.createInputTopic(testProperties.getProperty("streamsFilter.First.inputTopic"),
+                    Serdes.String().serializer(), Serdes.String().serializer());
+
+            List<String> batteryList = readStringFile("battery_1000.json");
+            inputTopic.pipeValueList(batteryList);
+            inputTopic.pipeInput("{\"entity_id\": ");
+
+            Map<MetricName, ? extends Metric> metrics = topologyTestDriver.metrics();
+
+            Assertions.assertEquals(batteryList.size() + 1, getFilterMetric(metrics, "filter-in-total", "First"));
+            Assertions.assertEquals(553, getFilterMetric(metrics, "filter-out-total", "First"));
+            Assertions.assertEquals(batteryList.size() + 1 - 553, getFilterMetric(metrics, "filter-filtered-total", "First"));
+            Assertions.assertEquals(1, getFilterMetric(metrics, "filter-parse-errors-total", "First"));
+            Assertions.assertEquals(553.0 / (batteryList.size() + 1), getFilterMetric(metrics, "filter-match-ratio", "First"), 1e-9);
+            Assertions.assertTrue(getFilterMetric(metrics, "filter-evaluation-latency-p99", "First") > 0);
+            Assertions.assertTrue(getFilterMetric(metrics, "filter-parse-time-max", "First") > 0);
+            Assertions.assertEquals(0, getFilterMetric(metrics, "filter-in-total", "Second"));
+
+            Assertions.assertTrue(metrics.keySet().stream()
+                    .filter(metricName -> "First".equals(metricName.tags().get("source")))
+                    .allMatch(metricName -> metricName.tags().get("task-id").equals("0_0")));
+
+            // the sensors are removed with the task
+            topologyTestDriver.close();
+            Assertions.assertEquals(0, getFilterMetric(topologyTestDriver.metrics(), "filter-in-total", "First"));
+            eventFilterPipeline.close();
+        }
+    }
+
+    @Test
+    void testReloadRules(@TempDir Path tempDir) throws IOException {
+
+        for (String apiSwitch : processorApiSwitch) {
+            logger.info("PAPI usage: "+apiSwitch);
+            Path rulesFile = tempDir.resolve("rules_" + apiSwitch + ".properties");
+            Files.write(rulesFile, "streamsFilter.First.filterActionDrop = false\n".getBytes(StandardCharsets.UTF_8));
+
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            readAdditionalProperties(testProperties, "streams_combined_test.properties");
+            testProperties.put("use.processor.api", apiSwitch);
+            testProperties.put("streamsFilter.sources", "First,NoBattery");
+            testProperties.put("streamsFilter.rulesFile", rulesFile.toString());
+            testProperties.put("streamsFilter.NoBattery.inputTopic", testProperties.getProperty("streamsFilter.First.inputTopic"));
+            testProperties.put("streamsFilter.NoBattery.outputTopic", "github.schm1tz1.nobattery.output");
+            testProperties.put("streamsFilter.NoBattery.rule", "attributes.device_class = 'battery'");
+            testProperties.put("streamsFilter.NoBattery.filterActionDrop", "true");
+
+            EventFilterPipeline eventFilterPipeline = new EventFilterPipeline(testProperties);
+            TopologyTestDriver topologyTestDriver = new TopologyTestDriver(eventFilterPipeline.createMultiTopology());
+            TestInputTopic<String, String> inputTopic = topologyTestDriver.createInputTopic(testProperties.getProperty("streamsFilter.First.inputTopic"),
+                    Serdes.String().serializer(), Serdes.String().serializer());
+            TestOutputTopic<String, String> outputTopicMatching = topologyTestDriver.createOutputTopic(testProperties.getProperty("streamsFilter.First.outputTopic"),
+                    Serdes.String().deserializer(), Serdes.String().deserializer());
+            TestOutputTopic<String, String> outputTopicNoBattery = topologyTestDriver.createOutputTopic("github.schm1tz1.nobattery.output",
+                    Serdes.String().deserializer(), Serdes.String().deserializer());
+
+            List<String> batteryList = readStringFile("battery_1000.json");
+            inputTopic.pipeValueList(batteryList);
+            Assertions.assertEquals(553, outputTopicMatching.readValuesToList().size());
+            Assertions.assertEquals(batteryList.size() - 752, outputTopicNoBattery.readValuesToList().size());
+
+            // invert the action of First and filter NoBattery on a field that was not extracted before
+            Files.write(rulesFile, ("streamsFilter.First.filterActionDrop = true\n"
+                    + "streamsFilter.NoBattery.rule = attributes.device_class = 'battery' OR attributes.unit_of_measurement = '%'\n"
+                    + "streamsFilter.First.outputTopic = ignored.until.restart\n").getBytes(StandardCharsets.UTF_8));
+            Assertions.assertTrue(eventFilterPipeline.reloadRules());
+
+            inputTopic.pipeValueList(batteryList);
+            Assertions.assertEquals(batteryList.size() - 553, outputTopicMatching.readValuesToList().size());
+            Assertions.assertEquals(248, outputTopicNoBattery.readValuesToList().size()); // neither battery nor % unit
+
+            // invalid rules are rejected as a whole
+            Files.write(rulesFile, ("streamsFilter.First.filterActionDrop = false\n"
+                    + "streamsFilter.NoBattery.rule = attributes.device_class = \n").getBytes(StandardCharsets.UTF_8));
+            Assertions.assertFalse(eventFilterPipeline.reloadRules());
+
+            inputTopic.pipeValueList(batteryList);
+            Assertions.assertEquals(batteryList.size() - 553, outputTopicMatching.getQueueSize());
+
+            topologyTestDriver.close();
+            eventFilterPipeline.close();
+        }
+    }
+
+    @Test
+    void testReloadFilterValuesFile(@TempDir Path tempDir) throws IOException {
+        Path valuesFile = tempDir.resolve("device_classes.txt");
+        Files.write(valuesFile, Arrays.asList("battery", "temperature"), StandardCharsets.UTF_8);
+
+        Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+        readAdditionalProperties(testProperties, "streams_combined_test.properties");
+        testProperties.put("use.processor.api", "true");
+        testProperties.put("streamsFilter.First.field", "attributes.device_class");
+        testProperties.remove("streamsFilter.First.filterPattern");
+        testProperties.put("streamsFilter.First.filterValuesFile", valuesFile.toString());
+        testProperties.put("streamsFilter.First.filterActionDrop", "true");
+        testProperties.put("streamsFilter.Second.decisionCacheSize", "2000");
+
+        EventFilterPipeline eventFilterPipeline = new EventFilterPipeline(testProperties);
+        TopologyTestDriver topologyTestDriver = new TopologyTestDriver(eventFilterPipeline.createMultiTopology());
+        TestInputTopic<String, String> inputTopic = topologyTestDriver.createInputTopic(testProperties.getProperty("streamsFilter.First.inputTopic"),
+                Serdes.String().serializer(), Serdes.String().serializer());
+        TestOutputTopic<String, String> outputTopic = topologyTestDriver.createOutputTopic(testProperties.getProperty("streamsFilter.First.outputTopic"),
+                Serdes.String().deserializer(), Serdes.String().deserializer());
+        TestInputTopic<String, String> inputTopicSecond = topologyTestDriver.createInputTopic(testProperties.getProperty("streamsFilter.Second.inputTopic"),
+                Serdes.String().serializer(), Serdes.String().serializer());
+
+        List<String> batteryList = readStringFile("battery_1000.json");
+        inputTopic.pipeValueList(batteryList);
+        Assertions.assertEquals(batteryList.size() - 752 - 90, outputTopic.readValuesToList().size());
+        inputTopicSecond.pipeValueList(batteryList);
+        double cacheMisses = getFilterMetric(topologyTestDriver.metrics(), "filter-cache-misses-total", "Second");
+
+        Files.write(valuesFile, Arrays.asList("battery", "power"), StandardCharsets.UTF_8);
+        Assertions.assertTrue(eventFilterPipeline.reloadFilterValues("First"));
+
+        inputTopic.pipeValueList(batteryList);
+        Assertions.assertEquals(batteryList.size() - 752 - 137, outputTopic.readValuesToList().size());
+
+        // the filter of Second was not recompiled, its decision cache is kept
+        inputTopicSecond.pipeValueList(batteryList);
+        Assertions.assertEquals(cacheMisses, getFilterMetric(topologyTestDriver.metrics(), "filter-cache-misses-total", "Second"));
+
+        // a missing values file keeps the current filter
+        Files.delete(valuesFile);
+        Assertions.assertFalse(eventFilterPipeline.reloadFilterValues("First"));
+        inputTopic.pipeValueList(batteryList);
+        Assertions.assertEquals(batteryList.size() - 752 - 137, outputTopic.readValuesToList().size());
+
+        topologyTestDriver.close();
+        eventFilterPipeline.close();
+    }
+
+    @Test
+    void testDecisionCache() {
+
+        for (String byteArrayMode : new String[]{"false", "true"}) {
+            logger.info("Byte array mode: " + byteArrayMode);
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            readAdditionalProperties(testProperties, "streams_combined_test.properties");
+            testProperties.put("use.processor.api", "true");
+            testProperties.put("streamsFilter.First.byteArrayMode", byteArrayMode);
+            testProperties.put("streamsFilter.First.decisionCacheSize", "2000");
+
+            TopologyTestDriver topologyTestDriver = createTopologyTestDriverFromProperties(testProperties);
+
+            List<String> batteryList = readStringFile("battery_1000.json");
+            inputTopicFirst.pipeValueList(batteryList);
+            inputTopicFirst.pipeValueList(batteryList);
+
+            Assertions.assertEquals(2 * 553, outputTopicFirst.getQueueSize());
+            Assertions.assertTrue(getFilterMetric(topologyTestDriver.metrics(), "filter-cache-hits-total", "First") >= batteryList.size());
+            Assertions.assertEquals(2 * batteryList.size(), getFilterMetric(topologyTestDriver.metrics(), "filter-cache-hits-total", "First")
+                    + getFilterMetric(topologyTestDriver.metrics(), "filter-cache-misses-total", "First"));
+            Assertions.assertEquals(553.0 / batteryList.size(), getFilterMetric(topologyTestDriver.metrics(), "filter-match-ratio", "First"), 1e-9);
+
+            topologyTestDriver.close();
+        }
+    }
+
+    @Test
+    void testDecisionCacheSharedInputTopic() {
+        Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+        readAdditionalProperties(testProperties, "streams_combined_test.properties");
+        testProperties.put("use.processor.api", "true");
+        testProperties.put("streamsFilter.sources", "First,Shared");
+        testProperties.put("streamsFilter.First.decisionCacheSize", "2000");
+        testProperties.put("streamsFilter.Shared.inputTopic", testProperties.getProperty("streamsFilter.First.inputTopic"));
+        testProperties.put("streamsFilter.Shared.outputTopic", "github.schm1tz1.shared.output");
+        testProperties.put("streamsFilter.Shared.rule", "attributes.device_class = 'battery'");
+        testProperties.put("streamsFilter.Shared.filterActionDrop", "true");
+        testProperties.put("streamsFilter.Shared.decisionCacheSize", "2000");
+
+        EventFilterPipeline eventFilterPipeline = new EventFilterPipeline(testProperties);
+        TopologyTestDriver topologyTestDriver = new TopologyTestDriver(eventFilterPipeline.createMultiTopology());
+        TestInputTopic<String, String> inputTopic = topologyTestDriver.createInputTopic(testProperties.getProperty("streamsFilter.First.inputTopic"),
+                Serdes.String().serializer(), Serdes.String().serializer());
+        TestOutputTopic<String, String> outputTopic = topologyTestDriver.createOutputTopic(testProperties.getProperty("streamsFilter.First.outputTopic"),
+                Serdes.String().deserializer(), Serdes.String().deserializer());
+        TestOutputTopic<String, String> outputTopicShared = topologyTestDriver.createOutputTopic("github.schm1tz1.shared.output",
+                Serdes.String().deserializer(), Serdes.String().deserializer());
+
+        List<String> batteryList = readStringFile("battery_1000.json");
+        inputTopic.pipeValueList(batteryList);
+        inputTopic.pipeValueList(batteryList);
+
+        Assertions.assertEquals(2 * 553, outputTopic.getQueueSize());
+        Assertions.assertEquals(2 * (batteryList.size() - 752), outputTopicShared.getQueueSize());
+        for (String sourceName : new String[]{"First", "Shared"}) {
+            Assertions.assertTrue(getFilterMetric(topologyTestDriver.metrics(), "filter-cache-hits-total", sourceName) >= batteryList.size());
+            Assertions.assertEquals(2 * batteryList.size(), getFilterMetric(topologyTestDriver.metrics(), "filter-cache-hits-total", sourceName)
+                    + getFilterMetric(topologyTestDriver.metrics(), "filter-cache-misses-total", sourceName));
+        }
+
+        topologyTestDriver.close();
+    }
+
+    @Test
+    void testParallelEvaluation() {
+        Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+        readAdditionalProperties(testProperties, "streams_combined_test.properties");
+        testProperties.put("use.processor.api", "true");
+        testProperties.put("streamsFilter.parallelEvaluation.threads", "4");
+
+        EventFilterPipeline eventFilterPipeline = new EventFilterPipeline(testProperties);
+        TopologyTestDriver topologyTestDriver = new TopologyTestDriver(eventFilterPipeline.createMultiTopology());
+        TestInputTopic<String, String> inputTopic = topologyTestDriver.createInputTopic(testProperties.getProperty("streamsFilter.First.inputTopic"),
+                Serdes.String().serializer(), Serdes.String().serializer());
+        TestOutputTopic<String, String> outputTopic = topologyTestDriver.createOutputTopic(testProperties.getProperty("streamsFilter.First.outputTopic"),
+                Serdes.String().deserializer(), Serdes.String().deserializer());
+
+        // poll batch as seen by the consumer interceptor
+        String topic = testProperties.getProperty("streamsFilter.First.inputTopic");
+        List<String> batteryList = new ArrayList<>(readStringFile("battery_1000.json"));
+        batteryList.add("{invalid");
+        List<ConsumerRecord<byte[], byte[]>> polled = new ArrayList<>();
+        for (int i = 0; i < batteryList.size(); i++) {
+            polled.add(new ConsumerRecord<>(topic, 0, i, null, batteryList.get(i).getBytes(StandardCharsets.UTF_8)));
+            // decisions sent by a producer are replaced
+            polled.get(i).headers().add(ParallelFilterEvaluator.HEADER_PREFIX + "First", new byte[]{ParallelFilterEvaluator.MATCHING});
+            polled.get(i).headers().add(ParallelFilterEvaluator.HEADER_PREFIX + "Other", new byte[]{ParallelFilterEvaluator.MATCHING});
+        }
+        ParallelFilterInterceptor interceptor = new ParallelFilterInterceptor();
+        interceptor.configure(Collections.singletonMap(ParallelFilterEvaluator.CONFIG, eventFilterPipeline.getParallelEvaluator()));
+        interceptor.onConsume(new ConsumerRecords<>(Collections.singletonMap(new TopicPartition(topic, 0), polled)));
+
+        for (ConsumerRecord<byte[], byte[]> record : polled) {
+            Assertions.assertTrue(ParallelFilterEvaluator.getDecision(record.headers(), "First") >= 0);
+            Assertions.assertEquals(1, record.headers().toArray().length);
+            inputTopic.pipeInput(new TestRecord<>(null, new String(record.value(), StandardCharsets.UTF_8), record.headers()));
+        }
+
+        Assertions.assertEquals(553, outputTopic.getQueueSize());
+        for (TestRecord<String, String> record : outputTopic.readRecordsToList()) {
+            Assertions.assertFalse(record.headers().iterator().hasNext());
+        }
+        Map<MetricName, ? extends Metric> metrics = topologyTestDriver.metrics();
+        Assertions.assertEquals(batteryList.size(), getFilterMetric(metrics, "filter-parallel-evaluated-total", "First"));
+        Assertions.assertEquals(1, getFilterMetric(metrics, "filter-parse-errors-total", "First"));
+
+        // small batches are left to the processor, without the decisions sent along
+        List<ConsumerRecord<byte[], byte[]>> smallBatch = polled.subList(0, 10);
+        interceptor.onConsume(new ConsumerRecords<>(Collections.singletonMap(new TopicPartition(topic, 0), smallBatch)));
+        for (ConsumerRecord<byte[], byte[]> record : smallBatch) {
+            Assertions.assertEquals(-1, ParallelFilterEvaluator.getDecision(record.headers(), "First"));
+        }
+        inputTopic.pipeInput(batteryList.get(0));
+        Assertions.assertEquals(batteryList.size(), getFilterMetric(topologyTestDriver.metrics(), "filter-parallel-evaluated-total", "First"));
+
+        topologyTestDriver.close();
+        eventFilterPipeline.getParallelEvaluator().close();
+    }
+
+    @Test
+    void testDecisionHeadersWithoutParallelEvaluation() {
+        for (String sources : Arrays.asList("First", "First,Shared")) {
+            logger.info("Sources: " + sources);
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            readAdditionalProperties(testProperties, "streams_combined_test.properties");
+            testProperties.put("use.processor.api", "true");
+            testProperties.put("streamsFilter.sources", sources);
+            testProperties.put("streamsFilter.Shared.inputTopic", testProperties.getProperty("streamsFilter.First.inputTopic"));
+            testProperties.put("streamsFilter.Shared.outputTopic", "github.schm1tz1.shared.output");
+            testProperties.put("streamsFilter.Shared.rule", "state = 'none'");
+            testProperties.put("streamsFilter.Shared.filterActionDrop", "false");
+
+            TopologyTestDriver topologyTestDriver = createTopologyTestDriverFromProperties(testProperties);
+            String notMatching = "{\"entity_id\": \"sensor.other\", \"state\": \"1\"}";
+            RecordHeaders forgedHeaders = new RecordHeaders();
+            forgedHeaders.add(ParallelFilterEvaluator.HEADER_PREFIX + "First", new byte[]{ParallelFilterEvaluator.MATCHING});
+            forgedHeaders.add(ParallelFilterEvaluator.HEADER_PREFIX + "Shared", new byte[]{ParallelFilterEvaluator.MATCHING});
+            inputTopicFirst.pipeInput(new TestRecord<>("k", notMatching, forgedHeaders));
+            RecordHeaders emptyHeaders = new RecordHeaders();
+            emptyHeaders.add(ParallelFilterEvaluator.HEADER_PREFIX + "First", new byte[0]);
+            emptyHeaders.add(ParallelFilterEvaluator.HEADER_PREFIX + "Shared", null);
+            inputTopicFirst.pipeInput(new TestRecord<>("k", notMatching, emptyHeaders));
+
+            Assertions.assertTrue(outputTopicFirst.isEmpty());
+            Assertions.assertEquals(0, getFilterMetric(topologyTestDriver.metrics(), "filter-parallel-evaluated-total", "First"));
+            Assertions.assertEquals(2, getFilterMetric(topologyTestDriver.metrics(), "filter-filtered-total", "First"));
+            if (sources.contains("Shared")) {
+                Assertions.assertEquals(2, getFilterMetric(topologyTestDriver.metrics(), "filter-filtered-total", "Shared"));
+            }
+            topologyTestDriver.close();
+        }
+
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(ParallelFilterEvaluator.HEADER_PREFIX + "First", new byte[]{1, 1});
+        Assertions.assertEquals(-1, ParallelFilterEvaluator.getDecision(headers, "First"));
+    }
+
+    @Test
+    void testOutputFieldsProjection() {
+        for (String sources : Arrays.asList("First", "First,Shared")) {
+            for (String byteArrayMode : new String[]{"false", "true"}) {
+                logger.info("Sources: " + sources + ", byte array mode: " + byteArrayMode);
+                Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+                readAdditionalProperties(testProperties, "streams_combined_test.properties");
+                testProperties.put("use.processor.api", "true");
+                testProperties.put("streamsFilter.sources", sources);
+                testProperties.put("streamsFilter.First.byteArrayMode", byteArrayMode);
+                testProperties.put("streamsFilter.First.extractor", "streaming");
+                testProperties.put("streamsFilter.First.outputFields", "entity_id,state,attributes.friendly_name");
+                testProperties.put("streamsFilter.Shared.inputTopic", testProperties.getProperty("streamsFilter.First.inputTopic"));
+                testProperties.put("streamsFilter.Shared.outputTopic", "github.schm1tz1.shared.output");
+                testProperties.put("streamsFilter.Shared.recordRule", "key = 'sensor'");
+                testProperties.put("streamsFilter.Shared.outputFields", "attributes.device_class");
+                testProperties.put("streamsFilter.Shared.filterActionDrop", "false");
+                testProperties.put("streamsFilter.Shared.byteArrayMode", byteArrayMode);
+
+                TopologyTestDriver topologyTestDriver = createTopologyTestDriverFromProperties(testProperties);
+                TestOutputTopic<String, String> sharedTopic = topologyTestDriver.createOutputTopic("github.schm1tz1.shared.output",
+                        Serdes.String().deserializer(), Serdes.String().deserializer());
+                List<String> batteryList = readStringFile("battery_1000.json");
+                for (String value : batteryList) {
+                    inputTopicFirst.pipeInput("sensor", value);
+                }
+
+                List<String> output = outputTopicFirst.readValuesToList();
+                Assertions.assertEquals(553, output.size());
+                for (String value : output) {
+                    JSONObject projected = new JSONObject(value);
+                    Assertions.assertEquals(3, projected.length());
+                    Assertions.assertEquals(1, projected.getJSONObject("attributes").length());
+                    Assertions.assertTrue(projected.getJSONObject("attributes").getString("friendly_name").endsWith("Battery"));
+                }
+                if (sources.contains("Shared")) {
+                    List<String> sharedOutput = sharedTopic.readValuesToList();
+                    Assertions.assertEquals(batteryList.size(), sharedOutput.size());
+                    Assertions.assertEquals("{\"attributes\":{\"device_class\":\"battery\"}}", sharedOutput.get(0));
+                }
+
+                topologyTestDriver.close();
+            }
+        }
+
+        // projections are not available to DSL filters
+        Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+        readAdditionalProperties(testProperties, "streams_combined_test.properties");
+        testProperties.put("streamsFilter.First.outputFields", "entity_id");
+        Assertions.assertThrows(RuntimeException.class, () -> new EventFilterPipeline(testProperties).createMultiTopology());
+    }
+
+    @Test
+    void testDeadLetterTopic() {
+        String[] invalidValues = {"{\"entity_id\": ", "not json"};
+        for (String sources : Arrays.asList("First", "First,Shared")) {
+            for (String byteArrayMode : new String[]{"false", "true"}) {
+                logger.info("Sources: " + sources + ", byte array mode: " + byteArrayMode);
+                Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+                readAdditionalProperties(testProperties, "streams_combined_test.properties");
+                testProperties.put("use.processor.api", "true");
+                testProperties.put("streamsFilter.sources", sources);
+                testProperties.put("streamsFilter.First.byteArrayMode", byteArrayMode);
+                testProperties.put("streamsFilter.First.deadLetterTopic", "github.schm1tz1.first.dlq");
+                testProperties.put("streamsFilter.Shared.inputTopic", testProperties.getProperty("streamsFilter.First.inputTopic"));
+                testProperties.put("streamsFilter.Shared.outputTopic", "github.schm1tz1.shared.output");
+                testProperties.put("streamsFilter.Shared.rule", "state ~ '.*'");
+                testProperties.put("streamsFilter.Shared.filterActionDrop", "false");
+                testProperties.put("streamsFilter.Shared.byteArrayMode", byteArrayMode);
+
+                TopologyTestDriver topologyTestDriver = createTopologyTestDriverFromProperties(testProperties);
+                TestOutputTopic<String, String> deadLetterTopic = topologyTestDriver.createOutputTopic("github.schm1tz1.first.dlq",
+                        Serdes.String().deserializer(), Serdes.String().deserializer());
+                TestOutputTopic<String, String> sharedTopic = topologyTestDriver.createOutputTopic("github.schm1tz1.shared.output",
+                        Serdes.String().deserializer(), Serdes.String().deserializer());
+
+                List<String> batteryList = readStringFile("battery_1000.json");
+                inputTopicFirst.pipeValueList(batteryList);
+                for (String invalidValue : invalidValues) {
+                    inputTopicFirst.pipeInput("k", invalidValue);
+                }
+                // marker set by an upstream application is not taken for a parse error
+                RecordHeaders upstreamHeaders = new RecordHeaders();
+                upstreamHeaders.add(StreamFilterProcessor.DEAD_LETTER_HEADER, "upstream".getBytes(StandardCharsets.UTF_8));
+                inputTopicFirst.pipeInput(new TestRecord<>("k", batteryList.get(0), upstreamHeaders));
+
+                List<TestRecord<String, String>> deadLetters = deadLetterTopic.readRecordsToList();
+                Assertions.assertEquals(invalidValues.length, deadLetters.size());
+                for (int i = 0; i < invalidValues.length; i++) {
+                    Assertions.assertEquals("k", deadLetters.get(i).key());
+                    Assertions.assertEquals(invalidValues[i], deadLetters.get(i).value());
+                    Assertions.assertNotNull(deadLetters.get(i).headers().lastHeader(StreamFilterProcessor.DEAD_LETTER_HEADER));
+                }
+                List<TestRecord<String, String>> output = outputTopicFirst.readRecordsToList();
+                Assertions.assertEquals(554, output.size());
+                Assertions.assertNull(output.get(553).headers().lastHeader(StreamFilterProcessor.DEAD_LETTER_HEADER));
+                if (sources.contains("Shared")) {
+                    // sources without dead letter topic filter invalid records as before, i.e. with "" for all fields
+                    Assertions.assertEquals(batteryList.size() + invalidValues.length + 1, sharedTopic.getQueueSize());
+                    Assertions.assertEquals(invalidValues.length, getFilterMetric(topologyTestDriver.metrics(), "filter-parse-errors-total", "Shared"));
+                }
+
+                Assertions.assertEquals(invalidValues.length, getFilterMetric(topologyTestDriver.metrics(), "filter-dead-lettered-total", "First"));
+                Assertions.assertEquals(invalidValues.length, getFilterMetric(topologyTestDriver.metrics(), "filter-parse-errors-total", "First"));
+                Assertions.assertEquals(batteryList.size() + invalidValues.length + 1, getFilterMetric(topologyTestDriver.metrics(), "filter-in-total", "First"));
+
+                topologyTestDriver.close();
+            }
+        }
+
+        // dead letters are not available to DSL filters
+        Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+        readAdditionalProperties(testProperties, "streams_combined_test.properties");
+        testProperties.put("streamsFilter.First.deadLetterTopic", "github.schm1tz1.first.dlq");
+        Assertions.assertThrows(RuntimeException.class, () -> new EventFilterPipeline(testProperties).createMultiTopology());
+    }
+
+    @Test
+    void testForwardLimits() {
+        for (String apiSwitch : processorApiSwitch) {
+            logger.info("PAPI usage: " + apiSwitch);
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            readAdditionalProperties(testProperties, "streams_combined_test.properties");
+            testProperties.put("use.processor.api", apiSwitch);
+            testProperties.put("streamsFilter.First.maxPerWindow", "100");
+            testProperties.put("streamsFilter.First.windowMs", "3600000");
+            testProperties.put("streamsFilter.Second.samplePercent", "50");
+
+            EventFilterPipeline eventFilterPipeline = new EventFilterPipeline(testProperties);
+            TopologyTestDriver topologyTestDriver = new TopologyTestDriver(eventFilterPipeline.createMultiTopology(), testProperties);
+            TestInputTopic<String, String> inputTopic = topologyTestDriver.createInputTopic(testProperties.getProperty("streamsFilter.First.inputTopic"),
+                    Serdes.String().serializer(), Serdes.String().serializer());
+            TestInputTopic<String, String> inputTopicSecond = topologyTestDriver.createInputTopic(testProperties.getProperty("streamsFilter.Second.inputTopic"),
+                    Serdes.String().serializer(), Serdes.String().serializer());
+            TestOutputTopic<String, String> outputTopic = topologyTestDriver.createOutputTopic(testProperties.getProperty("streamsFilter.First.outputTopic"),
+                    Serdes.String().deserializer(), Serdes.String().deserializer());
+            TestOutputTopic<String, String> outputTopicSecond = topologyTestDriver.createOutputTopic(testProperties.getProperty("streamsFilter.Second.outputTopic"),
+                    Serdes.String().deserializer(), Serdes.String().deserializer());
+
+            List<String> batteryList = readStringFile("battery_1000.json");
+            inputTopic.pipeValueList(batteryList);
+            Assertions.assertEquals(100, outputTopic.getQueueSize());
+
+            // sampled by key, all records of a key are kept or dropped together
+            for (int i = 0; i < batteryList.size(); i++) {
+                inputTopicSecond.pipeInput("key-" + (i % 10), batteryList.get(i));
+            }
+            List<KeyValue<String, String>> sampled = outputTopicSecond.readKeyValuesToList();
+            Assertions.assertTrue(sampled.size() > 0 && sampled.size() < batteryList.size());
+            Assertions.assertEquals(0, sampled.size() % 100);
+
+            Map<MetricName, ? extends Metric> metrics = topologyTestDriver.metrics();
+            Assertions.assertEquals(553 - 100, getFilterMetric(metrics, "filter-limited-total", "First"));
+            Assertions.assertEquals(batteryList.size(), getFilterMetric(metrics, "filter-in-total", "First"));
+            Assertions.assertEquals(batteryList.size() - sampled.size(), getFilterMetric(metrics, "filter-limited-total", "Second"));
+
+            topologyTestDriver.close();
+            eventFilterPipeline.close();
+        }
+
+        // sampling by field needs the extracted fields of the Processor API
+        Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+        readAdditionalProperties(testProperties, "streams_combined_test.properties");
+        testProperties.put("streamsFilter.First.samplePercent", "10");
+        testProperties.put("streamsFilter.First.sampleField", "context.id");
+        Assertions.assertThrows(RuntimeException.class, () -> new EventFilterPipeline(testProperties).createMultiTopology());
+        testProperties.put("use.processor.api", "true");
+        TopologyTestDriver topologyTestDriver = createTopologyTestDriverFromProperties(testProperties);
+        List<String> batteryList = readStringFile("battery_1000.json");
+        inputTopicFirst.pipeValueList(batteryList);
+        long sampled = outputTopicFirst.getQueueSize();
+        Assertions.assertTrue(sampled > 10 && sampled < 110, "sampled " + sampled);
+        topologyTestDriver.close();
+    }
+
+    @Test
+    void testDeduplication() {
+        for (String apiSwitch : processorApiSwitch) {
+            logger.info("PAPI usage: " + apiSwitch);
+            Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+            readAdditionalProperties(testProperties, "streams_combined_test.properties");
+            testProperties.put("use.processor.api", apiSwitch);
+            testProperties.put("streamsFilter.First.extractor", "streaming");
+            testProperties.put("streamsFilter.First.dedupIdField", "context.id");
+            testProperties.put("streamsFilter.First.dedupRetentionMs", "60000");
+
+            TopologyTestDriver topologyTestDriver = createTopologyTestDriverFromProperties(testProperties);
+            List<String> batteryList = readStringFile("battery_1000.json");
+            Instant start = Instant.parse("2023-01-17T22:00:00Z");
+            for (String value : batteryList) {
+                inputTopicFirst.pipeInput("k", value, start);
+            }
+            // retries within the retention are dropped before the filter, later ones are filtered again
+            for (String value : batteryList) {
+                inputTopicFirst.pipeInput("k", value, start.plusSeconds(59));
+            }
+            Assertions.assertEquals(553, outputTopicFirst.getQueueSize());
+            inputTopicFirst.pipeInput("k", batteryList.get(0), start.plusSeconds(61));
+            inputTopicFirst.pipeInput("k", "{\"state\": \"no id\"}", start.plusSeconds(61));
+            Assertions.assertEquals(554, outputTopicFirst.getQueueSize());
+
+            Map<MetricName, ? extends Metric> metrics = topologyTestDriver.metrics();
+            Assertions.assertEquals(batteryList.size(), getFilterMetric(metrics, "filter-dedup-duplicates-total", "First"));
+            Assertions.assertEquals(batteryList.size() + 1, getFilterMetric(metrics, "filter-dedup-unique-total", "First"));
+            Assertions.assertEquals(1, getFilterMetric(metrics, "filter-dedup-missing-id-total", "First"));
+            Assertions.assertTrue(getFilterMetric(metrics, "filter-dedup-stored-ids", "First") > 0);
+
+            topologyTestDriver.close();
+        }
+
+        // the sources sharing an input topic would need a common id
+        Properties testProperties = PipelineConfigTools.setDefaultStreamsProperties();
+        readAdditionalProperties(testProperties, "streams_combined_test.properties");
+        testProperties.put("streamsFilter.Second.inputTopic", testProperties.getProperty("streamsFilter.First.inputTopic"));
+        testProperties.put("streamsFilter.First.dedupIdField", "context.id");
+        Assertions.assertThrows(RuntimeException.class, () -> new EventFilterPipeline(testProperties).createMultiTopology());
+    }
+}
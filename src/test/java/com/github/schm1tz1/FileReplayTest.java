@@ -0,0 +1,111 @@
+package com.github.schm1tz1;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileReplayTest {
+
+    private List<String> readResource(String fileName) throws IOException {
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            return Arrays.asList(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).split("\n"));
+        }
+    }
+
+    private Properties createProperties() throws IOException {
+        Properties properties = PipelineConfigTools.setDefaultStreamsProperties();
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("streams_combined_test.properties")) {
+            properties.load(inputStream);
+        }
+        properties.put("streamsFilter.Second.deadLetterTopic", "github.schm1tz1.second.dlt");
+        properties.put("streamsFilter.replay.threads", "3");
+        // many small chunks to check the output order
+        properties.put("streamsFilter.replay.chunkBytes", "4096");
+        return properties;
+    }
+
+    @Test
+    void testReplayPlainAndGzipFiles(@TempDir Path tempDir) throws IOException {
+        List<String> batteryList = readResource("battery_1000.json");
+        Path inputDir = Files.createDirectories(tempDir.resolve("input"));
+        Files.write(inputDir.resolve("part-1.json"), batteryList.subList(0, 600), StandardCharsets.UTF_8);
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(inputDir.resolve("part-2.json.gz")))) {
+            outputStream.write(("{\"invalid\r\n\n" + String.join("\r\n", batteryList.subList(600, 1000))).getBytes(StandardCharsets.UTF_8));
+        }
+
+        Path outputDir = tempDir.resolve("output");
+        Map<String, Long> written = new FileReplay(createProperties(), null).run(Collections.singletonList(inputDir), outputDir);
+
+        // First forwards matching records, the invalid one does not match
+        List<String> first = Files.readAllLines(outputDir.resolve("github.schm1tz1.first.output.json"));
+        assertEquals(553, first.size());
+        assertEquals(553L, written.get("github.schm1tz1.first.output"));
+        int index = 0;
+        for (String record : first) {
+            while (!batteryList.get(index).equals(record)) {
+                index++;
+            }
+        }
+
+        // Second drops matching records, none of the battery records matches
+        assertEquals(batteryList, Files.readAllLines(outputDir.resolve("github.schm1tz1.second.output.json")));
+        assertEquals(Collections.singletonList("{\"invalid"), Files.readAllLines(outputDir.resolve("github.schm1tz1.second.dlt.json")));
+    }
+
+    @Test
+    void testReplayTopicAndUnsupportedSettings() throws IOException {
+        assertThrows(RuntimeException.class, () -> new FileReplay(createProperties(), "unknown.topic"));
+
+        Properties properties = createProperties();
+        properties.put("streamsFilter.First.dedupIdField", "context.id");
+        assertThrows(RuntimeException.class, () -> new FileReplay(properties, null));
+        // only the sources of the replayed topic are checked
+        new FileReplay(properties, "github.schm1tz1.second.input");
+
+        Properties sampled = createProperties();
+        sampled.put("streamsFilter.First.samplePercent", "50");
+        assertThrows(RuntimeException.class, () -> new FileReplay(sampled, null));
+        sampled.put("streamsFilter.First.sampleField", "context.id");
+        new FileReplay(sampled, null);
+
+        for (String limit : new String[]{"maxPerSecond", "maxPerWindow"}) {
+            Properties limited = createProperties();
+            limited.put("streamsFilter.First." + limit, "10");
+            assertThrows(RuntimeException.class, () -> new FileReplay(limited, null));
+        }
+    }
+
+    @Test
+    void testChunksEndAfterNewline() throws IOException {
+        String input = "a\nbb\n" + String.join("", Collections.nCopies(10, "long")) + "\nccc";
+        FileReplay.LineChunkReader reader = new FileReplay.LineChunkReader(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), 4);
+        List<String> chunks = new ArrayList<>();
+        for (byte[] chunk = reader.next(); chunk != null; chunk = reader.next()) {
+            chunks.add(new String(chunk, 0, reader.length, StandardCharsets.UTF_8));
+        }
+        assertEquals(input, String.join("", chunks));
+        for (String chunk : chunks.subList(0, chunks.size() - 1)) {
+            assertEquals('\n', chunk.charAt(chunk.length() - 1));
+        }
+        assertNull(reader.next());
+    }
+}
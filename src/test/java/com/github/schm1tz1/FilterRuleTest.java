@@ -0,0 +1,182 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilterRuleTest {
+
+    final static Logger logger = LoggerFactory.getLogger(FilterRuleTest.class);
+    String testMessageBattery = "{\"entity_id\": \"sensor.temperature_humidity_sensor_b99f_battery\", \"state\": \"65\", \"attributes\": {\"state_class\": \"measurement\", \"unit_of_measurement\": \"%\", \"device_class\": \"battery\", \"friendly_name\": \"Temperature/Humidity Sensor B99F Battery\"}, \"context\": {\"id\": \"01GQ0WJJVG1BMFA4AW4KBEBWG0\", \"parent_id\": null, \"user_id\": null}}";
+    String testMessageTemperature = "{\"entity_id\": \"sensor.sm_g950f_battery_temperature\", \"state\": \"28.6\", \"attributes\": {\"state_class\": \"measurement\", \"unit_of_measurement\": \"\\u00b0C\", \"device_class\": \"temperature\", \"icon\": \"mdi:battery\", \"friendly_name\": \"SM-G950F Battery Temperature\"}, \"context\": {\"id\": \"01GQ0XKE3ZYMZH2P2JVN66NGE2\", \"parent_id\": null, \"user_id\": null}}";
+
+    @Test
+    void testParsePathSet() {
+        JsonPathSet pathSet = new JsonPathSet();
+        FilterRuleParser.parse("entity_id ~ 'sensor\\..*' AND (attributes.device_class = 'battery' OR NOT entity_id != \"x\")", pathSet);
+        assertEquals(2, pathSet.size());
+        assertEquals("entity_id", pathSet.getPath(0));
+        assertEquals("attributes.device_class", pathSet.getPath(1));
+    }
+
+    @Test
+    void testRuleEvaluation() {
+        for (JsonFieldExtractor extractor : JsonFieldExtractor.values()) {
+            logger.info("Testing rule evaluation with extractor " + extractor);
+            EventFilter batteryFilter = EventFilter.fromRule("attributes.device_class = 'battery' and state !~ '[0-4]?[0-9]'", extractor);
+            assertTrue(batteryFilter.isMatching(testMessageBattery));
+            assertFalse(batteryFilter.isMatching(testMessageTemperature));
+
+            EventFilter anyFilter = EventFilter.fromRule("attributes.device_class = 'battery' OR attributes.icon = 'mdi:battery'", extractor);
+            assertTrue(anyFilter.isMatching(testMessageBattery));
+            assertTrue(anyFilter.isMatching(testMessageTemperature));
+
+            EventFilter notFilter = EventFilter.fromRule("NOT (attributes.device_class = 'battery' OR attributes.icon = 'mdi:battery')", extractor);
+            assertFalse(notFilter.isMatching(testMessageBattery));
+            assertFalse(notFilter.isMatching(testMessageTemperature));
+        }
+    }
+
+    @Test
+    void testOperatorPrecedence() {
+        JsonPathSet pathSet = new JsonPathSet();
+        FilterRule rule = FilterRuleParser.parse("a = '1' OR b = '1' AND c = '1'", pathSet);
+        assertTrue(rule.evaluate(new String[]{"1", "0", "0"}));
+        assertFalse(rule.evaluate(new String[]{"0", "1", "0"}));
+        assertTrue(rule.evaluate(new String[]{"0", "1", "1"}));
+    }
+
+    @Test
+    void testQuotedValues() {
+        JsonPathSet pathSet = new JsonPathSet();
+        FilterRule rule = FilterRuleParser.parse("a = 'it\\'s' AND b ~ \"\\d+\"", pathSet);
+        assertTrue(rule.evaluate(new String[]{"it's", "42"}));
+        assertFalse(rule.evaluate(new String[]{"it's", "4x"}));
+    }
+
+    @Test
+    void testReorderingKeepsResults() {
+        logger.info("Testing that adaptive reordering of operands does not change results.");
+        JsonPathSet pathSet = new JsonPathSet();
+        FilterRule rule = FilterRuleParser.parse("a ~ '(x|y)+z' AND b = '1' AND c != '1'", pathSet);
+        for (int i = 0; i < 100000; i++) {
+            String[] values = {(i % 3 == 0) ? "xyz" : "x", (i % 5 == 0) ? "1" : "0", (i % 7 == 0) ? "1" : "0"};
+            assertEquals(i % 3 == 0 && i % 5 == 0 && i % 7 != 0, rule.evaluate(values));
+        }
+    }
+
+    @Test
+    void testConcurrentReorderingOfManyOperands() throws Exception {
+        logger.info("Testing that operands are reordered safely while other threads update their statistics.");
+        JsonPathSet pathSet = new JsonPathSet();
+        FilterRule rule = FilterRuleParser.parse(IntStream.range(0, 40)
+                .mapToObj(i -> "f" + i + " = '1'").collect(Collectors.joining(" OR ")), pathSet);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    Random random = new Random();
+                    for (int i = 0; i < 200000; i++) {
+                        String[] values = new String[40];
+                        boolean expected = false;
+                        for (int field = 0; field < values.length; field++) {
+                            // operands of a higher index match more often so that the order changes
+                            values[field] = random.nextInt(4000) < field ? "1" : "0";
+                            expected |= values[field].equals("1");
+                        }
+                        assertEquals(expected, rule.evaluate(values));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testInvalidRules() {
+        assertThrows(IllegalArgumentException.class, () -> FilterRuleParser.parse("a = ", new JsonPathSet()));
+        assertThrows(IllegalArgumentException.class, () -> FilterRuleParser.parse("a 'x'", new JsonPathSet()));
+        assertThrows(IllegalArgumentException.class, () -> FilterRuleParser.parse("(a = 'x'", new JsonPathSet()));
+        assertThrows(IllegalArgumentException.class, () -> FilterRuleParser.parse("a = 'x' b = 'y'", new JsonPathSet()));
+        assertThrows(RuntimeException.class, () -> FilterRuleParser.parse("a ~ '(x'", new JsonPathSet()));
+    }
+
+    @Test
+    void testArraysAndWildcards() {
+        String order = "{\"id\": 7, \"paid\": true, \"total\": 12.5, \"items\": [{\"sku\": \"a\", \"price\": 5, \"tags\": [\"x\"]}, "
+                + "{\"sku\": \"b\", \"price\": 150.0, \"tags\": [\"y\", \"z\"]}], \"codes\": [1, 2, 3], \"empty\": []}";
+        for (JsonFieldExtractor extractor : JsonFieldExtractor.values()) {
+            logger.info("Testing arrays and wildcards with extractor " + extractor);
+            assertTrue(EventFilter.fromRule("items[1].sku = 'b' AND codes[0] = 1 AND id = 7 AND paid = true", extractor).isMatching(order));
+            assertTrue(EventFilter.fromRule("total = '12.5' AND total > 12 AND total <= 12.5", extractor).isMatching(order));
+            assertFalse(EventFilter.fromRule("items[2].sku = 'b' OR codes[3] = 1 OR id > 7", extractor).isMatching(order));
+            assertTrue(EventFilter.fromRule("items[*].price > 100", extractor).isMatching(order));
+            assertFalse(EventFilter.fromRule("items[*].price > 150", extractor).isMatching(order));
+            assertTrue(EventFilter.fromRule("items[*].tags[*] = 'z' AND codes[*] >= 3", extractor).isMatching(order));
+            assertTrue(EventFilter.fromRule("items[*].sku != 'c' AND codes[*] != 4", extractor).isMatching(order));
+            assertFalse(EventFilter.fromRule("items[*].sku != 'a'", extractor).isMatching(order));
+            assertFalse(EventFilter.fromRule("empty[*] ~ '.*' OR missing[*] ~ '.*' OR id[*] = 7", extractor).isMatching(order));
+        }
+        assertThrows(IllegalArgumentException.class, () -> FilterRuleParser.parse("[*].a = 'x'", new JsonPathSet()));
+        assertThrows(IllegalArgumentException.class, () -> FilterRuleParser.parse("a[x] = 'x'", new JsonPathSet()));
+        assertThrows(IllegalArgumentException.class, () -> new RecordFilter("header:a[*] = 'x'"));
+    }
+
+    @Test
+    void testNumericComparison() {
+        JsonPathSet pathSet = new JsonPathSet();
+        FilterRule rule = FilterRuleParser.parse("a >= 10 AND a < '1e2' AND b > -0.5", pathSet);
+        assertTrue(rule.evaluate(new String[]{"10", "0"}));
+        assertTrue(rule.evaluate(new String[]{"99.9", "-0.25"}));
+        assertFalse(rule.evaluate(new String[]{"100", "0"}));
+        assertFalse(rule.evaluate(new String[]{"9", "0"}));
+        assertFalse(rule.evaluate(new String[]{"50", "-0.5"}));
+        // values that are not numbers never match
+        assertFalse(rule.evaluate(new String[]{"", "0"}));
+        assertFalse(rule.evaluate(new String[]{"x", "0"}));
+
+        assertThrows(IllegalArgumentException.class, () -> FilterRuleParser.parse("a > 'x'", new JsonPathSet()));
+        assertThrows(IllegalArgumentException.class, () -> FilterRuleParser.parse("a = x", new JsonPathSet()));
+    }
+
+    @Test
+    void testRecordFilter() {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add("type", "old".getBytes(StandardCharsets.UTF_8));
+        headers.add("type", "battery".getBytes(StandardCharsets.UTF_8));
+
+        RecordFilter recordFilter = new RecordFilter("header:type = 'battery' AND key = 'k1' AND partition ~ '[0-3]' AND timestamp ~ '17.*'");
+        assertTrue(recordFilter.isMatching("k1", headers, 1700000000000L, 2));
+        assertTrue(recordFilter.isMatching("k1".getBytes(StandardCharsets.UTF_8), headers, 1700000000000L, 2));
+        assertFalse(recordFilter.isMatching("k1", headers, 1700000000000L, 4));
+        assertFalse(recordFilter.isMatching("k1", headers, 1700000000000L, -1));
+        assertFalse(recordFilter.isMatching(null, headers, 1700000000000L, 2));
+        assertFalse(recordFilter.isMatching("k1", new RecordHeaders(), 1700000000000L, 2));
+
+        assertTrue(new RecordFilter("header:missing = ''").isMatching(null, new RecordHeaders(), 0L, 0));
+        assertThrows(IllegalArgumentException.class, () -> new RecordFilter("entity_id = 'x'"));
+        assertThrows(IllegalArgumentException.class, () -> new RecordFilter("header: = 'x'"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.schm1tz1;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ForwardLimiterTest {
+
+    private static int countForwarded(ForwardLimiter limiter, int records) {
+        int forwarded = 0;
+        for (int i = 0; i < records; i++) {
+            if (limiter.tryForward("key-" + i, null)) {
+                forwarded++;
+            }
+        }
+        return forwarded;
+    }
+
+    @Test
+    void testSamplingIsDeterministic() {
+        ForwardLimiter limiter = new ForwardLimiter(10.0, -1, null, 0.0, 1, 0, 60000);
+        int forwarded = countForwarded(limiter, 100_000);
+        assertTrue(forwarded > 9_000 && forwarded < 11_000, "forwarded " + forwarded);
+        assertEquals(forwarded, countForwarded(new ForwardLimiter(10.0, -1, null, 0.0, 1, 0, 60000), 100_000));
+
+        // String and byte[] keys with the same (ASCII) content are sampled alike
+        for (int i = 0; i < 1000; i++) {
+            String key = "key-" + i;
+            assertEquals(limiter.tryForward(key, null), limiter.tryForward(key.getBytes(StandardCharsets.UTF_8), null));
+        }
+
+        // sampling by field
+        ForwardLimiter fieldLimiter = new ForwardLimiter(50.0, 1, "id", 0.0, 1, 0, 60000);
+        for (int i = 0; i < 1000; i++) {
+            String[] fields = {"other-" + i, "id-" + i};
+            assertEquals(fieldLimiter.tryForward("any key", fields), fieldLimiter.tryForward(null, fields));
+        }
+
+        assertEquals(0, countForwarded(new ForwardLimiter(0.0, -1, null, 0.0, 1, 0, 60000), 1000));
+        assertEquals(1000, countForwarded(new ForwardLimiter(100.0, -1, null, 0.0, 1, 0, 60000), 1000));
+    }
+
+    @Test
+    void testRateLimit() {
+        AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+        ForwardLimiter limiter = new ForwardLimiter(100.0, -1, null, 10.0, 5, 0, 60000, clock::get);
+
+        // burst first, then one record every 100 ms
+        assertEquals(5, countForwarded(limiter, 100));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(99));
+        assertFalse(limiter.tryForward("k", null));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(limiter.tryForward("k", null));
+        assertFalse(limiter.tryForward("k", null));
+
+        // idle time refills the bucket up to the burst only
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(5, countForwarded(limiter, 100));
+    }
+
+    @Test
+    void testFirstPerWindow() {
+        AtomicLong clock = new AtomicLong(-TimeUnit.SECONDS.toNanos(5));
+        ForwardLimiter limiter = new ForwardLimiter(100.0, -1, null, 0.0, 1, 3, 1000, clock::get);
+
+        assertEquals(3, countForwarded(limiter, 100));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertFalse(limiter.tryForward("k", null));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(3, countForwarded(limiter, 100));
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        assertEquals(3, countForwarded(limiter, 100));
+    }
+
+    @Test
+    void testRateNotTakenByWindowLimit() {
+        AtomicLong clock = new AtomicLong(0L);
+        ForwardLimiter limiter = new ForwardLimiter(100.0, -1, null, 10.0, 5, 2, 100, clock::get);
+
+        // records rejected by the window limit do not use up the burst of the rate limit
+        assertEquals(2, countForwarded(limiter, 100));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(2, countForwarded(limiter, 100));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(2, countForwarded(limiter, 100));
+    }
+
+    @Test
+    void testContinuingAfterReload() {
+        AtomicLong clock = new AtomicLong(0L);
+        ForwardLimiter limiter = new ForwardLimiter(100.0, -1, null, 10.0, 5, 0, 60000, clock::get);
+        assertEquals(5, countForwarded(limiter, 100));
+
+        // same limits with other sampling: the exhausted burst is kept
+        ForwardLimiter reloaded = new ForwardLimiter(50.0, -1, null, 10.0, 5, 0, 60000, clock::get).continuing(limiter);
+        assertEquals(0, countForwarded(reloaded, 100));
+        assertEquals("sample 50.0% by key, max 10.0/s", reloaded.toString());
+
+        // changed limits start fresh
+        ForwardLimiter changed = new ForwardLimiter(100.0, -1, null, 10.0, 3, 0, 60000, clock::get);
+        assertTrue(changed == changed.continuing(limiter));
+        assertEquals(3, countForwarded(changed, 100));
+        assertTrue(reloaded == reloaded.continuing(null));
+    }
+
+    @Test
+    void testFromProperties() {
+        Properties properties = new Properties();
+        JsonPathSet pathSet = new JsonPathSet();
+        pathSet.add("state");
+        assertNull(ForwardLimiter.fromProperties(properties, "First", pathSet));
+
+        properties.put("streamsFilter.First.samplePercent", "25");
+        properties.put("streamsFilter.First.sampleField", "context.id");
+        properties.put("streamsFilter.First.maxPerSecond", "100");
+        ForwardLimiter limiter = ForwardLimiter.fromProperties(properties, "First", pathSet);
+        assertEquals(1, limiter.getSampleSlot());
+        assertEquals("context.id", pathSet.getPath(1));
+        assertEquals("sample 25.0% by context.id, max 100.0/s", limiter.toString());
+
+        properties.put("streamsFilter.First.samplePercent", "101");
+        assertThrows(RuntimeException.class, () -> ForwardLimiter.fromProperties(properties, "First", pathSet));
+        properties.put("streamsFilter.First.samplePercent", "many");
+        assertThrows(RuntimeException.class, () -> ForwardLimiter.fromProperties(properties, "First", pathSet));
+        properties.remove("streamsFilter.First.samplePercent");
+        properties.remove("streamsFilter.First.maxPerSecond");
+        assertThrows(RuntimeException.class, () -> ForwardLimiter.fromProperties(properties, "First", pathSet));
+    }
+}
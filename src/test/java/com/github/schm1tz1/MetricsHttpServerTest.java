@@ -0,0 +1,68 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.CumulativeSum;
+import org.apache.kafka.streams.KafkaStreams;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+class MetricsHttpServerTest {
+
+    private static int getStatus(MetricsHttpServer server, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    private static String getBody(MetricsHttpServer server, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        try (InputStream inputStream = connection.getInputStream()) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    void testMetricsAndHealthProbes() throws IOException {
+        AtomicReference<KafkaStreams.State> state = new AtomicReference<>(KafkaStreams.State.CREATED);
+
+        try (Metrics metrics = new Metrics()) {
+            Map<String, String> tags = new LinkedHashMap<>();
+            tags.put("thread-id", "main");
+            tags.put("source", "First \"quoted\"");
+            Sensor sensor = metrics.sensor("test");
+            sensor.add(new MetricName("filter-in-total", FilterMetrics.GROUP, "", tags), new CumulativeSum());
+            sensor.record(42.0);
+
+            try (MetricsHttpServer server = new MetricsHttpServer(0, state::get, Collections.singletonList(metrics::metrics))) {
+                String body = getBody(server, "/metrics");
+                Assertions.assertTrue(body.contains("# TYPE kafka_streams_stream_kstreams_filter_metrics_filter_in_total gauge\n"));
+                Assertions.assertTrue(body.contains("kafka_streams_stream_kstreams_filter_metrics_filter_in_total{thread_id=\"main\",source=\"First \\\"quoted\\\"\"} 42.0\n"));
+
+                Assertions.assertEquals(200, getStatus(server, "/health/live"));
+                Assertions.assertEquals(503, getStatus(server, "/health/ready"));
+
+                state.set(KafkaStreams.State.RUNNING);
+                Assertions.assertEquals(200, getStatus(server, "/health/ready"));
+
+                state.set(KafkaStreams.State.ERROR);
+                Assertions.assertEquals(503, getStatus(server, "/health/live"));
+                Assertions.assertEquals(503, getStatus(server, "/health/ready"));
+            }
+        }
+    }
+}
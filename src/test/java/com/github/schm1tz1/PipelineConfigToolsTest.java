@@ -0,0 +1,112 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.streams.StreamsConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class PipelineConfigToolsTest {
+
+    private Properties createProperties() {
+        Properties properties = PipelineConfigTools.setDefaultStreamsProperties();
+        properties.put("streamsFilter.sources", "First,Second,Shared");
+        properties.put("streamsFilter.First.inputTopic", "topic.a");
+        properties.put("streamsFilter.Second.inputTopic", "topic.b");
+        properties.put("streamsFilter.Shared.inputTopic", "topic.a");
+        return properties;
+    }
+
+    @Test
+    void testThreadsSizedByCoresAndPartitions() {
+        Properties properties = createProperties();
+        PipelineConfigTools.applyPerformanceProfile(properties, PerformanceProfile.THROUGHPUT, 16, topics -> {
+            assertEquals(new HashSet<>(Arrays.asList("topic.a", "topic.b")), topics);
+            return 6;
+        });
+        assertEquals("6", properties.getProperty(StreamsConfig.NUM_STREAM_THREADS_CONFIG));
+        assertEquals("lz4", properties.getProperty("producer.compression.type"));
+        assertEquals("0", properties.getProperty(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG));
+
+        properties = createProperties();
+        PipelineConfigTools.applyPerformanceProfile(properties, PerformanceProfile.LATENCY, 4, topics -> 12);
+        assertEquals("4", properties.getProperty(StreamsConfig.NUM_STREAM_THREADS_CONFIG));
+        assertEquals("0", properties.getProperty("producer.linger.ms"));
+
+        // partitions unknown
+        properties = createProperties();
+        PipelineConfigTools.applyPerformanceProfile(properties, PerformanceProfile.DURABLE, 2, topics -> null);
+        assertEquals("2", properties.getProperty(StreamsConfig.NUM_STREAM_THREADS_CONFIG));
+        assertEquals("all", properties.getProperty("producer.acks"));
+    }
+
+    @Test
+    void testUserPropertiesOverrideProfile() {
+        Properties properties = createProperties();
+        properties.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, "3");
+        properties.put("linger.ms", "5");
+        properties.put("consumer.max.poll.records", "10");
+        PipelineConfigTools.applyPerformanceProfile(properties, PerformanceProfile.THROUGHPUT, 16, topics -> {
+            throw new AssertionError("partitions must not be looked up");
+        });
+
+        assertEquals("3", properties.getProperty(StreamsConfig.NUM_STREAM_THREADS_CONFIG));
+        assertEquals("5", properties.getProperty("linger.ms"));
+        assertEquals(null, properties.getProperty("producer.linger.ms"));
+        assertEquals("10", properties.getProperty("consumer.max.poll.records"));
+        assertEquals("262144", properties.getProperty("producer.batch.size"));
+
+        assertThrows(IllegalArgumentException.class, () -> PerformanceProfile.fromConfig("fastest"));
+    }
+
+    @Test
+    void testExactlyOnceCommitInterval() {
+        Properties properties = createProperties();
+        PipelineConfigTools.applyPerformanceProfile(properties, PerformanceProfile.EXACTLY_ONCE, 2, topics -> 2);
+        assertEquals(StreamsConfig.EXACTLY_ONCE_V2, properties.getProperty(StreamsConfig.PROCESSING_GUARANTEE_CONFIG));
+        assertEquals(PerformanceProfile.EOS_COMMIT_INTERVAL_MS, properties.getProperty(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG));
+
+        // exactly-once configured explicitly with another profile
+        properties = createProperties();
+        properties.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.EXACTLY_ONCE_V2);
+        PipelineConfigTools.applyPerformanceProfile(properties, PerformanceProfile.THROUGHPUT, 2, topics -> 2);
+        assertEquals(PerformanceProfile.EOS_COMMIT_INTERVAL_MS, properties.getProperty(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG));
+
+        properties = createProperties();
+        properties.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.EXACTLY_ONCE_V2);
+        PipelineConfigTools.applyPerformanceProfile(properties, PerformanceProfile.LATENCY, 2, topics -> 2);
+        assertEquals(null, properties.getProperty(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG));
+
+        // at-least-once keeps the default commit interval
+        properties = createProperties();
+        PipelineConfigTools.applyPerformanceProfile(properties, PerformanceProfile.THROUGHPUT, 2, topics -> 2);
+        assertEquals(null, properties.getProperty(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG));
+    }
+
+    @Test
+    void testNoPartitionLookupForDryRun() throws IOException {
+        File configFile = File.createTempFile("dry-run", ".properties");
+        configFile.deleteOnExit();
+        try (FileWriter writer = new FileWriter(configFile)) {
+            writer.write("bootstrap.servers=localhost:1\n");
+            writer.write("streamsFilter.sources=First\n");
+            writer.write("streamsFilter.First.inputTopic=topic.a\n");
+            writer.write("streamsFilter.performanceProfile=throughput\n");
+        }
+        // the broker is not reachable, a partition lookup would wait for its timeout
+        Properties properties = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> PipelineConfigTools.configureStreamsProperties(true, false, configFile.getPath()));
+        assertEquals(String.valueOf(Runtime.getRuntime().availableProcessors()),
+                properties.getProperty(StreamsConfig.NUM_STREAM_THREADS_CONFIG));
+        assertEquals(StreamsConfig.EXACTLY_ONCE_V2, properties.getProperty(StreamsConfig.PROCESSING_GUARANTEE_CONFIG));
+    }
+}
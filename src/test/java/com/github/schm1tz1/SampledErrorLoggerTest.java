@@ -0,0 +1,68 @@
+package com.github.schm1tz1;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampledErrorLoggerTest {
+    private static final Logger logger = LoggerFactory.getLogger(SampledErrorLoggerTest.class);
+
+    @Test
+    void testLimitPerMinute() {
+        AtomicLong clock = new AtomicLong();
+        AtomicInteger builtMessages = new AtomicInteger();
+        SampledErrorLogger errorLogger = new SampledErrorLogger(logger, 3, clock::get);
+
+        int logged = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (errorLogger.error(() -> "error " + builtMessages.incrementAndGet())) {
+                logged++;
+            }
+        }
+        assertEquals(3, logged);
+        assertEquals(3, builtMessages.get());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertFalse(errorLogger.error(() -> "still suppressed"));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(errorLogger.error(() -> "next minute"));
+
+        // the limit belongs to the instance
+        SampledErrorLogger disabled = new SampledErrorLogger(logger, 0, clock::get);
+        assertFalse(disabled.error(() -> "disabled"));
+        assertTrue(errorLogger.error(() -> "still enabled"));
+    }
+
+    @Test
+    void testLimitSharedByThreads() throws InterruptedException {
+        SampledErrorLogger errorLogger = new SampledErrorLogger(logger, 5, () -> 0L);
+        AtomicInteger logged = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (errorLogger.error(() -> "concurrent error")) {
+                        logged.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(5, logged.get());
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.schm1tz1;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.CumulativeSum;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TransactionMetricsTest {
+
+    private static Sensor addCounter(Metrics client, String group, String name, String clientId) {
+        Sensor sensor = client.sensor(group + "." + name + "." + clientId);
+        sensor.add(client.metricName(name, group, "", Collections.singletonMap("client-id", clientId)), new CumulativeSum());
+        return sensor;
+    }
+
+    private static double value(Metrics registry, String name) {
+        MetricName metricName = registry.metricName(name, FilterMetrics.GROUP);
+        return (Double) registry.metric(metricName).metricValue();
+    }
+
+    @Test
+    void testDerivedFromClientMetrics() {
+        try (Metrics client = new Metrics(); Metrics registry = new Metrics()) {
+            TransactionMetrics.register(registry, client::metrics);
+            assertEquals(0.0, value(registry, "transaction-commit-latency-avg"));
+
+            // two stream threads with one producer each
+            Sensor commitTime1 = addCounter(client, TransactionMetrics.PRODUCER_GROUP, "txn-commit-time-ns-total", "thread-1-producer");
+            Sensor commitTime2 = addCounter(client, TransactionMetrics.PRODUCER_GROUP, "txn-commit-time-ns-total", "thread-2-producer");
+            Sensor abortTime = addCounter(client, TransactionMetrics.PRODUCER_GROUP, "txn-abort-time-ns-total", "thread-1-producer");
+            Sensor commits1 = addCounter(client, TransactionMetrics.THREAD_GROUP, "commit-total", "thread-1");
+            Sensor commits2 = addCounter(client, TransactionMetrics.THREAD_GROUP, "commit-total", "thread-2");
+
+            commitTime1.record(30e6);
+            commitTime2.record(10e6);
+            commits1.record(3);
+            commits2.record(1);
+            abortTime.record(2.5e6);
+
+            assertEquals(10.0, value(registry, "transaction-commit-latency-avg"), 1e-9);
+            assertEquals(40.0, value(registry, "transaction-commit-time-total"), 1e-9);
+            assertEquals(2.5, value(registry, "transaction-abort-time-total"), 1e-9);
+        }
+    }
+}
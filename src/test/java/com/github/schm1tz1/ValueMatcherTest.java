@@ -0,0 +1,59 @@
+package com.github.schm1tz1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueMatcherTest {
+
+    @Test
+    void testClassification() {
+        assertInstanceOf(ValueMatcher.LiteralMatcher.class, ValueMatcher.forPattern("42"));
+        assertInstanceOf(ValueMatcher.LiteralMatcher.class, ValueMatcher.forPattern("^sensor\\.x$"));
+        assertInstanceOf(ValueMatcher.LiteralMatcher.class, ValueMatcher.forPattern("\\Qa.b*c\\E"));
+        assertInstanceOf(ValueMatcher.AffixMatcher.class, ValueMatcher.forPattern("sensor\\..*"));
+        assertInstanceOf(ValueMatcher.AffixMatcher.class, ValueMatcher.forPattern(".*_battery"));
+        assertInstanceOf(ValueMatcher.AffixMatcher.class, ValueMatcher.forPattern("Temperature/Humidity Sensor (.*) Battery"));
+        assertInstanceOf(ValueMatcher.InfixMatcher.class, ValueMatcher.forPattern(".*battery.*"));
+        assertInstanceOf(ValueMatcher.ValueSetMatcher.class, ValueMatcher.forPattern("on|off|unknown"));
+        assertInstanceOf(ValueMatcher.ValueSetMatcher.class, ValueMatcher.forPattern("(?:on|off|)"));
+
+        assertInstanceOf(ValueMatcher.RegexMatcher.class, ValueMatcher.forPattern("sensor.(.*)_dewpoint"));
+        assertInstanceOf(ValueMatcher.RegexMatcher.class, ValueMatcher.forPattern("\\d+"));
+        assertInstanceOf(ValueMatcher.RegexMatcher.class, ValueMatcher.forPattern("a.*b.*c"));
+        assertInstanceOf(ValueMatcher.RegexMatcher.class, ValueMatcher.forPattern("(on|off)_x"));
+        assertInstanceOf(ValueMatcher.RegexMatcher.class, ValueMatcher.forPattern("a.*?"));
+        assertInstanceOf(ValueMatcher.RegexMatcher.class, ValueMatcher.forPattern("(?i)abc"));
+    }
+
+    @Test
+    void testSameResultsAsRegex() {
+        List<String> patterns = Arrays.asList("42", "", "^abc$", "abc\\$", "a\\.b", "\\Qa.b\\E", "\\Qa.b", "ab.*", ".*bc",
+                "a(.*)c", "a.*c", ".*b.*", ".*", "(.*)", "a|b|", "(a|bc)", "(?:a|abc)", "a\\|b", "a\\\\.*", "a.*\\*",
+                "x\\(y\\)", "sensor.(.*)_x", "(a|b)*", "a\\n.*", "^.*b", "a$|b", "\\\\$",
+                "\\Qabc$", "\\Qabc$\\E", "\\Qabc\\E$", "\\Qa$|b\\E$");
+        List<String> values = Arrays.asList("", "42", "abc", "abc$", "a.b", "axb", "ab", "bc", "ac", "abbc", "a\nc",
+                "ab c", "b", "a", "a|b", "x(y)", "a\\", "a\\x", "a*", "sensor.x_x", "sensorxyz_x", "aab", "a\nb", "\\", "a$|b");
+        for (String pattern : patterns) {
+            ValueMatcher matcher = ValueMatcher.forPattern(pattern);
+            for (String value : values) {
+                assertEquals(Pattern.matches(pattern, value), matcher.matches(value),
+                        "pattern '" + pattern + "' (" + matcher.getClass().getSimpleName() + "), value '" + value + "'");
+            }
+        }
+    }
+
+    @Test
+    void testValueSet() {
+        ValueMatcher matcher = ValueMatcher.forValues(Arrays.asList("battery", "temperature"));
+        assertTrue(matcher.matches("battery"));
+        assertEquals(false, matcher.matches("power"));
+        assertEquals(false, matcher.matches(""));
+    }
+}